@@ -0,0 +1,292 @@
+// Generated by FormClassGenerator from bauru.json, do not edit.
+package terracore.example.forms;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import terracore.formgenerator.*;
+import terracore.formgenerator.accordion.FormAccordion;
+import terracore.formgenerator.camera.FormCamera;
+import android.content.Context;
+
+public class BauruForm extends GeneratedForm {
+        public static final String SCHEMA      = "bauru.json";
+        public static final String SCHEMA_HASH = "f76d98f2d989cc791ca34e6a26390c7bc9fba16d";
+
+        private static final int[][][] TOGGLES = {
+                null, // 0 search_country
+                null, // 1 spinner_disconform
+                null, // 2 number_confirmation
+                null, // 3 aditional_numbers
+                null, // 4 primary_use
+                null, // 5 secondary_use
+                null, // 6 lbl_title_infrastructure
+                null, // 7 pavimentation
+                null, // 8 asphalt_guide
+                null, // 9 public_ilumination
+                null, // 10 energy
+                null, // 11 pluvial_gallery
+                null, // 12 observation
+                null // 13 camera_button
+        };
+
+        private static final int[][][] HIDE_ON_CLICK = {
+                null, // 0 search_country
+                { { 0, 2, 3, 4, 5 }, { 2, 2, 3, 4, 5 } }, // 1 spinner_disconform
+                { { 0, 3 }, { 1, 3 } }, // 2 number_confirmation
+                null, // 3 aditional_numbers
+                null, // 4 primary_use
+                null, // 5 secondary_use
+                null, // 6 lbl_title_infrastructure
+                null, // 7 pavimentation
+                null, // 8 asphalt_guide
+                null, // 9 public_ilumination
+                null, // 10 energy
+                null, // 11 pluvial_gallery
+                null, // 12 observation
+                null // 13 camera_button
+        };
+
+        private static final int[][] CHILDREN = {
+                null, // 0 search_country
+                null, // 1 spinner_disconform
+                null, // 2 number_confirmation
+                null, // 3 aditional_numbers
+                null, // 4 primary_use
+                null, // 5 secondary_use
+                { 7, 8, 9, 10, 11, 12 }, // 6 lbl_title_infrastructure
+                null, // 7 pavimentation
+                null, // 8 asphalt_guide
+                null, // 9 public_ilumination
+                null, // 10 energy
+                null, // 11 pluvial_gallery
+                null, // 12 observation
+                null // 13 camera_button
+        };
+
+        @Override
+        protected int[][][] getToggles() {
+                return TOGGLES;
+        }
+
+        @Override
+        protected int[][][] getHideOnClick() {
+                return HIDE_ON_CLICK;
+        }
+
+        @Override
+        protected int[][] getChildren() {
+                return CHILDREN;
+        }
+
+        @Override
+        protected FormWidget[] createWidgets(Context context) {
+                FormWidget[] widgets = new FormWidget[14];
+                createWidgets0(context, widgets);
+                return widgets;
+        }
+
+        private static void createWidgets0(Context context, FormWidget[] widgets) {
+                Map<String, String> options;
+                Map<String, List<String>> optionLists;
+
+                optionLists = new LinkedHashMap<String, List<String>>();
+                optionLists.put("db_url", Arrays.asList("http://192.168.0.171:8000/"));
+                optionLists.put("db_name", Arrays.asList("tasks.db"));
+                optionLists.put("inputColumns", Arrays.asList("name", "number", "featureId", "postalCode"));
+                optionLists.put("outputColumn", Arrays.asList("featureId"));
+                optionLists.put("presentationColumns", Arrays.asList("name", "featureId"));
+                optionLists.put("tableName", Arrays.asList("address"));
+                widgets[0] = init(new FormAutoCompleteTextBox(context, "Pesquisar Endere\u00e7o", optionLists), "search_country", 0, "", null);
+
+                options = new LinkedHashMap<String, String>();
+                options.put("0", "N\u00e3o detectada");
+                options.put("1", "Desconforme");
+                options.put("2", "Vago");
+                options.put("3", "Desmembrado");
+                options.put("4", "Unificado");
+                widgets[1] = init(new FormSpinner(context, "Desconformidade", options), "spinner_disconform", 1, "0", null);
+
+                options = new LinkedHashMap<String, String>();
+                options.put("0", "Ok");
+                options.put("1", "Inexistente");
+                options.put("2", "N\u00e3o confere");
+                widgets[2] = init(new FormSpinner(context, "Confirma\u00e7\u00e3o do N\u00famero", options), "number_confirmation", 2, "0", null);
+
+                widgets[3] = init(new FormRepeatingGroup(context, "N\u00fameros Adicionais", "fragments/aditional_number.json"), "aditional_numbers", 3, "", null);
+
+                options = new LinkedHashMap<String, String>();
+                options.put("0", "");
+                options.put("1", "Nenhum");
+                options.put("2", "Residencial");
+                options.put("3", "Comercial");
+                options.put("4", "Servi\u00e7os");
+                options.put("5", "Industrial");
+                options.put("6", "Religioso");
+                options.put("7", "Em Constru\u00e7\u00e3o");
+                options.put("8", "Indefinido");
+                widgets[4] = init(new FormSpinner(context, "Uso Principal", options), "primary_use", 4, "0", null);
+
+                options = new LinkedHashMap<String, String>();
+                options.put("0", "");
+                options.put("1", "Nenhum");
+                options.put("2", "Residencial");
+                options.put("3", "Comercial");
+                options.put("4", "Servi\u00e7os");
+                options.put("5", "Industrial");
+                options.put("6", "Religioso");
+                options.put("7", "Em Constru\u00e7\u00e3o");
+                options.put("8", "Indefinido");
+                widgets[5] = init(new FormSpinner(context, "Uso Secund\u00e1rio", options), "secondary_use", 5, "0", null);
+
+                widgets[6] = init(new FormAccordion(context, "Infraestrutura", Arrays.asList("pavimentation", "asphalt_guide", "public_ilumination", "energy", "pluvial_gallery", "observation")), "lbl_title_infrastructure", 1, null, null);
+
+                options = new LinkedHashMap<String, String>();
+                options.put("0", "");
+                options.put("1", "Asfalto");
+                options.put("2", "Paralelep\u00edpedo");
+                options.put("3", "Lajota Intervalada");
+                options.put("4", "Sem Pavimenta\u00e7\u00e3o");
+                options.put("5", "Parcial");
+                widgets[7] = init(new FormSpinner(context, "Pavimenta\u00e7\u00e3o", options), "pavimentation", 8, "0", null);
+
+                options = new LinkedHashMap<String, String>();
+                options.put("0", "");
+                options.put("1", "Sim");
+                options.put("2", "N\u00e3o");
+                options.put("3", "Parcial");
+                widgets[8] = init(new FormSpinner(context, "Guias", options), "asphalt_guide", 9, "0", null);
+
+                options = new LinkedHashMap<String, String>();
+                options.put("0", "");
+                options.put("1", "Sim");
+                options.put("2", "N\u00e3o");
+                options.put("3", "Parcial");
+                widgets[9] = init(new FormSpinner(context, "Ilumina\u00e7\u00e3o P\u00fablica", options), "public_ilumination", 10, "0", null);
+
+                options = new LinkedHashMap<String, String>();
+                options.put("0", "");
+                options.put("1", "Sim");
+                options.put("2", "N\u00e3o");
+                options.put("3", "Parcial");
+                widgets[10] = init(new FormSpinner(context, "Energia el\u00e9trica", options), "energy", 11, "0", null);
+
+                options = new LinkedHashMap<String, String>();
+                options.put("0", "");
+                options.put("1", "Sim");
+                options.put("2", "N\u00e3o");
+                options.put("3", "Parcial");
+                widgets[11] = init(new FormSpinner(context, "Galeria Pluvial", options), "pluvial_gallery", 12, "0", null);
+
+                widgets[12] = init(new FormEditText(context, "Observa\u00e7\u00f5es"), "observation", 13, "", null);
+
+                widgets[13] = init(new FormCamera(context, "Obter Foto"), "camera_button", 7, "", null);
+        }
+
+        public String getSearchCountry() {
+                return widgets[0].getValue();
+        }
+
+        public void setSearchCountry(String value) {
+                widgets[0].setValue(value);
+        }
+
+        public String getSpinnerDisconform() {
+                return widgets[1].getValue();
+        }
+
+        public void setSpinnerDisconform(String value) {
+                widgets[1].setValue(value);
+        }
+
+        public String getNumberConfirmation() {
+                return widgets[2].getValue();
+        }
+
+        public void setNumberConfirmation(String value) {
+                widgets[2].setValue(value);
+        }
+
+        public String getAditionalNumbers() {
+                return widgets[3].getValue();
+        }
+
+        public void setAditionalNumbers(String value) {
+                widgets[3].setValue(value);
+        }
+
+        public String getPrimaryUse() {
+                return widgets[4].getValue();
+        }
+
+        public void setPrimaryUse(String value) {
+                widgets[4].setValue(value);
+        }
+
+        public String getSecondaryUse() {
+                return widgets[5].getValue();
+        }
+
+        public void setSecondaryUse(String value) {
+                widgets[5].setValue(value);
+        }
+
+        public String getPavimentation() {
+                return widgets[7].getValue();
+        }
+
+        public void setPavimentation(String value) {
+                widgets[7].setValue(value);
+        }
+
+        public String getAsphaltGuide() {
+                return widgets[8].getValue();
+        }
+
+        public void setAsphaltGuide(String value) {
+                widgets[8].setValue(value);
+        }
+
+        public String getPublicIlumination() {
+                return widgets[9].getValue();
+        }
+
+        public void setPublicIlumination(String value) {
+                widgets[9].setValue(value);
+        }
+
+        public String getEnergy() {
+                return widgets[10].getValue();
+        }
+
+        public void setEnergy(String value) {
+                widgets[10].setValue(value);
+        }
+
+        public String getPluvialGallery() {
+                return widgets[11].getValue();
+        }
+
+        public void setPluvialGallery(String value) {
+                widgets[11].setValue(value);
+        }
+
+        public String getObservation() {
+                return widgets[12].getValue();
+        }
+
+        public void setObservation(String value) {
+                widgets[12].setValue(value);
+        }
+
+        public List<String> getCameraButton() {
+                return ((FormCamera) widgets[13]).getPhotos();
+        }
+
+        public void setCameraButton(List<String> photos) {
+                ((FormCamera) widgets[13]).setPhotos(photos);
+                ((FormCamera) widgets[13]).updatePhotos();
+        }
+}
@@ -10,7 +10,9 @@ public class FormGeneratorExample extends FormActivity {
         @Override
         public void onCreate(Bundle savedInstanceState) {
                 super.onCreate(savedInstanceState);
-                generateForm(FormActivity.parseFileToString(this, "bauru.json"));
+                
+                // -- written from bauru.json by "ant -f form-tools/build.xml forms"
+                generateForm(new BauruForm());
         }
         
         @Override
@@ -0,0 +1,116 @@
+package terracore.formgenerator;
+
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.zip.GZIPInputStream;
+
+import terracore.formgenerator.schema.FormSchema;
+import android.content.Context;
+import android.content.res.AssetManager;
+
+/**
+ * Reads the schemas and data files of the assets folder.
+ * 
+ * Files are read in chunks and decoded as UTF-8. Gzip compressed files are
+ * decompressed on the fly, they are recognized by their content, and a file
+ * named "form.json" is also found as "form.json.gz", so the application can
+ * ship compressed assets without changing the names used in the code.
+ */
+public class AssetLoader {
+        public static final String  GZIP_EXTENSION = ".gz";
+        
+        private static final int    BUFFER_SIZE    = 8 * 1024;
+        private static final int    GZIP_MAGIC     = 0x8b1f;
+        
+        /**
+         * Opens an asset, decompressing it if needed.
+         * 
+         * @param context
+         * @param filename
+         *                - the path of the file in the assets folder
+         */
+        public static InputStream openStream(Context context, String filename) throws IOException {
+                AssetManager assets = context.getAssets();
+                InputStream stream;
+                
+                try {
+                        stream = assets.open(filename);
+                }
+                catch (FileNotFoundException e) {
+                        if (filename.endsWith(GZIP_EXTENSION)) {
+                                throw e;
+                        }
+                        
+                        stream = assets.open(filename + GZIP_EXTENSION);
+                }
+                
+                BufferedInputStream buffered = new BufferedInputStream(stream, BUFFER_SIZE);
+                
+                if (isGzip(buffered)) {
+                        return new GZIPInputStream(buffered, BUFFER_SIZE);
+                }
+                
+                return buffered;
+        }
+        
+        /**
+         * Opens an asset as UTF-8 text, see {@link #openStream(Context, String)}.
+         * The reader is not buffered, the json readers buffer their input.
+         */
+        public static Reader openReader(Context context, String filename) throws IOException {
+                return new InputStreamReader(openStream(context, filename), "UTF-8");
+        }
+        
+        /**
+         * Reads a whole asset as UTF-8 text.
+         */
+        public static String readString(Context context, String filename) throws IOException {
+                Reader reader = openReader(context, filename);
+                
+                try {
+                        StringBuilder builder = new StringBuilder(BUFFER_SIZE);
+                        char[] buffer = new char[BUFFER_SIZE];
+                        int count;
+                        
+                        while ((count = reader.read(buffer)) != -1) {
+                                builder.append(buffer, 0, count);
+                        }
+                        
+                        return builder.toString();
+                }
+                finally {
+                        reader.close();
+                }
+        }
+        
+        /**
+         * returns the SHA-1, as hex, of the uncompressed content of an asset,
+         * reading it in chunks. For a UTF-8 file it is the same hash as
+         * {@link FormSchema#hash(String)} of its text.
+         */
+        public static String hash(Context context, String filename) throws IOException {
+                InputStream stream = openStream(context, filename);
+                
+                try {
+                        return FormSchema.hash(stream);
+                }
+                finally {
+                        stream.close();
+                }
+        }
+        
+        private static boolean isGzip(BufferedInputStream stream) throws IOException {
+                stream.mark(2);
+                
+                int first = stream.read();
+                int second = stream.read();
+                
+                stream.reset();
+                
+                return first != -1 && second != -1 && (first | (second << 8)) == GZIP_MAGIC;
+        }
+}
@@ -0,0 +1,31 @@
+package terracore.formgenerator;
+
+import java.util.List;
+
+import terracore.formgenerator.schema.WidgetSpec;
+import android.os.AsyncTask;
+
+/**
+ * Reads and parses a schema of the assets folder off the main thread, then
+ * hands the widgets to a {@link FormInflater}.
+ */
+class AsyncFormLoader extends AsyncTask<String, Void, FormInflater> {
+        private final FormActivity activity;
+        
+        public AsyncFormLoader(FormActivity activity) {
+                this.activity = activity;
+        }
+        
+        @Override
+        protected FormInflater doInBackground(String... params) {
+                List<WidgetSpec> specs = activity.loadSchema(params[0]);
+                return new FormInflater(activity, specs);
+        }
+        
+        @Override
+        protected void onPostExecute(FormInflater inflater) {
+                if (!isCancelled() && !activity.isFinishing()) {
+                        activity.startInflating(inflater);
+                }
+        }
+}
@@ -0,0 +1,31 @@
+package terracore.formgenerator;
+
+import android.os.AsyncTask;
+
+/**
+ * Reads the schema and the record of a {@link PreparedForm} off the main
+ * thread, then hands the form to a {@link FormInflater} that creates its
+ * widgets without adding them to the layout.
+ */
+class AsyncFormPrefetcher extends AsyncTask<String, Void, FormInflater> {
+        private final FormActivity activity;
+        private final String       data;
+        
+        public AsyncFormPrefetcher(FormActivity activity, String data) {
+                this.activity = activity;
+                this.data = data;
+        }
+        
+        @Override
+        protected FormInflater doInBackground(String... params) {
+                PreparedForm form = new PreparedForm(params[0], data, activity.loadSchema(params[0]));
+                return new FormInflater(activity, form);
+        }
+        
+        @Override
+        protected void onPostExecute(FormInflater inflater) {
+                if (!isCancelled() && !activity.isFinishing()) {
+                        activity.startPrefetching(inflater);
+                }
+        }
+}
@@ -1,14 +1,18 @@
 package terracore.formgenerator;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import makemachine.android.examples.forms.R;
 import makemachine.android.examples.forms.R.string;
@@ -18,7 +22,22 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import terracore.formgenerator.accordion.FormAccordion;
+import terracore.formgenerator.camera.CameraActivity;
 import terracore.formgenerator.camera.FormCamera;
+import terracore.formgenerator.schema.AssetFragmentResolver;
+import terracore.formgenerator.schema.CompiledSchema;
+import terracore.formgenerator.schema.FormCatalog;
+import terracore.formgenerator.schema.FormSchema;
+import terracore.formgenerator.schema.FormSchemaCache;
+import terracore.formgenerator.schema.FragmentResolver;
+import terracore.formgenerator.schema.JsonPullReader;
+import terracore.formgenerator.schema.JsonPullReader.Token;
+import terracore.formgenerator.schema.SchemaDiagnostic;
+import terracore.formgenerator.schema.SchemaDiff;
+import terracore.formgenerator.schema.SchemaKeys;
+import terracore.formgenerator.schema.SchemaReader;
+import terracore.formgenerator.schema.SchemaValidator;
+import terracore.formgenerator.schema.WidgetSpec;
 import terracore.formgenerator.spinner.SelectionHandler;
 import android.app.Activity;
 import android.app.AlertDialog;
@@ -32,9 +51,11 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.View.OnClickListener;
+import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.LinearLayout;
 import android.widget.LinearLayout.LayoutParams;
+import android.widget.ListView;
 import android.widget.ScrollView;
 import android.widget.Spinner;
 import android.widget.TableLayout;
@@ -54,124 +75,1044 @@ import android.widget.TableRow;
  * 
  * */
 public class FormActivity extends Activity implements FormInterface {
-        public static final String            SCHEMA_KEY_ID                    = "id";
-        public static final String            SCHEMA_KEY_NAME                  = "name";
-        public static final String            SCHEMA_KEY_TYPE                  = "type";
-        
-        public static final String            SCHEMA_KEY_CHECKBOX              = "Checkbox";
-        public static final String            SCHEMA_KEY_SPINNER               = "Spinner";
-        public static final String            SCHEMA_KEY_INTEGER_TEXTVIEW      = "IntegerTextView";
-        public static final String            SCHEMA_KEY_STRING_TEXTVIEW       = "StringTextView";
-        public static final String            SCHEMA_KEY_AUTOCOMPLETE_TEXTVIEW = "AutoCompleteTextView";
-        public static final String            SCHEMA_KEY_LABEL                 = "Label";
-        public static final String            SCHEMA_KEY_ACCORDION             = "Accordion";
-        public static final String            SCHEMA_KEY_CAMERA                = "Camera";
-        
-        public static final String            SCHEMA_KEY_PRIORITY              = "priority";
-        public static final String            SCHEMA_KEY_TOGGLES               = "toggles";
-        public static final String            SCHEMA_KEY_ACTIONS               = "hideOnClick";
-        public static final String            SCHEMA_KEY_DEFAULT               = "default";
-        public static final String            SCHEMA_KEY_MODIFIERS             = "modifiers";
-        public static final String            SCHEMA_KEY_OPTIONS               = "options";
-        public static final String            SCHEMA_KEY_ACCORDION_CHILDREN    = "children";
-        public static final String            SCHEMA_KEY_META                  = "meta";
-        public static final String            SCHEMA_KEY_HINT                  = "hint";
+        public static final String            SCHEMA_KEY_ID                    = SchemaKeys.SCHEMA_KEY_ID;
+        public static final String            SCHEMA_KEY_NAME                  = SchemaKeys.SCHEMA_KEY_NAME;
+        public static final String            SCHEMA_KEY_TYPE                  = SchemaKeys.SCHEMA_KEY_TYPE;
+        
+        public static final String            SCHEMA_KEY_CHECKBOX              = SchemaKeys.SCHEMA_KEY_CHECKBOX;
+        public static final String            SCHEMA_KEY_SPINNER               = SchemaKeys.SCHEMA_KEY_SPINNER;
+        public static final String            SCHEMA_KEY_INTEGER_TEXTVIEW      = SchemaKeys.SCHEMA_KEY_INTEGER_TEXTVIEW;
+        public static final String            SCHEMA_KEY_STRING_TEXTVIEW       = SchemaKeys.SCHEMA_KEY_STRING_TEXTVIEW;
+        public static final String            SCHEMA_KEY_AUTOCOMPLETE_TEXTVIEW = SchemaKeys.SCHEMA_KEY_AUTOCOMPLETE_TEXTVIEW;
+        public static final String            SCHEMA_KEY_LABEL                 = SchemaKeys.SCHEMA_KEY_LABEL;
+        public static final String            SCHEMA_KEY_ACCORDION             = SchemaKeys.SCHEMA_KEY_ACCORDION;
+        public static final String            SCHEMA_KEY_CAMERA                = SchemaKeys.SCHEMA_KEY_CAMERA;
+        public static final String            SCHEMA_KEY_REPEATING_GROUP       = SchemaKeys.SCHEMA_KEY_REPEATING_GROUP;
+        public static final String            SCHEMA_KEY_DATABASE_GRID         = SchemaKeys.SCHEMA_KEY_DATABASE_GRID;
+        
+        public static final String            SCHEMA_KEY_PRIORITY              = SchemaKeys.SCHEMA_KEY_PRIORITY;
+        public static final String            SCHEMA_KEY_TOGGLES               = SchemaKeys.SCHEMA_KEY_TOGGLES;
+        public static final String            SCHEMA_KEY_ACTIONS               = SchemaKeys.SCHEMA_KEY_ACTIONS;
+        public static final String            SCHEMA_KEY_DEFAULT               = SchemaKeys.SCHEMA_KEY_DEFAULT;
+        public static final String            SCHEMA_KEY_MODIFIERS             = SchemaKeys.SCHEMA_KEY_MODIFIERS;
+        public static final String            SCHEMA_KEY_OPTIONS               = SchemaKeys.SCHEMA_KEY_OPTIONS;
+        public static final String            SCHEMA_KEY_ACCORDION_CHILDREN    = SchemaKeys.SCHEMA_KEY_ACCORDION_CHILDREN;
+        public static final String            SCHEMA_KEY_META                  = SchemaKeys.SCHEMA_KEY_META;
+        public static final String            SCHEMA_KEY_HINT                  = SchemaKeys.SCHEMA_KEY_HINT;
+        public static final String            SCHEMA_KEY_REF                   = SchemaKeys.SCHEMA_KEY_REF;
+        public static final String            SCHEMA_KEY_TEMPLATE              = SchemaKeys.SCHEMA_KEY_TEMPLATE;
         
         public static final LayoutParams      defaultLayoutParams              = new LinearLayout.LayoutParams(LayoutParams.FILL_PARENT, LayoutParams.WRAP_CONTENT);
         
-        // -- data
-        public static Map<String, FormWidget> _map;
+        // -- data, the map of a generated form is built when a widget is first looked up by id
+        protected Map<String, FormWidget>     _map;
         protected ArrayList<FormWidget>       _widgets;
+        protected List<WidgetSpec>            _specs;
+        protected FormTree                    _tree;
         
         // -- widgets
         protected LinearLayout                _formLayout;
         protected ScrollView                  _scrollView;
         
+        private WidgetFactoryRegistry         _factories;
+        private AsyncFormLoader               _loader;
+        private FormInflater                  _inflater;
+        private AsyncFormPrefetcher           _prefetcher;
+        private FormInflater                  _prefetchInflater;
+        private PreparedForm                  _prefetched;
+        private FormListAdapter               _listAdapter;
+        private FormWizard                    _wizard;
+        private FormReviewAdapter             _reviewAdapter;
+        private FormValueModel                _pendingValues;
+        
         // -- Buttons
         public Button                         buttonDelete;
         public Button                         buttonSave;
         public Button                         buttonCancel;
         public Button                         buttonClear;
+        public Button                         buttonPrevious;
+        public Button                         buttonNext;
         
         private List<String>                  photos;
         private String                        idHash;
         
-        // -----------------------------------------------
-        //
-        // Context menu options.
-        //
-        // -----------------------------------------------
-        public static final int               OPTION_SAVE                      = 0;
-        public static final int               OPTION_POPULATE                  = 1;
-        public static final int               OPTION_CANCEL                    = 2;
-        private static final String           LOG_TAG                          = "FORM_ACTIVITY";
+        // -----------------------------------------------
+        //
+        // Context menu options.
+        //
+        // -----------------------------------------------
+        public static final int               OPTION_SAVE                      = 0;
+        public static final int               OPTION_POPULATE                  = 1;
+        public static final int               OPTION_CANCEL                    = 2;
+        private static final String           LOG_TAG                          = "FORM_ACTIVITY";
+        
+        @Override
+        public boolean onCreateOptionsMenu(Menu menu) {
+                menu.add(0, OPTION_SAVE, 0, "Save");
+                menu.add(0, OPTION_POPULATE, 0, "Populate");
+                menu.add(0, OPTION_CANCEL, 0, "Cancel");
+                return true;
+        }
+        
+        @Override
+        public boolean onMenuItemSelected(int id, MenuItem item) {
+                
+                switch (item.getItemId()) {
+                        case OPTION_SAVE:
+                                save();
+                                break;
+                        
+                        case OPTION_POPULATE:
+                                populateFromAsset("bauru_data.json");
+                                break;
+                        
+                        case OPTION_CANCEL:
+                                break;
+                }
+                
+                return super.onMenuItemSelected(id, item);
+        }
+        
+        @Override
+        protected void onDestroy() {
+                cancelFormLoading();
+                cancelPrefetch();
+                
+                if (_wizard != null) {
+                        _wizard.cancel();
+                }
+                
+                recycleWidgets();
+                super.onDestroy();
+        }
+        
+        @Override
+        public void onLowMemory() {
+                WidgetPool.getInstance().clear();
+                super.onLowMemory();
+        }
+        
+        /**
+         * Gives the photos taken by the {@link CameraActivity} to the camera
+         * widget of this form that asked for them.
+         */
+        @Override
+        protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+                super.onActivityResult(requestCode, resultCode, data);
+                
+                if (requestCode != CameraActivity.REQUEST_PHOTO || resultCode != RESULT_OK || data == null) {
+                        return;
+                }
+                
+                String id = data.getStringExtra(CameraActivity.EXTRA_WIDGET_ID);
+                String photo = data.getStringExtra(CameraActivity.EXTRA_PHOTO);
+                
+                if (_listAdapter != null) {
+                        _listAdapter.addPhoto(id, photo);
+                }
+                else if (_wizard != null) {
+                        _wizard.addPhoto(id, photo);
+                }
+                else if (findWidget(id) instanceof FormCamera) {
+                        ((FormCamera) findWidget(id)).addPhoto(photo);
+                }
+        }
+        
+        /**
+         * returns the widget of this form with the id, or null.
+         */
+        public FormWidget findWidget(String id) {
+                Map<String, FormWidget> map = getWidgetMap();
+                return map != null ? map.get(id) : null;
+        }
+        
+        /**
+         * returns the widgets by id, or null if there is no form. A generated
+         * form indexes its widgets the first time one is looked up by id, it
+         * is opened without reading their ids.
+         */
+        private Map<String, FormWidget> getWidgetMap() {
+                if (_map == null && _widgets != null) {
+                        _map = new HashMap<String, FormWidget>(_widgets.size() * 2);
+                        
+                        for (FormWidget widget : _widgets) {
+                                _map.put(widget.getId(), widget);
+                        }
+                }
+                
+                return _map;
+        }
+        
+        // -----------------------------------------------
+        //
+        // parse data and build view
+        //
+        // -----------------------------------------------
+        
+        /**
+         * Call the functions that initialize the widgets and layout.
+         * 
+         * @param data
+         *                - the raw json data as a String
+         */
+        public void generateForm(String data) {
+                initializeContentView();
+                
+                initializeWidgets(data);
+                initializeForm();
+        }
+        
+        /**
+         * Call the functions that initialize the widgets and layout.
+         * 
+         * @param specs
+         *                - the widgets of an already parsed schema
+         */
+        public void generateForm(List<WidgetSpec> specs) {
+                initializeContentView();
+                
+                initializeWidgets(specs);
+                initializeForm();
+        }
+        
+        /**
+         * Generates the form as a list whose rows are created only when they
+         * are shown, see {@link FormListAdapter}. Meant for long forms, the
+         * time to open the form and the memory of the widgets don't depend on
+         * the number of widgets.
+         * 
+         * @param data
+         *                - the raw json data as a String
+         */
+        public void generateListForm(String data) {
+                FormSchema schema = getSchema(data);
+                
+                generateListForm(getValidatedWidgets(schema));
+        }
+        
+        /**
+         * @see #generateListForm(String)
+         * @param specs
+         *                - the widgets of an already parsed schema
+         */
+        public void generateListForm(List<WidgetSpec> specs) {
+                cancelFormLoading();
+                registerWidgets(specs, new ArrayList<FormWidget>());
+                
+                ListView listView = new ListView(this);
+                listView.setBackgroundColor(Color.WHITE);
+                listView.setItemsCanFocus(true);
+                listView.addFooterView(createButtonsLayout());
+                
+                _scrollView = null;
+                _formLayout = null;
+                _listAdapter = new FormListAdapter(this, createValueModel(specs));
+                
+                listView.setRecyclerListener(_listAdapter);
+                listView.setAdapter(_listAdapter);
+                
+                setContentView(listView);
+        }
+        
+        /**
+         * Shows a saved record as a read only list of labels and values, see
+         * {@link FormReviewAdapter}. No widget is created, so this costs much
+         * less than generating the form and populating it. Showing another
+         * record of the same schema reuses the list.
+         * 
+         * @param data
+         *                - the raw json data as a String
+         * @param record
+         *                - the json object of the record, or null
+         */
+        public void generateReviewForm(String data, String record) {
+                FormSchema schema = getSchema(data);
+                
+                generateReviewForm(getValidatedWidgets(schema), record);
+        }
+        
+        /**
+         * @see #generateReviewForm(String, String)
+         * @param specs
+         *                - the widgets of an already parsed schema
+         * @param record
+         *                - the json object of the record, or null
+         */
+        public void generateReviewForm(List<WidgetSpec> specs, String record) {
+                // -- the schema cache gives the same specs for the same schema
+                if (_reviewAdapter != null && _reviewAdapter.getSpecs() == specs) {
+                        _reviewAdapter.setRecord(record);
+                        return;
+                }
+                
+                cancelFormLoading();
+                registerWidgets(specs, new ArrayList<FormWidget>());
+                
+                ListView listView = new ListView(this);
+                listView.setBackgroundColor(Color.WHITE);
+                
+                _scrollView = null;
+                _formLayout = null;
+                _reviewAdapter = new FormReviewAdapter(this, specs, record);
+                
+                listView.setAdapter(_reviewAdapter);
+                
+                setContentView(listView);
+        }
+        
+        /**
+         * Generates the form as a wizard that shows one page at a time, see
+         * {@link FormWizard}. Only the widgets of the page shown are created,
+         * the next page is prepared in background.
+         * 
+         * @param data
+         *                - the raw json data as a String
+         */
+        public void generateWizardForm(String data) {
+                FormSchema schema = getSchema(data);
+                
+                generateWizardForm(getValidatedWidgets(schema));
+        }
+        
+        /**
+         * @see #generateWizardForm(String)
+         * @param specs
+         *                - the widgets of an already parsed schema
+         */
+        public void generateWizardForm(List<WidgetSpec> specs) {
+                cancelFormLoading();
+                initializeContentView();
+                registerWidgets(specs, new ArrayList<FormWidget>());
+                
+                _wizard = new FormWizard(this, createValueModel(specs), _tree);
+                _wizard.start();
+        }
+        
+        /**
+         * returns true if a new page of a wizard starts at the widget, when it
+         * is at the top level of the form. By default each label and each
+         * accordion starts a page.
+         */
+        protected boolean isPageBreak(WidgetSpec spec) {
+                return SCHEMA_KEY_LABEL.equals(spec.getType()) || SCHEMA_KEY_ACCORDION.equals(spec.getType());
+        }
+        
+        /**
+         * Shows the widgets of a page of the wizard instead of the ones of the
+         * previous page, which are recycled. Only those widgets are given back
+         * to the {@link WidgetPool}, the pooled widgets of the new page keep
+         * their context on this activity. The widgets are set in the tree of
+         * the form.
+         */
+        void showWizardPage(List<FormWidget> widgets) {
+                recycleWidgets();
+                _formLayout.removeAllViews();
+                
+                _widgets = new ArrayList<FormWidget>(widgets);
+                _map = new HashMap<String, FormWidget>();
+                
+                for (FormWidget widget : widgets) {
+                        _map.put(widget.getId(), widget);
+                        widget.setForm(this);
+                }
+                
+                initializeAccordions();
+                
+                _formLayout.addView(createWizardButtonsLayout());
+                _scrollView.scrollTo(0, 0);
+        }
+        
+        /**
+         * Generates the form from a class written by the FormClassGenerator,
+         * no schema is read and the visibility rules are applied by the
+         * generated form. The sections are the tables of the generated form
+         * and the widgets are not indexed by id, see {@link #findWidget(String)}.
+         * The form has no specs, a later {@link #reloadForm(List)} creates
+         * every widget again.
+         * 
+         * @param form
+         *                - a new instance of the generated class
+         */
+        public void generateForm(GeneratedForm form) {
+                cancelFormLoading();
+                initializeContentView();
+                
+                List<FormWidget> widgets = form.inflate(this);
+                
+                resetForm(null, FormTree.fromChildren(widgets, form.getChildren()));
+                _widgets.addAll(widgets);
+                
+                for (FormWidget widget : widgets) {
+                        widget.setForm(this);
+                }
+                
+                initializeAccordions();
+                
+                form.applyRules();
+                createMenuButtons();
+        }
+        
+        /**
+         * Generates the form from the compiled version of a schema in the
+         * assets folder, see {@link CompiledSchema#fromAsset(Context, String)}.
+         * Falls back to parsing the json if the schema can't be compiled.
+         * 
+         * @param filename
+         *                - the json schema in the assets folder
+         */
+        public void generateCompiledForm(String filename) {
+                generateForm(loadSchema(filename));
+        }
+        
+        /**
+         * Generates a form of a catalog in the assets folder, see
+         * {@link FormCatalog}. Only the schema of the form is read.
+         * 
+         * @param catalog
+         *                - the catalog in the assets folder
+         * @param name
+         *                - the name of the form in the catalog
+         */
+        public void generateCatalogForm(String catalog, String name) {
+                FormSchema schema = null;
+                
+                try {
+                        schema = FormCatalog.fromAsset(this, catalog).getSchema(name, getFragmentResolver());
+                }
+                catch (IOException e) {
+                        Log.e(LOG_TAG, e.getMessage());
+                }
+                
+                generateForm(getValidatedWidgets(schema));
+        }
+        
+        /**
+         * Generates the form without blocking the main thread: the schema is
+         * read and parsed in background, then the widgets are created a few
+         * at a time, see {@link FormInflater}. The first widgets are shown as
+         * soon as they are created, the rules of the form are applied when the
+         * last one is, see {@link #onFormInflated()}.
+         * 
+         * @param filename
+         *                - the json schema in the assets folder
+         */
+        public void generateFormAsync(String filename) {
+                cancelFormLoading();
+                
+                initializeContentView();
+                registerWidgets(new ArrayList<WidgetSpec>(), new ArrayList<FormWidget>());
+                
+                _loader = new AsyncFormLoader(this);
+                _loader.execute(filename);
+        }
+        
+        /**
+         * Stops the loading started by {@link #generateFormAsync(String)}, if
+         * it is still running.
+         */
+        public void cancelFormLoading() {
+                if (_loader != null) {
+                        _loader.cancel(false);
+                        _loader = null;
+                }
+                
+                if (_inflater != null) {
+                        _inflater.cancel();
+                        _inflater = null;
+                }
+        }
+        
+        /**
+         * returns true if the forms created a few widgets at a time, by
+         * {@link #generateFormAsync(String)} and
+         * {@link #prefetchForm(String, String)}, create their widgets on a
+         * background thread and only attach them on the main thread. Only the
+         * factories of the {@link #getWidgetFactories() registry} that are a
+         * {@link ThreadSafeWidgetFactory} are called there, the widgets are
+         * still configured on the main thread by
+         * {@link #parseWidget(WidgetSpec, FormWidget)}, which gets them from
+         * {@link #getWidget(String, WidgetSpec, FormWidget)}. The other
+         * widgets, and the ones taken from the {@link WidgetPool}, are
+         * created on the main thread. Disabled by default.
+         */
+        protected boolean isBackgroundInflationEnabled() {
+                return false;
+        }
+        
+        /**
+         * returns true while the form started by
+         * {@link #generateFormAsync(String)} is being created.
+         */
+        public boolean isFormLoading() {
+                return _loader != null || _inflater != null;
+        }
+        
+        void startInflating(FormInflater inflater) {
+                _loader = null;
+                _inflater = inflater;
+                _inflater.start();
+        }
+        
+        /**
+         * Called when every widget of a form generated by
+         * {@link #generateFormAsync(String)} has been created and registered.
+         * Applies the visibility rules and adds the buttons.
+         */
+        protected void onFormInflated() {
+                _inflater = null;
+                
+                initToggles();
+                initializeWidgetsVisibility();
+                
+                createMenuButtons();
+        }
+        
+        // -----------------------------------------------
+        //
+        // prefetch
+        //
+        // -----------------------------------------------
+        
+        /**
+         * Prepares the form of a record before it is opened, for example the
+         * next record of a list while the current one is edited. The schema is
+         * read and the values of the record are parsed in background, then the
+         * widgets are created a little at a time on the main thread, see
+         * {@link PreparedForm}. A new call replaces the form being prepared.
+         * 
+         * @param filename
+         *                - the json schema in the assets folder
+         * @param data
+         *                - the json object of the record, or null
+         */
+        public void prefetchForm(String filename, String data) {
+                cancelPrefetch();
+                
+                _prefetcher = new AsyncFormPrefetcher(this, data);
+                _prefetcher.execute(filename);
+        }
+        
+        /**
+         * Stops the prefetch started by {@link #prefetchForm(String, String)},
+         * the widgets already created are stopped and given back to the
+         * {@link WidgetPool}.
+         */
+        public void cancelPrefetch() {
+                if (_prefetcher != null) {
+                        _prefetcher.cancel(false);
+                        _prefetcher = null;
+                }
+                
+                if (_prefetchInflater != null) {
+                        _prefetchInflater.cancel();
+                        _prefetchInflater = null;
+                }
+                
+                if (_prefetched != null) {
+                        List<FormWidget> widgets = _prefetched.getWidgets(this);
+                        
+                        for (int i = 0; widgets != null && i < widgets.size(); i++) {
+                                widgets.get(i).recycle();
+                                WidgetPool.getInstance().recycle(widgets.get(i));
+                        }
+                        
+                        _prefetched.releaseWidgets();
+                        _prefetched = null;
+                }
+        }
+        
+        void startPrefetching(FormInflater inflater) {
+                _prefetcher = null;
+                _prefetchInflater = inflater;
+                _prefetchInflater.start();
+        }
+        
+        /**
+         * Called when the widgets of a form started by
+         * {@link #prefetchForm(String, String)} have been created, the form is
+         * kept until it is taken with
+         * {@link #takePrefetchedForm(String, String)}.
+         */
+        protected void onFormPrefetched(PreparedForm form) {
+                _prefetchInflater = null;
+                _prefetched = form;
+        }
+        
+        /**
+         * returns the form prefetched for the schema and the record, or null if
+         * it is not ready. The form is handed over, it is not kept anymore.
+         */
+        public PreparedForm takePrefetchedForm(String filename, String data) {
+                PreparedForm form = _prefetched;
+                
+                if (form == null || !form.matches(filename, data)) {
+                        return null;
+                }
+                
+                _prefetched = null;
+                return form;
+        }
+        
+        /**
+         * Shows a form prepared ahead of time, its widgets are laid out and
+         * filled with the values of its record. If they were created for
+         * another activity, they are created again. The widgets of the form
+         * shown before are recycled.
+         */
+        public void generateForm(PreparedForm form) {
+                List<FormWidget> widgets = form.getWidgets(this);
+                
+                cancelFormLoading();
+                recycleWidgets();
+                initializeContentView();
+                
+                if (widgets != null) {
+                        registerWidgets(form.getSpecs(), form.getTree(), widgets);
+                }
+                else {
+                        initializeWidgets(form.getSpecs());
+                }
+                
+                form.releaseWidgets();
+                initializeForm();
+                
+                for (Map.Entry<String, String> entry : form.getValues().entrySet()) {
+                        setPropertyValue(entry.getKey(), entry.getValue());
+                }
+        }
+        
+        /**
+         * Shows the form of a record, from the prefetched form if it is the
+         * one, see {@link #prefetchForm(String, String)}, otherwise it is
+         * generated and populated as usual.
+         * 
+         * @param filename
+         *                - the json schema in the assets folder
+         * @param data
+         *                - the json object of the record, or null
+         */
+        public void generatePrefetchedForm(String filename, String data) {
+                PreparedForm form = takePrefetchedForm(filename, data);
+                
+                if (form != null) {
+                        generateForm(form);
+                        return;
+                }
+                
+                generateCompiledForm(filename);
+                
+                if (data != null) {
+                        populate(data);
+                }
+        }
+        
+        /**
+         * returns the widgets of a schema in the assets folder, read from its
+         * compiled version when possible. Can be called from any thread.
+         * 
+         * @param filename
+         *                - the json schema in the assets folder
+         */
+        protected List<WidgetSpec> loadSchema(String filename) {
+                try {
+                        CompiledSchema compiled = CompiledSchema.fromAsset(this, filename);
+                        reportDiagnostics(validate(compiled));
+                        
+                        return compiled;
+                }
+                catch (IOException e) {
+                        Log.e(LOG_TAG, "Could not compile " + filename + ": " + e.getMessage());
+                }
+                
+                FormSchema schema;
+                FormSchemaCache cache = FormSchemaCache.getInstance();
+                
+                try {
+                        schema = cache.get(this, filename, getFragmentResolver());
+                }
+                catch (IOException e) {
+                        Log.e(LOG_TAG, e.getMessage());
+                        return new ArrayList<WidgetSpec>();
+                }
+                
+                return getValidatedWidgets(schema);
+        }
+        
+        /**
+         * Updates the form to a new version of its schema. Only the widgets
+         * that were added or changed are created, the others are kept with
+         * their values and state. A changed widget gets the value of the
+         * widget it replaces.
+         * 
+         * @param data
+         *                - the raw json data of the new version
+         */
+        public void reloadForm(String data) {
+                FormSchema schema = getSchema(data);
+                
+                if (schema != null) {
+                        reloadForm(getValidatedWidgets(schema));
+                }
+        }
+        
+        /**
+         * @see #reloadForm(String)
+         * @param specs
+         *                - the widgets of the new version
+         */
+        public void reloadForm(List<WidgetSpec> specs) {
+                if (_wizard != null) {
+                        FormWizard previous = _wizard;
+                        previous.flush();
+                        
+                        generateWizardForm(specs);
+                        _wizard.copyValues(previous.getModel());
+                        return;
+                }
+                
+                if (_listAdapter != null) {
+                        FormListAdapter previous = _listAdapter;
+                        previous.flush();
+                        
+                        generateListForm(specs);
+                        _listAdapter.getModel().copyValues(previous.getModel());
+                        _listAdapter.notifyDataSetChanged();
+                        return;
+                }
+                
+                if (_specs == null || _formLayout == null || isFormLoading()) {
+                        cancelFormLoading();
+                        generateForm(specs);
+                        return;
+                }
+                
+                SchemaDiff diff = SchemaDiff.compute(_specs, specs);
+                
+                if (diff.isEmpty()) {
+                        _specs = specs;
+                        return;
+                }
+                
+                Map<String, FormWidget> current = getWidgetMap();
+                FormValueModel pending = _pendingValues;
+                List<FormWidget> widgets = new ArrayList<FormWidget>(specs.size());
+                List<FormSpinner> createdSpinners = new ArrayList<FormSpinner>();
+                
+                for (WidgetSpec spec : specs) {
+                        String id = spec.getId();
+                        // -- removed from current, so a duplicated id doesn't reuse the same widget twice
+                        FormWidget old = id != null ? current.remove(id) : null;
+                        FormWidget widget;
+                        
+                        if (old != null && diff.isUnchanged(id)) {
+                                widget = old;
+                        }
+                        else {
+                                widget = parseWidget(spec);
+                                
+                                if (widget == null) {
+                                        continue;
+                                }
+                                
+                                if (old != null) {
+                                        // -- getValue() is empty for hidden widgets, the rules are applied again below
+                                        old.setVisibility(View.VISIBLE);
+                                        widget.setValue(old.getValue());
+                                }
+                                else if (pending != null && pending.indexOf(id) != -1 && pending.getRawValue(pending.indexOf(id)) != null) {
+                                        // -- a child of an accordion that was never expanded, every widget is created on reload
+                                        setWidgetValue(widget, pending.getRawValue(pending.indexOf(id)));
+                                }
+                                
+                                if (widget instanceof FormSpinner) {
+                                        createdSpinners.add((FormSpinner) widget);
+                                }
+                        }
+                        
+                        widgets.add(widget);
+                }
+                
+                // -- detach the kept views from their parents, the layout is built again
+                if (_formLayout instanceof FormLayout) {
+                        ((FormLayout) _formLayout).releaseWidgets();
+                }
+                
+                for (FormWidget widget : widgets) {
+                        ViewGroup parent = (ViewGroup) widget.getView().getParent();
+                        
+                        if (parent != null) {
+                                parent.removeView(widget.getView());
+                        }
+                }
+                
+                // -- a kept accordion still holds the views of its removed children
+                for (FormWidget widget : widgets) {
+                        if (widget instanceof FormAccordion) {
+                                ((FormAccordion) widget).removeChildWidgets();
+                        }
+                }
+                
+                _formLayout.removeAllViews();
+                registerWidgets(specs, widgets);
+                initializeAccordions();
+                
+                for (FormSpinner formSpinner : createdSpinners) {
+                        formSpinner._spinner.setOnItemSelectedListener(new SelectionHandler(formSpinner));
+                }
+                
+                reapplyVisibility();
+                createMenuButtons();
+        }
+        
+        /**
+         * Applies the hideOnClick and toggles rules to the current values of
+         * the widgets, unlike {@link #initializeWidgetsVisibility()} the
+         * spinners keep their selection.
+         */
+        protected void reapplyVisibility() {
+                for (FormWidget widget : _widgets) {
+                        widget.setVisibility(View.VISIBLE);
+                }
+                
+                for (int i = _widgets.size() - 1; i >= 0; i--) {
+                        FormWidget widget = _widgets.get(i);
+                        
+                        if (widget instanceof FormSpinner) {
+                                FormSpinner formSpinner = (FormSpinner) widget;
+                                formSpinner.lastModifiedWidgets.clear();
+                                formSpinner.applyModifications();
+                        }
+                }
+                
+                initToggles();
+        }
+        
+        /**
+         * Lays out the widgets already created and applies the visibility
+         * rules.
+         */
+        protected void initializeForm() {
+                initializeAccordions();
+                //addWidgetsToLayout(_widgets);
+                
+                initToggles();
+                initializeWidgetsVisibility();
+                
+                createMenuButtons();
+        }
+        
+        /**
+         * The schema is parsed only once per content, later calls with the
+         * same data reuse it from the {@link FormSchemaCache}.
+         * 
+         * @param data
+         *                - the raw json data as a String
+         */
+        public void initializeWidgets(String data) {
+                FormSchema schema = getSchema(data);
+                
+                initializeWidgets(getValidatedWidgets(schema));
+        }
+        
+        /**
+         * returns the parsed schema of the data from the shared cache, or null
+         * if the data is not a valid schema.
+         * 
+         * @param data
+         *                - the raw json data as a String
+         */
+        protected FormSchema getSchema(String data) {
+                FormSchemaCache cache = FormSchemaCache.getInstance();
+                
+                try {
+                        return cache.get(data, getFragmentResolver());
+                }
+                catch (IOException e) {
+                        Log.e(LOG_TAG, e.getMessage());
+                        return null;
+                }
+        }
+        
+        /**
+         * returns the problems of the schema, including the types that have no
+         * factory in this form.
+         * 
+         * @param specs
+         *                - the widgets of an already parsed schema
+         */
+        public List<SchemaDiagnostic> validate(List<WidgetSpec> specs) {
+                return SchemaValidator.validate(specs, getWidgetFactories().getTypes());
+        }
+        
+        /**
+         * returns the widgets of a parsed schema, or an empty list if there is
+         * no schema, after reporting the problems of the schema and the types
+         * that have no factory in this form.
+         */
+        private List<WidgetSpec> getValidatedWidgets(FormSchema schema) {
+                if (schema == null) {
+                        return new ArrayList<WidgetSpec>();
+                }
+                
+                reportDiagnostics(schema.getDiagnostics(getWidgetFactories().getTypes()));
+                
+                return schema.getWidgets();
+        }
+        
+        /**
+         * Called with the problems of each schema used to create the form,
+         * logs them by default.
+         */
+        protected void reportDiagnostics(List<SchemaDiagnostic> diagnostics) {
+                for (SchemaDiagnostic diagnostic : diagnostics) {
+                        if (diagnostic.getSeverity() == SchemaDiagnostic.Severity.ERROR) {
+                                Log.e(LOG_TAG, diagnostic.toString());
+                        }
+                        else {
+                                Log.w(LOG_TAG, diagnostic.toString());
+                        }
+                }
+        }
         
-        @Override
-        public boolean onCreateOptionsMenu(Menu menu) {
-                menu.add(0, OPTION_SAVE, 0, "Save");
-                menu.add(0, OPTION_POPULATE, 0, "Populate");
-                menu.add(0, OPTION_CANCEL, 0, "Cancel");
-                return true;
+        /**
+         * returns the resolver of the "$ref" entries of the schemas, by default
+         * the fragments are read from the assets folder.
+         */
+        protected FragmentResolver getFragmentResolver() {
+                return new AssetFragmentResolver(this);
         }
         
-        @Override
-        public boolean onMenuItemSelected(int id, MenuItem item) {
+        /**
+         * @param specs
+         *                - the widgets of an already parsed schema
+         */
+        public void initializeWidgets(List<WidgetSpec> specs) {
+                List<FormWidget> widgets = new ArrayList<FormWidget>(specs.size());
+                Set<String> deferred = isAccordionDeferralEnabled() ? getDeferredIds(specs) : new HashSet<String>();
                 
-                switch (item.getItemId()) {
-                        case OPTION_SAVE:
-                                save();
-                                break;
+                for (int i = 0; i < specs.size(); i++) {
+                        if (deferred.contains(specs.get(i).getId())) {
+                                continue;
+                        }
                         
-                        case OPTION_POPULATE:
-                                populate(FormActivity.parseFileToString(this, "bauru_data.json"));
-                                break;
+                        FormWidget formWidget = parseWidget(specs.get(i));
                         
-                        case OPTION_CANCEL:
-                                break;
+                        if (formWidget != null) {
+                                widgets.add(formWidget);
+                        }
                 }
                 
-                return super.onMenuItemSelected(id, item);
+                registerWidgets(specs, widgets);
+                
+                if (!deferred.isEmpty()) {
+                        _pendingValues = createValueModel(specs);
+                }
         }
         
-        // -----------------------------------------------
-        //
-        // parse data and build view
-        //
-        // -----------------------------------------------
+        /**
+         * returns true if the children of the accordions are created only when
+         * the accordion is first expanded, the accordions start collapsed.
+         * Until then the values of the children are kept in a
+         * {@link FormValueModel}, and saved from it.
+         */
+        protected boolean isAccordionDeferralEnabled() {
+                return false;
+        }
         
         /**
-         * Call the functions that initialize the widgets and layout.
-         * 
-         * @param data
-         *                - the raw json data as a String
+         * returns the ids of the children of the accordions that can be
+         * created later, the ones whose factory is lazy, see
+         * {@link WidgetFactory#isLazy(WidgetSpec)}. The children that change
+         * the visibility of other widgets are not lazy, the rules of the form
+         * need them.
          */
-        public void generateForm(String data) {
-                initializeContentView();
+        private Set<String> getDeferredIds(List<WidgetSpec> specs) {
+                WidgetFactoryRegistry registry = getWidgetFactories();
+                Set<String> ids = new HashSet<String>();
                 
-                initializeWidgets(data);
-                initializeAccordions();
-                //addWidgetsToLayout(_widgets);
+                for (WidgetSpec spec : specs) {
+                        if (SCHEMA_KEY_ACCORDION.equals(spec.getType())) {
+                                ids.addAll(spec.getChildren());
+                        }
+                }
                 
-                initToggles();
-                initializeWidgetsVisibility();
+                for (WidgetSpec spec : specs) {
+                        if (!registry.isLazy(spec)) {
+                                ids.remove(spec.getId());
+                        }
+                }
                 
-                createMenuButtons();
+                return ids;
         }
         
         /**
-         * @param data
-         *                - the raw json data as a String
+         * @param specs
+         *                - the schema of the form
+         * @param widgets
+         *                - the widgets created from it, in the same order
          */
-        public void initializeWidgets(String data) {
-                _widgets = new ArrayList<FormWidget>();
+        void registerWidgets(List<WidgetSpec> specs, List<FormWidget> widgets) {
+                registerWidgets(specs, specs != null ? FormTree.fromSpecs(specs) : FormTree.fromWidgets(widgets), widgets);
+        }
+        
+        /**
+         * @param specs
+         *                - the schema of the form
+         * @param tree
+         *                - the tree of the schema, or of the widgets if there
+         *                is no schema
+         * @param widgets
+         *                - the widgets created from it, in the same order
+         */
+        void registerWidgets(List<WidgetSpec> specs, FormTree tree, List<FormWidget> widgets) {
+                resetForm(specs, tree);
                 _map = new HashMap<String, FormWidget>();
                 
-                List<FormWidget> widgets = parseJsonToWidgets(data);
+                int index = 0;
                 
                 for (FormWidget formWidget : widgets) {
                         _widgets.add(formWidget);
                         _map.put(formWidget.getId(), formWidget);
+                        formWidget.setForm(this);
+                        
+                        // -- the widgets follow the schema, some entries have no widget
+                        while (index < _tree.size() && !equals(_tree.getId(index), formWidget.getId())) {
+                                index++;
+                        }
+                        
+                        if (index < _tree.size()) {
+                                _tree.setWidget(index++, formWidget);
+                        }
+                }
+        }
+        
+        /**
+         * Drops the state of the previous form, the new form has no widgets
+         * and no map yet.
+         */
+        private void resetForm(List<WidgetSpec> specs, FormTree tree) {
+                _specs = specs;
+                _tree = tree;
+                
+                if (_listAdapter != null) {
+                        _listAdapter.recycleWidgets();
+                        _listAdapter = null;
+                }
+                
+                _reviewAdapter = null;
+                
+                if (_wizard != null) {
+                        _wizard.cancel();
+                        _wizard = null;
                 }
+                
+                _pendingValues = null;
+                _widgets = new ArrayList<FormWidget>();
+                _map = null;
+        }
+        
+        private static boolean equals(String value1, String value2) {
+                return value1 == null ? value2 == null : value1.equals(value2);
         }
         
         public void initializeContentView() {
@@ -180,7 +1121,7 @@ public class FormActivity extends Activity implements FormInterface {
                 _scrollView.setLayoutParams(new LinearLayout.LayoutParams(LayoutParams.FILL_PARENT, LayoutParams.FILL_PARENT));
                 _scrollView.setBackgroundColor(Color.WHITE);
                 
-                _formLayout = new LinearLayout(this);
+                _formLayout = isFlatLayoutEnabled() ? new FormLayout(this) : new LinearLayout(this);
                 _formLayout.setOrientation(LinearLayout.VERTICAL);
                 defaultLayoutParams.setMargins(15, 15, 15, 15);
                 _formLayout.setLayoutParams(new LinearLayout.LayoutParams(LayoutParams.FILL_PARENT, LayoutParams.WRAP_CONTENT));
@@ -195,71 +1136,227 @@ public class FormActivity extends Activity implements FormInterface {
                 Collections.sort(widgets, new PriorityComparison());
                 
                 for (int i = 0; i < widgets.size(); i++) {
-                        _formLayout.addView((View) widgets.get(i).getView());
+                        addWidgetView(widgets.get(i), null);
+                }
+        }
+        
+        /**
+         * returns true if the views of the widgets are added to a single
+         * {@link FormLayout} instead of a layout per widget, which takes less
+         * time to measure and lay out on long forms. Views added to the form
+         * layout that belong to no widget, like the buttons, are always shown.
+         */
+        protected boolean isFlatLayoutEnabled() {
+                return false;
+        }
+        
+        /**
+         * Adds the view of a widget to the form layout, or to its accordion.
+         * 
+         * @param widget
+         * @param parent
+         *                - the accordion of the widget, or null
+         */
+        void addWidgetView(FormWidget widget, FormWidget parent) {
+                if (_formLayout instanceof FormLayout) {
+                        ((FormLayout) _formLayout).addWidget(widget, parent);
+                }
+                else if (parent instanceof FormAccordion) {
+                        ((FormAccordion) parent).addChildWidget(widget._layout);
+                }
+                else {
+                        _formLayout.addView(widget.getView());
                 }
         }
         
         /**
-         * É necessário criar uma lista secundária pois a lista chamada
-         * "_widgets" é utilizada como forma a referenciar todos os widgets
-         * criados no formulário, e para que o accordion funcione é necessário
-         * que todos os widgets filhos sejam removidos da lista para que este
-         * widgets em específico sejam adicionados somente ao layout do
-         * accordion. Em contrapartida não podemos remover este objeto do
-         * "_widgets" pois ele é utilizado para ser referenciado por toda a
-         * aplicação como forma de identificar todos os componentes.
+         * Adds the widgets to the layout: the top level widgets to the form,
+         * sorted by priority, and the others to their accordion, see
+         * {@link FormTree}. Accordions can be nested.
          */
         public void initializeAccordions() {
-                List<FormWidget> clonedWidgets = new ArrayList<FormWidget>(_widgets);
+                List<FormWidget> topLevel = new ArrayList<FormWidget>();
+                int[] order = _tree.getOrder();
                 
-                for (FormWidget widget : _widgets) {
+                for (int index : order) {
+                        FormWidget widget = _tree.getWidget(index);
+                        FormWidget parent = _tree.getParent(index) != FormTree.ROOT ? _tree.getWidget(_tree.getParent(index)) : null;
                         
-                        if (widget instanceof FormAccordion) {
-                                FormAccordion accordion = (FormAccordion) widget;
-                                
-                                List<String> children = accordion.getChildrenIds();
+                        if (widget == null) {
+                                continue;
+                        }
+                        
+                        // -- the children of an accordion that could not be created are shown at the top level
+                        if (!(parent instanceof FormAccordion)) {
+                                topLevel.add(widget);
+                        }
+                        else if (!(_formLayout instanceof FormLayout)) {
+                                ((FormAccordion) parent).addChildWidget(widget._layout);
+                        }
+                }
+                
+                addWidgetsToLayout(topLevel);
+                
+                // -- in a flat layout the sections follow their accordion
+                if (_formLayout instanceof FormLayout) {
+                        for (int index : order) {
+                                FormWidget widget = _tree.getWidget(index);
+                                FormWidget parent = _tree.getParent(index) != FormTree.ROOT ? _tree.getWidget(_tree.getParent(index)) : null;
                                 
-                                //Iterate over all children of the accordion, and remove it from the cloned list
-                                for (String childId : children) {
-                                        FormWidget childWidget = _map.get(childId);
-                                        
-                                        if (childWidget != null) {
-                                                accordion.addChildWidget(childWidget._layout);
-                                                clonedWidgets.remove(childWidget);
-                                        }
+                                if (widget != null && parent instanceof FormAccordion) {
+                                        addWidgetView(widget, parent);
                                 }
                         }
                 }
                 
-                addWidgetsToLayout(clonedWidgets);
+                for (FormWidget widget : _widgets) {
+                        if (widget instanceof FormAccordion) {
+                                deferChildren((FormAccordion) widget);
+                        }
+                }
+        }
+        
+        /**
+         * Collapses the accordion until it is expanded, if some of its
+         * children are not created yet.
+         */
+        private void deferChildren(final FormAccordion accordion) {
+                if (_pendingValues == null) {
+                        return;
+                }
+                
+                int node = _tree.indexOf(accordion.getId());
+                
+                for (int i = 0; node != -1 && i < _tree.getChildren(node).length; i++) {
+                        if (_tree.getWidget(_tree.getChildren(node)[i]) == null) {
+                                accordion.deferChildren(new Runnable() {
+                                        public void run() {
+                                                inflateDeferredChildren(accordion);
+                                        }
+                                });
+                                return;
+                        }
+                }
+        }
+        
+        /**
+         * Creates the children of an accordion that is expanded for the first
+         * time, with their pending values, and applies the rules of the form
+         * again.
+         */
+        protected void inflateDeferredChildren(FormAccordion accordion) {
+                if (_pendingValues == null) {
+                        return;
+                }
+                
+                List<FormSpinner> createdSpinners = new ArrayList<FormSpinner>();
+                
+                int node = _tree.indexOf(accordion.getId());
+                
+                updatePendingValues();
+                
+                // -- the nodes of the tree are the indexes of the schema, like the pending values
+                for (int index : node != -1 ? _tree.getChildren(node) : new int[0]) {
+                        if (_tree.getWidget(index) != null) {
+                                continue;
+                        }
+                        
+                        FormWidget widget = parseWidget(_specs.get(index));
+                        
+                        if (widget == null) {
+                                continue;
+                        }
+                        
+                        if (_pendingValues.getRawValue(index) != null) {
+                                setWidgetValue(widget, _pendingValues.getRawValue(index));
+                        }
+                        
+                        _widgets.add(widget);
+                        getWidgetMap().put(widget.getId(), widget);
+                        _tree.setWidget(index, widget);
+                        widget.setForm(this);
+                        addWidgetView(widget, accordion);
+                        
+                        if (widget instanceof FormSpinner) {
+                                createdSpinners.add((FormSpinner) widget);
+                        }
+                        else if (widget instanceof FormAccordion) {
+                                deferChildren((FormAccordion) widget);
+                        }
+                }
+                
+                for (FormSpinner formSpinner : createdSpinners) {
+                        formSpinner._spinner.setOnItemSelectedListener(new SelectionHandler(formSpinner));
+                }
+                
+                reapplyVisibility();
+        }
+        
+        /**
+         * writes the values of the widgets that drive the visibility rules to
+         * the pending values, so the rules are applied to the widgets not
+         * created yet as they are to the others. Hidden widgets keep the value
+         * they had when they were shown.
+         */
+        private void updatePendingValues() {
+                for (FormWidget widget : _widgets) {
+                        int index = _pendingValues.indexOf(widget.getId());
+                        
+                        if (index != -1 && widget.isVisible() && (widget instanceof FormCheckBox || widget instanceof FormSpinner)) {
+                                _pendingValues.setValue(index, widget.getValue());
+                        }
+                }
+        }
+        
+        /**
+         * puts the values of the widgets not created yet, the children of the
+         * accordions that were never expanded.
+         */
+        private void savePendingValues(JSONObject data) throws JSONException {
+                updatePendingValues();
+                
+                for (int i = 0; i < _specs.size(); i++) {
+                        WidgetSpec spec = _specs.get(i);
+                        
+                        // -- the same widgets as the ones saved from the form: known types, no labels
+                        if (_tree.getWidget(i) != null || _pendingValues.indexOf(spec.getId()) != i || getWidgetFactories().get(spec.getType()) == null) {
+                                continue;
+                        }
+                        
+                        if (!SCHEMA_KEY_LABEL.equals(spec.getType()) && !SCHEMA_KEY_ACCORDION.equals(spec.getType())) {
+                                data.put(spec.getId(), _pendingValues.getSavedValue(i));
+                        }
+                }
         }
         
         /**
          * 
-         * Parses a supplied schema of raw json data and creates widgets
+         * Parses a supplied schema of raw json data and creates widgets. The
+         * schema is read as a stream, each widget is created as soon as its
+         * entry has been read.
          * 
          * @param json
          * @return the conversion of the json to an array of widgets.
-         * @throws JSONException
          */
         public List<FormWidget> parseJsonToWidgets(String json) {
                 List<FormWidget> widgets = new ArrayList<FormWidget>();
+                SchemaReader reader = new SchemaReader(new StringReader(json));
                 
                 try {
-                        JSONArray jsonArray = new JSONArray(json);
-                        
-                        for (int i = 0; i < jsonArray.length(); i++) {
-                                JSONObject jsonWidget = jsonArray.getJSONObject(i);
-                                FormWidget formWidget = parseWidget(jsonWidget);
+                        while (reader.hasNext()) {
+                                FormWidget formWidget = parseWidget(reader.next());
                                 
                                 if (formWidget != null) {
                                         widgets.add(formWidget);
                                 }
                         }
                 }
-                catch (JSONException e) {
+                catch (IOException e) {
                         Log.e(LOG_TAG, e.getMessage());
                 }
+                finally {
+                        closeQuietly(reader);
+                }
                 
                 return widgets;
         }
@@ -267,55 +1364,98 @@ public class FormActivity extends Activity implements FormInterface {
         /**
          * Creates object as its configuration.
          * 
-         * @param jsonWidget
+         * @param spec
          * @return the object with his appropriated cast.
-         * @throws JSONException
          */
-        public FormWidget parseWidget(JSONObject jsonWidget) throws JSONException {
-                FormWidget widget = null;
-                
-                String widgetLabelName = jsonWidget.getString(SCHEMA_KEY_NAME);
+        public FormWidget parseWidget(WidgetSpec spec) {
+                return parseWidget(spec, null);
+        }
+        
+        /**
+         * Creates the widget of a spec like {@link #parseWidget(WidgetSpec)},
+         * or configures the widget already created for it on the builder
+         * thread. Subclasses that override {@link #parseWidget(WidgetSpec)}
+         * override this one too, the widgets created on the builder thread
+         * are configured here. Called on the main thread.
+         * 
+         * @param spec
+         * @param prebuilt
+         *                - the widget created by the factory of the spec, see
+         *                {@link #getBackgroundFactory(WidgetSpec)}, or null
+         */
+        protected FormWidget parseWidget(WidgetSpec spec, FormWidget prebuilt) {
+                FormWidget widget = getWidget(spec.getName(), spec, prebuilt);
                 
-                if (!widgetLabelName.equals(SCHEMA_KEY_META)) {
-                        widget = getWidget(widgetLabelName, jsonWidget);
+                if (widget != null) {
+                        widget.setId(spec.getId());
+                        widget.setPriority(spec.getPriority());
+                        widget.setValue(spec.getDefault());
                         
-                        if (widget != null) {
-                                String id = jsonWidget.getString(FormActivity.SCHEMA_KEY_ID);
-                                widget.setId(id);
-                                
-                                int priority = jsonWidget.getInt(FormActivity.SCHEMA_KEY_PRIORITY);
-                                widget.setPriority(priority);
-                                
-                                String defaultValue = getDefault(jsonWidget);
-                                widget.setValue(defaultValue);
-                                
-                                String type = jsonWidget.getString(FormActivity.SCHEMA_KEY_TYPE);
-                                
-                                if (type.equals(SCHEMA_KEY_CHECKBOX)) {
-                                        boolean toggles = hasPropertie(jsonWidget, FormActivity.SCHEMA_KEY_TOGGLES);
-                                        
-                                        if (toggles) {
-                                                ((FormCheckBox) widget).setToggles(parseProperties(jsonWidget, FormActivity.SCHEMA_KEY_TOGGLES));
-                                                ((FormCheckBox) widget).setToggleHandler(new FormActivity.FormWidgetToggleHandler());
-                                        }
+                        if (widget instanceof FormCheckBox) {
+                                if (spec.getToggles() != null) {
+                                        ((FormCheckBox) widget).setToggles(spec.getToggles());
+                                        ((FormCheckBox) widget).setToggleHandler(new FormActivity.FormWidgetToggleHandler());
                                 }
-                                else if (type.equals(SCHEMA_KEY_SPINNER)) {
-                                        boolean widgetsToHide = hasPropertie(jsonWidget, FormActivity.SCHEMA_KEY_ACTIONS);
-                                        
-                                        if (widgetsToHide) {
-                                                HashMap<String, ArrayList<String>> actions = parseProperties(jsonWidget, FormActivity.SCHEMA_KEY_ACTIONS);
-                                                ((FormSpinner) widget).setWidgetsToHide(actions);
-                                        }
+                        }
+                        else if (widget instanceof FormSpinner) {
+                                if (spec.getHideOnClick() != null) {
+                                        ((FormSpinner) widget).setWidgetsToHide(spec.getHideOnClick());
                                 }
-                                
-                                if (jsonWidget.has(FormActivity.SCHEMA_KEY_HINT)) widget.setHint(jsonWidget.getString(FormActivity.SCHEMA_KEY_HINT));
                         }
                         
+                        if (spec.getHint() != null) widget.setHint(spec.getHint());
                 }
                 
                 return widget;
         }
         
+        /**
+         * returns the factory that may create the widget of the spec on the
+         * builder thread, or null if it is created on the main thread: its
+         * factory is not a {@link ThreadSafeWidgetFactory}, or the widget is
+         * taken from the {@link WidgetPool}.
+         */
+        WidgetFactory getBackgroundFactory(WidgetSpec spec) {
+                WidgetFactory factory = getWidgetFactories().get(spec.getType());
+                
+                if (!(factory instanceof ThreadSafeWidgetFactory) || isPooled(spec, factory)) {
+                        return null;
+                }
+                
+                return factory;
+        }
+        
+        /**
+         * @deprecated the widgets are created from the specs of the schema,
+         *             override or call {@link #parseWidget(WidgetSpec)}
+         *             instead. The entry is read as a schema of one widget.
+         * @return the widget of the entry, or null for the meta entry and the
+         *         unknown types.
+         */
+        @Deprecated
+        public FormWidget parseWidget(JSONObject jsonWidget) throws JSONException {
+                WidgetSpec spec = toSpec(jsonWidget);
+                return spec != null ? parseWidget(spec) : null;
+        }
+        
+        /**
+         * returns the spec of a json entry of a schema, or null if it is the
+         * meta entry.
+         */
+        private static WidgetSpec toSpec(JSONObject jsonWidget) throws JSONException {
+                SchemaReader reader = new SchemaReader(new StringReader("[" + jsonWidget + "]"));
+                
+                try {
+                        return reader.hasNext() ? reader.next() : null;
+                }
+                catch (IOException e) {
+                        throw new JSONException(e.getMessage());
+                }
+                finally {
+                        closeQuietly(reader);
+                }
+        }
+        
         // -----------------------------------------------
         //
         // populate and save
@@ -342,44 +1482,147 @@ public class FormActivity extends Activity implements FormInterface {
                 catch (JSONException e) {
                         Log.e(LOG_TAG, e.getMessage());
                 }
-                
-                if (data != null && properties != null) {
-                        processProperties(data, properties);
-                }
+                
+                if (data != null && properties != null) {
+                        processProperties(data, properties);
+                }
+        }
+        
+        /**
+         * fills the form with the data of a json object read as a stream, the
+         * reader is closed. Only the values that are strings, numbers or
+         * booleans are set, and the arrays of the repeating groups and of the
+         * cameras. Null values, the other arrays and objects are skipped.
+         * 
+         * @param in
+         */
+        protected void populate(Reader in) {
+                JsonPullReader reader = new JsonPullReader(in);
+                
+                try {
+                        reader.beginObject();
+                        
+                        while (reader.hasNext()) {
+                                String property = reader.nextName();
+                                Token token = reader.peek();
+                                
+                                if (token == Token.STRING || token == Token.NUMBER || token == Token.BOOLEAN) {
+                                        setPropertyValue(property, reader.nextString());
+                                }
+                                else if (token == Token.BEGIN_ARRAY && hasType(property, SCHEMA_KEY_REPEATING_GROUP, FormRepeatingGroup.class)) {
+                                        setPropertyValue(property, FormRepeatingGroup.readRows(reader));
+                                }
+                                else if (token == Token.BEGIN_ARRAY && hasType(property, SCHEMA_KEY_CAMERA, FormCamera.class)) {
+                                        setPropertyValue(property, PreparedForm.readPhotos(reader));
+                                }
+                                else {
+                                        reader.skipValue();
+                                }
+                        }
+                        
+                        reader.endObject();
+                }
+                catch (IOException e) {
+                        Log.e(LOG_TAG, e.getMessage());
+                }
+                finally {
+                        closeQuietly(reader);
+                }
+        }
+        
+        /**
+         * returns true if the widget with the id has the type, created or not.
+         * 
+         * @param widgetClass
+         *                - the class of the widgets of the type, for the forms
+         *                without specs
+         */
+        private boolean hasType(String id, String type, Class<? extends FormWidget> widgetClass) {
+                int node = _tree != null ? _tree.indexOf(id) : -1;
+                
+                if (_specs != null && node != -1) {
+                        return type.equals(_specs.get(node).getType());
+                }
+                
+                return widgetClass.isInstance(findWidget(id));
+        }
+        
+        /**
+         * fills the form with the data of a json file of the assets folder,
+         * see {@link AssetLoader}.
+         * 
+         * @param filename
+         */
+        public void populateFromAsset(String filename) {
+                try {
+                        populate(AssetLoader.openReader(this, filename));
+                }
+                catch (IOException e) {
+                        Log.e(LOG_TAG, e.getMessage());
+                }
         }
         
         public void processProperties(JSONObject data, JSONArray properties) {
                 String property;
-                FormWidget widget;
                 
                 for (int i = 0; i < properties.length(); i++) {
-                        try {
-                                property = properties.getString(i);
-                                
-                                if (_map.containsKey(property)) {
-                                        widget = _map.get(property);
-                                        
-                                        if (widget instanceof FormCamera) {
-                                                FormCamera formCamera = (FormCamera) widget;
-                                                formCamera.setIdHash(idHash);
-                                                
-                                                String photosArray = data.getString(property);
-                                                photos = Arrays.asList(photosArray.split("\\, "));
-                                                
-                                                formCamera.setPhotos(photos);
-                                                formCamera.updatePhotos();
-                                        }
-                                        else {
-                                                String value = data.getString(property);
-                                                widget.setValue(value);
-                                        }
-                                }
-                        }
-                        catch (JSONException e) {
-                                Log.e(LOG_TAG, e.getMessage());
+                        property = properties.optString(i);
+                        setPropertyValue(property, data.optString(property));
+                }
+                
+        }
+        
+        /**
+         * sets the value of the widget with the id of the property, if there
+         * is one.
+         */
+        protected void setPropertyValue(String property, String value) {
+                if (_listAdapter != null) {
+                        _listAdapter.setValue(property, value);
+                        return;
+                }
+                
+                if (_wizard != null) {
+                        _wizard.setValue(property, value);
+                        return;
+                }
+                
+                if (_reviewAdapter != null) {
+                        _reviewAdapter.setValue(property, value);
+                        return;
+                }
+                
+                FormWidget widget = findWidget(property);
+                
+                if (widget == null) {
+                        // -- a child of an accordion not expanded yet
+                        if (_pendingValues != null) {
+                                _pendingValues.setValue(property, value);
                         }
+                        
+                        return;
                 }
                 
+                setWidgetValue(widget, value);
+        }
+        
+        /**
+         * sets the value of a widget, the value of a camera is the list of its
+         * photos.
+         */
+        private void setWidgetValue(FormWidget widget, String value) {
+                if (widget instanceof FormCamera) {
+                        FormCamera formCamera = (FormCamera) widget;
+                        formCamera.setIdHash(idHash);
+                        
+                        photos = Arrays.asList(value.split("\\, "));
+                        
+                        formCamera.setPhotos(photos);
+                        formCamera.updatePhotos();
+                }
+                else {
+                        widget.setValue(value);
+                }
         }
         
         public ArrayList<String> jsonArrayToList(JSONArray jArray) {
@@ -387,12 +1630,7 @@ public class FormActivity extends Activity implements FormInterface {
                 
                 if (jArray != null) {
                         for (int i = 0; i < jArray.length(); i++) {
-                                try {
-                                        listdata.add(jArray.get(i).toString());
-                                }
-                                catch (JSONException e) {
-                                        e.printStackTrace();
-                                }
+                                listdata.add(jArray.opt(i).toString());
                         }
                 }
                 
@@ -411,6 +1649,18 @@ public class FormActivity extends Activity implements FormInterface {
                 
                 boolean success = true;
                 
+                if (_listAdapter != null) {
+                        data = _listAdapter.save();
+                        Log.i("MakeMachine", "Save success " + data);
+                        return data;
+                }
+                
+                if (_wizard != null) {
+                        data = _wizard.save();
+                        Log.i("MakeMachine", "Save success " + data);
+                        return data;
+                }
+                
                 try {
                         for (int i = 0; i < _widgets.size(); i++) {
                                 widget = _widgets.get(i);
@@ -419,23 +1669,13 @@ public class FormActivity extends Activity implements FormInterface {
                                 boolean isFormAccordion = widget instanceof FormAccordion;
                                 
                                 if (!isFormLabelTitle && !isFormAccordion) {
-                                        
-                                        String propertyId = widget.getId();
-                                        
-                                        if (widget instanceof FormCamera) {
-                                                FormCamera formCamera = (FormCamera) widget;
-                                                String concatArray = Arrays.toString(formCamera.getPhotos().toArray());
-                                                concatArray = concatArray.substring(1, concatArray.length() - 1);
-                                                
-                                                data.put(propertyId, concatArray);
-                                                setPhotos(formCamera.getPhotos());
-                                        }
-                                        else {
-                                                String value = widget.getValue() != null ? widget.getValue() : "";
-                                                data.put(propertyId, value);
-                                        }
+                                        putValue(data, widget);
                                 }
                         }
+                        
+                        if (_pendingValues != null) {
+                                savePendingValues(data);
+                        }
                 }
                 catch (JSONException e) {
                         success = false;
@@ -450,6 +1690,130 @@ public class FormActivity extends Activity implements FormInterface {
                 return null;
         }
         
+        private void putValue(JSONObject data, FormWidget widget) throws JSONException {
+                String propertyId = widget.getId();
+                
+                if (widget instanceof FormCamera) {
+                        FormCamera formCamera = (FormCamera) widget;
+                        String concatArray = Arrays.toString(formCamera.getPhotos().toArray());
+                        concatArray = concatArray.substring(1, concatArray.length() - 1);
+                        
+                        data.put(propertyId, concatArray);
+                        setPhotos(formCamera.getPhotos());
+                }
+                else if (widget instanceof FormRepeatingGroup) {
+                        data.put(propertyId, ((FormRepeatingGroup) widget).toJson());
+                }
+                else if (widget instanceof FormSpinner && isOptionKeySaved()) {
+                        data.put(propertyId, ((FormSpinner) widget).getKey());
+                }
+                else {
+                        String value = widget.getValue() != null ? widget.getValue() : "";
+                        data.put(propertyId, value);
+                }
+        }
+        
+        // -----------------------------------------------
+        //
+        // sections
+        //
+        // -----------------------------------------------
+        
+        /**
+         * Shows or hides an accordion with its section, the widgets of the
+         * section keep their own visibility.
+         */
+        public void setSectionVisibility(String id, int visibility) {
+                int node = _tree != null ? _tree.indexOf(id) : -1;
+                
+                if (node != -1 && _tree.getWidget(node) != null) {
+                        _tree.getWidget(node).setVisibility(visibility);
+                }
+        }
+        
+        /**
+         * returns the number of fields shown in a section, the sections of
+         * hidden accordions are not visited. Not for the forms shown as a
+         * list or as a wizard.
+         * 
+         * @param id
+         *                - the id of the accordion, or of a single widget
+         */
+        public int countVisibleFields(String id) {
+                int node = _tree != null ? _tree.indexOf(id) : -1;
+                
+                if (node == -1 || _tree.getParent(node) != FormTree.ROOT && !_tree.isShown(_tree.getParent(node))) {
+                        return 0;
+                }
+                
+                if (_pendingValues != null) {
+                        updatePendingValues();
+                }
+                
+                return countVisibleFields(node);
+        }
+        
+        private int countVisibleFields(int index) {
+                FormWidget widget = _tree.getWidget(index);
+                boolean pending = widget == null && _pendingValues != null && getWidgetFactories().get(_specs.get(index).getType()) != null;
+                
+                if (widget != null ? !widget.isVisible() : !pending || !_pendingValues.isVisible(index)) {
+                        return 0;
+                }
+                
+                int count = _tree.isField(index) ? 1 : 0;
+                
+                for (int child : _tree.getChildren(index)) {
+                        count += countVisibleFields(child);
+                }
+                
+                return count;
+        }
+        
+        /**
+         * returns the values of the fields of a section, like {@link #save()}
+         * does for the whole form, or null if there is no widget with the id.
+         * Not for the forms shown as a list or as a wizard.
+         * 
+         * @param id
+         *                - the id of the accordion, or of a single widget
+         */
+        public JSONObject saveSection(String id) {
+                int node = _tree != null ? _tree.indexOf(id) : -1;
+                JSONObject data = new JSONObject();
+                
+                if (node == -1) {
+                        return null;
+                }
+                
+                if (_pendingValues != null) {
+                        updatePendingValues();
+                }
+                
+                try {
+                        for (int index : _tree.getSection(node)) {
+                                FormWidget widget = _tree.getWidget(index);
+                                
+                                if (!_tree.isField(index)) {
+                                        continue;
+                                }
+                                
+                                if (widget != null) {
+                                        putValue(data, widget);
+                                }
+                                else if (_pendingValues != null && getWidgetFactories().get(_specs.get(index).getType()) != null) {
+                                        data.put(_tree.getId(index), _pendingValues.getSavedValue(index));
+                                }
+                        }
+                }
+                catch (JSONException e) {
+                        Log.e(LOG_TAG, e.getMessage());
+                        return null;
+                }
+                
+                return data;
+        }
+        
         // -----------------------------------------------
         //
         // toggles
@@ -463,30 +1827,33 @@ public class FormActivity extends Activity implements FormInterface {
         protected HashMap<String, ArrayList<String>> parseProperties(
                                                                      JSONObject property,
                                                                      String objectKey) {
-                try {
-                        ArrayList<String> toggled;
-                        HashMap<String, ArrayList<String>> toggleMap = new HashMap<String, ArrayList<String>>();
-                        
-                        //JSONObject toggleList = property.getJSONObject(FormActivity.SCHEMA_KEY_TOGGLES);
-                        JSONObject toggleList = property.getJSONObject(objectKey);
-                        JSONArray toggleNames = toggleList.names();
-                        
-                        for (int j = 0; j < toggleNames.length(); j++) {
-                                String toggleName = toggleNames.getString(j);
-                                JSONArray toggleValues = toggleList.getJSONArray(toggleName);
-                                toggled = new ArrayList<String>();
-                                toggleMap.put(toggleName, toggled);
-                                for (int k = 0; k < toggleValues.length(); k++) {
-                                        toggled.add(toggleValues.getString(k));
-                                }
-                        }
+                ArrayList<String> toggled;
+                HashMap<String, ArrayList<String>> toggleMap = new HashMap<String, ArrayList<String>>();
+                
+                JSONObject toggleList = property.optJSONObject(objectKey);
+                
+                if (toggleList == null) {
+                        return null;
+                }
+                
+                JSONArray toggleNames = toggleList.names();
+                
+                for (int j = 0; toggleNames != null && j < toggleNames.length(); j++) {
+                        String toggleName = toggleNames.optString(j);
+                        JSONArray toggleValues = toggleList.optJSONArray(toggleName);
                         
-                        return toggleMap;
+                        if (toggleValues == null) {
+                                continue;
+                        }
                         
+                        toggled = new ArrayList<String>();
+                        toggleMap.put(toggleName, toggled);
+                        for (int k = 0; k < toggleValues.length(); k++) {
+                                toggled.add(toggleValues.optString(k));
+                        }
                 }
-                catch (JSONException e) {
-                        return null;
-                }
+                
+                return toggleMap;
         }
         
         /**
@@ -494,13 +1861,7 @@ public class FormActivity extends Activity implements FormInterface {
          * the property.
          */
         protected boolean hasPropertie(JSONObject obj, String key) {
-                try {
-                        obj.getJSONObject(key);
-                        return true;
-                }
-                catch (JSONException e) {
-                        return false;
-                }
+                return obj.optJSONObject(key) != null;
         }
         
         /**
@@ -524,7 +1885,7 @@ public class FormActivity extends Activity implements FormInterface {
         protected void updateToggles(FormWidget widget) {
                 int i;
                 String name;
-                ArrayList<String> toggles;
+                List<String> toggles;
                 ArrayList<FormWidget> ignore = new ArrayList<FormWidget>();
                 
                 if (widget instanceof FormCheckBox) {
@@ -532,8 +1893,8 @@ public class FormActivity extends Activity implements FormInterface {
                         toggles = ((FormCheckBox) widget).getToggledOn();
                         for (i = 0; i < toggles.size(); i++) {
                                 name = toggles.get(i);
-                                if (_map.get(name) != null) {
-                                        FormWidget toggle = _map.get(name);
+                                if (findWidget(name) != null) {
+                                        FormWidget toggle = findWidget(name);
                                         ignore.add(toggle);
                                         toggle.setVisibility(View.VISIBLE);
                                 }
@@ -542,8 +1903,8 @@ public class FormActivity extends Activity implements FormInterface {
                         toggles = ((FormCheckBox) widget).getToggledOff();
                         for (i = 0; i < toggles.size(); i++) {
                                 name = toggles.get(i);
-                                if (_map.get(name) != null) {
-                                        FormWidget toggle = _map.get(name);
+                                if (findWidget(name) != null) {
+                                        FormWidget toggle = findWidget(name);
                                         if (ignore.contains(toggle)) continue;
                                         toggle.setVisibility(View.GONE);
                                 }
@@ -567,12 +1928,11 @@ public class FormActivity extends Activity implements FormInterface {
         // -----------------------------------------------
         
         protected String getDefault(JSONObject obj) {
-                try {
-                        return obj.getString(FormActivity.SCHEMA_KEY_DEFAULT);
-                }
-                catch (JSONException e) {
+                if (obj.isNull(FormActivity.SCHEMA_KEY_DEFAULT)) {
                         return null;
                 }
+                
+                return obj.optString(FormActivity.SCHEMA_KEY_DEFAULT);
         }
         
         /**
@@ -585,79 +1945,150 @@ public class FormActivity extends Activity implements FormInterface {
         }
         
         /**
-         * Factory method for actually instantiating widgets
+         * returns the widget created for the spec on the builder thread, see
+         * {@link #isBackgroundInflationEnabled()}, or if there is none the
+         * one of {@link #getWidget(String, WidgetSpec)}. Subclasses that
+         * create the widgets of registered types themselves override this one
+         * too, or turn the background inflation off.
          * 
          * @param labelName
-         * @param jsonWidget
-         * @return FormWidget
+         * @param spec
+         * @param prebuilt
+         *                - the widget created by the factory of the spec, or
+         *                null
          */
-        protected FormWidget getWidget(String labelName, JSONObject jsonWidget) {
-                FormWidget formWidget = null;
+        protected FormWidget getWidget(String labelName, WidgetSpec spec, FormWidget prebuilt) {
+                return prebuilt != null ? prebuilt : getWidget(labelName, spec);
+        }
+        
+        /**
+         * Factory method for actually instantiating widgets, the widget is
+         * created by the factory registered for its type, or taken from the
+         * {@link WidgetPool}.
+         * 
+         * @param labelName
+         * @param spec
+         * @return FormWidget, or null if the type is unknown.
+         */
+        protected FormWidget getWidget(String labelName, WidgetSpec spec) {
+                WidgetFactory factory = getWidgetFactories().get(spec.getType());
                 
+                if (factory == null) {
+                        return null;
+                }
+                
+                if (isPooled(spec, factory)) {
+                        return WidgetPool.getInstance().obtain(this, factory, labelName, spec);
+                }
+                
+                return factory.create(this, labelName, spec);
+        }
+        
+        /**
+         * returns true if the widget of the spec is taken from the
+         * {@link WidgetPool}. Only the built-in widgets are pooled, a type
+         * registered by the app may be anything.
+         */
+        private boolean isPooled(WidgetSpec spec, WidgetFactory factory) {
+                return isWidgetPoolEnabled() && WidgetPool.isPooled(spec.getType()) && factory == WidgetFactoryRegistry.getDefault().get(spec.getType());
+        }
+        
+        /**
+         * @deprecated override or call {@link #getWidget(String, WidgetSpec)}
+         *             instead, the form doesn't call this method anymore.
+         */
+        @Deprecated
+        protected FormWidget getWidget(String labelName, JSONObject jsonWidget) {
                 try {
-                        String type = jsonWidget.getString(FormActivity.SCHEMA_KEY_TYPE);
-                        JSONObject options = null;
-                        
-                        if (jsonWidget.has(FormActivity.SCHEMA_KEY_OPTIONS)) {
-                                options = jsonWidget.getJSONObject(FormActivity.SCHEMA_KEY_OPTIONS);
-                        }
-                        
-                        if (type.equals(FormActivity.SCHEMA_KEY_ACCORDION)) {
-                                JSONArray children = jsonWidget.getJSONArray(FormActivity.SCHEMA_KEY_ACCORDION_CHILDREN);
-                                
-                                List<String> childrenIds = FormWidget.jsonArrayToJavaArray(children);
-                                
-                                formWidget = new FormAccordion(this, labelName, childrenIds);
-                        }
-                        
-                        if (type.equals(FormActivity.SCHEMA_KEY_CAMERA)) {
-                                formWidget = new FormCamera(this, labelName);
-                        }
-                        
-                        if (type.equals(FormActivity.SCHEMA_KEY_STRING_TEXTVIEW)) {
-                                formWidget = new FormEditText(this, labelName);
-                        }
-                        
-                        if (type.equals(FormActivity.SCHEMA_KEY_AUTOCOMPLETE_TEXTVIEW)) {
-                                formWidget = new FormAutoCompleteTextBox(this, labelName, options);
-                        }
-                        
-                        if (type.equals(FormActivity.SCHEMA_KEY_LABEL)) {
-                                formWidget = new FormLabelTitle(this, labelName, options);
-                        }
-                        
-                        if (type.equals(FormActivity.SCHEMA_KEY_CHECKBOX)) {
-                                formWidget = new FormCheckBox(this, labelName);
+                        WidgetSpec spec = toSpec(jsonWidget);
+                        return spec != null ? getWidget(labelName, spec) : null;
+                }
+                catch (JSONException e) {
+                        return null;
+                }
+        }
+        
+        /**
+         * returns true if the widgets of this form are taken from the
+         * {@link WidgetPool} and given back to it when the form is destroyed.
+         * Off by default, forms of an activity class with a single theme
+         * can turn it on.
+         */
+        protected boolean isWidgetPoolEnabled() {
+                return false;
+        }
+        
+        /**
+         * returns true if the key of the selected option of a spinner is
+         * saved, false if its label is saved, the default. Either one is
+         * found by the spinner when the form is populated.
+         */
+        protected boolean isOptionKeySaved() {
+                return false;
+        }
+        
+        /**
+         * returns a model of the values of the widgets, saving the options
+         * like {@link #isOptionKeySaved()}.
+         */
+        FormValueModel createValueModel(List<WidgetSpec> specs) {
+                FormValueModel model = new FormValueModel(specs);
+                model.setOptionKeySaved(isOptionKeySaved());
+                model.setContext(this);
+                return model;
+        }
+        
+        /**
+         * Stops the widgets of the form and gives them back to the
+         * {@link WidgetPool}, the form must not use them anymore.
+         */
+        protected void recycleWidgets() {
+                WidgetPool pool = WidgetPool.getInstance();
+                
+                if (_formLayout instanceof FormLayout) {
+                        ((FormLayout) _formLayout).releaseWidgets();
+                }
+                
+                if (_listAdapter != null) {
+                        _listAdapter.recycleWidgets();
+                }
+                
+                if (_widgets != null) {
+                        for (FormWidget widget : _widgets) {
+                                widget.setForm(null);
+                                widget.recycle();
+                                pool.recycle(widget);
                         }
                         
-                        if (type.equals(FormActivity.SCHEMA_KEY_INTEGER_TEXTVIEW)) {
-                                formWidget = new FormNumericEditText(this, labelName);
-                        }
+                        _widgets.clear();
                         
-                        if (type.equals(FormActivity.SCHEMA_KEY_SPINNER)) {
-                                if (jsonWidget.has(FormActivity.SCHEMA_KEY_OPTIONS)) {
-                                        formWidget = new FormSpinner(this, labelName, options);
-                                }
+                        if (_map != null) {
+                                _map.clear();
                         }
                 }
-                catch (JSONException e) {
-                        return null;
+        }
+        
+        /**
+         * returns the factories used to create the widgets of this form. Types
+         * registered here are visible only to this form, see
+         * {@link WidgetFactoryRegistry#getDefault()} for the types shared by
+         * every form.
+         */
+        public WidgetFactoryRegistry getWidgetFactories() {
+                if (_factories == null) {
+                        _factories = new WidgetFactoryRegistry(WidgetFactoryRegistry.getDefault());
                 }
                 
-                return formWidget;
+                return _factories;
         }
         
+        /**
+         * returns the content of a file of the assets folder, decoded as UTF-8,
+         * see {@link AssetLoader}.
+         */
         public static String parseFileToString(Context context, String filename) {
                 try {
-                        InputStream stream = context.getAssets().open(filename);
-                        int size = stream.available();
-                        
-                        byte[] bytes = new byte[size];
-                        stream.read(bytes);
-                        stream.close();
-                        
-                        return new String(bytes);
-                        
+                        return AssetLoader.readString(context, filename);
                 }
                 catch (IOException e) {
                         Log.i("MakeMachine", "IOException: " + e.getMessage());
@@ -665,6 +2096,15 @@ public class FormActivity extends Activity implements FormInterface {
                 return null;
         }
         
+        private static void closeQuietly(Closeable closeable) {
+                try {
+                        closeable.close();
+                }
+                catch (IOException e) {
+                        Log.e(LOG_TAG, e.getMessage());
+                }
+        }
+        
         public void initializeWidgetsVisibility() {
                 /**
                  * Make all widgets visible. to re-apply the visibility from the
@@ -703,6 +2143,13 @@ public class FormActivity extends Activity implements FormInterface {
         }
         
         public void createMenuButtons() {
+                _formLayout.addView(createButtonsLayout());
+        }
+        
+        /**
+         * returns the layout of the cancel, clear and save buttons.
+         */
+        protected View createButtonsLayout() {
                 TableLayout buttonsLayout = new TableLayout(this);
                 buttonsLayout.setLayoutParams(new TableLayout.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
                 
@@ -714,7 +2161,76 @@ public class FormActivity extends Activity implements FormInterface {
                 
                 buttonsLayout.addView(row);
                 
-                _formLayout.addView(buttonsLayout);
+                return buttonsLayout;
+        }
+        
+        /**
+         * returns the layout of the buttons of a wizard page: previous, next
+         * and, on the last page, save.
+         */
+        protected View createWizardButtonsLayout() {
+                TableLayout buttonsLayout = new TableLayout(this);
+                buttonsLayout.setLayoutParams(new TableLayout.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
+                
+                TableRow row = new TableRow(this);
+                
+                row.addView(createPreviousButton());
+                row.addView(createNextButton());
+                row.addView(createSaveButton());
+                
+                buttonsLayout.addView(row);
+                
+                updateWizardButtons();
+                
+                return buttonsLayout;
+        }
+        
+        /**
+         * Enables the buttons of a wizard page that lead somewhere, called
+         * when the visibility rules change the pages shown.
+         */
+        void updateWizardButtons() {
+                if (_wizard == null || buttonPrevious == null || buttonNext == null) {
+                        return;
+                }
+                
+                buttonPrevious.setEnabled(_wizard.hasPrevious());
+                buttonNext.setVisibility(_wizard.hasNext() ? View.VISIBLE : View.GONE);
+                buttonSave.setVisibility(_wizard.hasNext() ? View.GONE : View.VISIBLE);
+        }
+        
+        public Button createPreviousButton() {
+                buttonPrevious = new Button(this);
+                buttonPrevious.setText(getResources().getString(string.btn_previous));
+                buttonPrevious.setLayoutParams(new TableRow.LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT, 1));
+                
+                buttonPrevious.setOnClickListener(new OnClickListener() {
+                        @Override
+                        public void onClick(View v) {
+                                if (_wizard != null) {
+                                        _wizard.previous();
+                                }
+                        }
+                });
+                
+                return buttonPrevious;
+        }
+        
+        public Button createNextButton() {
+                buttonNext = new Button(this);
+                buttonNext.setText(getResources().getString(string.btn_next));
+                buttonNext.setLayoutParams(new TableRow.LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT, 1));
+                
+                buttonNext.setOnClickListener(new OnClickListener() {
+                        @Override
+                        public void onClick(View v) {
+                                if (_wizard != null) {
+                                        _wizard.next();
+                                }
+                        }
+                });
+                
+                return buttonNext;
         }
         
         /**
@@ -826,6 +2342,14 @@ public class FormActivity extends Activity implements FormInterface {
                 buttonClear.setOnClickListener(new OnClickListener() {
                         @Override
                         public void onClick(View v) {
+                                if (_listAdapter != null) {
+                                        _listAdapter.clear();
+                                }
+                                
+                                if (_wizard != null) {
+                                        _wizard.clear();
+                                }
+                                
                                 for (FormWidget widget : _widgets) {
                                         widget.clear();
                                 }
@@ -1,7 +1,7 @@
 package terracore.formgenerator;
 
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.json.JSONObject;
 
@@ -33,15 +33,22 @@ public class FormAutoCompleteTextBox extends FormWidget {
         private AsyncFetchRemoteFile          asyncGetDb;
         
         private ProgressDialog                dialog;
-        private HashMap<String, List<String>> optionsMap;
+        private Map<String, List<String>>     optionsMap;
         
         public FormAutoCompleteTextBox(
                                        Context context,
                                        String property,
                                        JSONObject options) {
+                this(context, property, parseJsonMapToHashMap(options));
+        }
+        
+        public FormAutoCompleteTextBox(
+                                       Context context,
+                                       String property,
+                                       Map<String, List<String>> options) {
                 super(context, property);
                 
-                this.optionsMap = parseJsonMapToHashMap(options);
+                this.optionsMap = options;
                 initializeFields();
                 
                 if (databaseURL != null && databaseName != null && whereColumns != null && tableName != null) {
@@ -1,19 +1,21 @@
 package terracore.formgenerator;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import terracore.formgenerator.schema.WidgetSpec;
 import android.content.Context;
 import android.widget.CheckBox;
 import android.widget.CompoundButton;
 
 public class FormCheckBox extends FormWidget {
         
-        protected int                                _priority;
-        protected CheckBox                           _checkbox;
+        protected int                                 _priority;
+        protected CheckBox                            _checkbox;
         
-        protected HashMap<String, ArrayList<String>> _toggles;
+        protected Map<String, ? extends List<String>> _toggles;
         
         public FormCheckBox(Context context, String property) {
                 super(context, property);
@@ -63,10 +65,10 @@ public class FormCheckBox extends FormWidget {
         
         /**
          * sets the list of toggles for this widgets the structure of the data
-         * looks like this: HashMap<value of property for visibility,
-         * ArrayList<list of properties to toggle on>>
+         * looks like this: Map<value of property for visibility,
+         * List<list of properties to toggle on>>
          */
-        public void setToggles(HashMap<String, ArrayList<String>> toggles) {
+        public void setToggles(Map<String, ? extends List<String>> toggles) {
                 _toggles = toggles;
         }
         
@@ -76,7 +78,7 @@ public class FormCheckBox extends FormWidget {
          * @param value
          * @return
          */
-        public ArrayList<String> getToggledOn() {
+        public List<String> getToggledOn() {
                 if (_toggles == null) return new ArrayList<String>();
                 
                 if (_toggles.get(getValue()) != null) {
@@ -93,7 +95,7 @@ public class FormCheckBox extends FormWidget {
          * @param value
          * @return
          */
-        public ArrayList<String> getToggledOff() {
+        public List<String> getToggledOff() {
                 ArrayList<String> result = new ArrayList<String>();
                 if (_toggles == null) return result;
                 
@@ -101,7 +103,7 @@ public class FormCheckBox extends FormWidget {
                 
                 for (String key : set) {
                         if (!key.equals(getValue())) {
-                                ArrayList<String> list = _toggles.get(key);
+                                List<String> list = _toggles.get(key);
                                 if (list == null) return new ArrayList<String>();
                                 for (int i = 0; i < list.size(); i++) {
                                         result.add(list.get(i));
@@ -131,4 +133,25 @@ public class FormCheckBox extends FormWidget {
                 _checkbox.setChecked(false);
         }
         
+        /**
+         * Drops the toggle handler and the listener, they belong to the form
+         * the widget was shown in.
+         */
+        @Override
+        public void recycle() {
+                _handler = null;
+                _checkbox.setOnCheckedChangeListener(null);
+        }
+        
+        @Override
+        public boolean bind(WidgetSpec spec) {
+                setName(spec.getName());
+                _checkbox.setText(getDisplayText());
+                _checkbox.setOnCheckedChangeListener(null);
+                _checkbox.setChecked(false);
+                _handler = null;
+                _toggles = null;
+                return true;
+        }
+        
 }
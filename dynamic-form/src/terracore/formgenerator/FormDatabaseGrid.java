@@ -0,0 +1,334 @@
+package terracore.formgenerator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import terracore.formgenerator.database.DatabaseDao;
+import android.content.Context;
+import android.graphics.Color;
+import android.os.AsyncTask;
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.View;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+/**
+ * A table of the local database shown as a list of rows the user can select,
+ * like the units at an address. The options are the same as the ones of an
+ * AutoCompleteTextView:
+ * 
+ * <pre>
+ * { "name": "Unidades", "type": "DatabaseGrid", "id": "units",
+ *   "options": { "db_name": [ "tasks.db" ], "tableName": [ "unit" ],
+ *                "outputColumn": [ "_id" ], "presentationColumns": [ "block", "number" ] } }
+ * </pre>
+ * 
+ * The database must already be in the databases directory of the app, see
+ * {@link DatabaseDao}. The rows are shown a page at a time, in a plain layout
+ * inside the scroll view of the form like the rows of a
+ * {@link FormRepeatingGroup}, and the {@link FormPageBar} reads the next or the
+ * previous page in background. Only the page shown is kept, so the memory and
+ * the views used don't grow with the table. The rows are in the order of their
+ * rowids and a page is read from the first or the last rowid of the page
+ * shown, so reading a page doesn't depend on how far in the table it is. The
+ * value of the widget is the output column of the selected rows, separated by
+ * ", ".
+ */
+public class FormDatabaseGrid extends FormWidget {
+        private static final String LOG_TAG   = "FORM_DATABASE_GRID";
+        private static final int    PAGE_SIZE = 20;
+        
+        protected LinearLayout      _rows;
+        protected FormPageBar       _pageBar;
+        
+        private final Context       context;
+        private final String        databaseName;
+        private final String        tableName;
+        private final String[]      columns;
+        private final int           rowidColumn;
+        private final List<Row>     rowViews  = new ArrayList<Row>();
+        
+        private int                 count;
+        private final Set<String>   selected  = new LinkedHashSet<String>();
+        private String[][]          shown     = new String[0][];
+        private CountLoader         counter;
+        private PageLoader          loader;
+        
+        /**
+         * The views of a row and the output column of the row they show.
+         */
+        private static class Row {
+                View     view;
+                CheckBox checkbox;
+                TextView text;
+                String   key;
+        }
+        
+        public FormDatabaseGrid(Context context, String name, Map<String, List<String>> options) {
+                super(context, name);
+                
+                this.context = context;
+                this.databaseName = getFirst(options.get("db_name"));
+                this.tableName = getFirst(options.get("tableName"));
+                
+                // -- the output column comes first and the rowid last, the rows are read by position
+                String outputColumn = getFirst(options.get("outputColumn"));
+                List<String> presentationColumns = options.get("presentationColumns");
+                List<String> names = new ArrayList<String>();
+                
+                names.add(outputColumn != null ? outputColumn : "_id");
+                
+                if (presentationColumns != null) {
+                        names.addAll(presentationColumns);
+                }
+                
+                names.add("rowid");
+                
+                this.columns = names.toArray(new String[names.size()]);
+                this.rowidColumn = columns.length - 1;
+                
+                _rows = new LinearLayout(context);
+                _rows.setOrientation(LinearLayout.VERTICAL);
+                
+                _pageBar = new FormPageBar(context, PAGE_SIZE, new FormPageBar.Listener() {
+                        public void onPage(int target) {
+                                load(target);
+                        }
+                });
+                
+                _layout.addView(_rows);
+                _layout.addView(_pageBar);
+                
+                if (databaseName == null || tableName == null) {
+                        Log.e(LOG_TAG, "The grid " + name + " has no db_name or tableName");
+                }
+                else {
+                        counter = new CountLoader();
+                        counter.execute();
+                }
+        }
+        
+        private static String getFirst(List<String> list) {
+                return list != null && !list.isEmpty() ? list.get(0) : null;
+        }
+        
+        /**
+         * returns the number of rows of the table, 0 until it is counted.
+         */
+        public int getRowCount() {
+                return count;
+        }
+        
+        /**
+         * Cancels the rows being counted and read.
+         */
+        @Override
+        public void recycle() {
+                if (counter != null) {
+                        counter.cancel(false);
+                        counter = null;
+                }
+                
+                if (loader != null) {
+                        loader.cancel(false);
+                        loader = null;
+                }
+                
+                _pageBar.setEnabled(true);
+        }
+        
+        // -----------------------------------------------
+        //
+        // values
+        //
+        // -----------------------------------------------
+        
+        /**
+         * returns the output column of the selected rows, in the order they
+         * were selected, separated by ", ".
+         */
+        @Override
+        public String getValue() {
+                return TextUtils.join(", ", selected);
+        }
+        
+        @Override
+        public void setValue(String value) {
+                selected.clear();
+                
+                if (value != null && value.length() > 0) {
+                        for (String key : value.split("\\, ")) {
+                                selected.add(key);
+                        }
+                }
+                
+                show();
+        }
+        
+        // -----------------------------------------------
+        //
+        // rows
+        //
+        // -----------------------------------------------
+        
+        /**
+         * Reads a page next to the one shown, or the first page, in
+         * background. The page shown stays until the other one is read.
+         */
+        private void load(int target) {
+                if (loader != null || databaseName == null || tableName == null) {
+                        return;
+                }
+                
+                int current = _pageBar.getPage();
+                
+                if (target == current + 1 && shown.length > 0) {
+                        loader = new PageLoader(target, Long.parseLong(shown[shown.length - 1][rowidColumn]), false);
+                }
+                else if (target == current - 1 && shown.length > 0) {
+                        loader = new PageLoader(target, Long.parseLong(shown[0][rowidColumn]), true);
+                }
+                else {
+                        loader = new PageLoader(0, Long.MIN_VALUE, false);
+                }
+                
+                _pageBar.setEnabled(false);
+                loader.execute();
+        }
+        
+        /**
+         * Binds the rows of the page to the row views, the views left are
+         * hidden.
+         */
+        private void show() {
+                for (int i = 0; i < Math.max(shown.length, rowViews.size()); i++) {
+                        if (i >= shown.length) {
+                                rowViews.get(i).view.setVisibility(View.GONE);
+                                continue;
+                        }
+                        
+                        if (i >= rowViews.size()) {
+                                Row row = new Row();
+                                row.view = createRow(row);
+                                rowViews.add(row);
+                                _rows.addView(row.view);
+                        }
+                        
+                        bind(rowViews.get(i), shown[i]);
+                }
+        }
+        
+        private void bind(final Row row, String[] values) {
+                row.view.setVisibility(View.VISIBLE);
+                row.checkbox.setOnCheckedChangeListener(null);
+                row.key = values[0];
+                row.checkbox.setChecked(selected.contains(values[0]));
+                row.text.setText(getText(values));
+                
+                row.checkbox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+                        public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                                if (isChecked) {
+                                        selected.add(row.key);
+                                }
+                                else {
+                                        selected.remove(row.key);
+                                }
+                        }
+                });
+        }
+        
+        private View createRow(Row row) {
+                LinearLayout layout = new LinearLayout(context);
+                layout.setOrientation(LinearLayout.HORIZONTAL);
+                
+                row.checkbox = new CheckBox(context);
+                layout.addView(row.checkbox);
+                
+                row.text = new TextView(context);
+                row.text.setTextColor(Color.BLACK);
+                layout.addView(row.text);
+                
+                return layout;
+        }
+        
+        /**
+         * returns the presentation columns of the row, or its output column if
+         * there are none.
+         */
+        private String getText(String[] values) {
+                if (rowidColumn == 1) {
+                        return values[0];
+                }
+                
+                StringBuilder text = new StringBuilder();
+                
+                for (int i = 1; i < rowidColumn; i++) {
+                        text.append(i > 1 ? " - " : "").append(values[i]);
+                }
+                
+                return text.toString();
+        }
+        
+        /**
+         * Counts the rows of the table, then reads the first page.
+         */
+        private class CountLoader extends AsyncTask<Void, Void, Integer> {
+                @Override
+                protected Integer doInBackground(Void... params) {
+                        return DatabaseDao.count(context, databaseName, tableName);
+                }
+                
+                @Override
+                protected void onPostExecute(Integer result) {
+                        counter = null;
+                        count = result;
+                        _pageBar.setCount(count);
+                        load(0);
+                }
+        }
+        
+        /**
+         * Reads the page after or before a rowid.
+         */
+        private class PageLoader extends AsyncTask<Void, Void, String[][]> {
+                private final int     target;
+                private final long    rowid;
+                private final boolean before;
+                
+                public PageLoader(int target, long rowid, boolean before) {
+                        this.target = target;
+                        this.rowid = rowid;
+                        this.before = before;
+                }
+                
+                @Override
+                protected String[][] doInBackground(Void... params) {
+                        if (before) {
+                                return DatabaseDao.readBefore(context, databaseName, tableName, columns, rowid, PAGE_SIZE);
+                        }
+                        
+                        return DatabaseDao.readAfter(context, databaseName, tableName, columns, rowid, PAGE_SIZE);
+                }
+                
+                @Override
+                protected void onPostExecute(String[][] rows) {
+                        loader = null;
+                        _pageBar.setEnabled(true);
+                        
+                        if (rows == null) {
+                                Log.e(LOG_TAG, "Can't read the table " + tableName + " of " + databaseName);
+                                return;
+                        }
+                        
+                        shown = rows;
+                        _pageBar.setPage(target);
+                        show();
+                }
+        }
+}
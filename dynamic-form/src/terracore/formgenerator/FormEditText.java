@@ -1,5 +1,6 @@
 package terracore.formgenerator;
 
+import terracore.formgenerator.schema.WidgetSpec;
 import android.content.Context;
 import android.view.inputmethod.EditorInfo;
 import android.widget.EditText;
@@ -22,7 +23,7 @@ public class FormEditText extends FormWidget {
                 String value = "";
                 
                 if (isVisible()) {
-                        _input.getText().toString();
+                        value = _input.getText().toString();
                 }
                 
                 return value;
@@ -43,4 +44,11 @@ public class FormEditText extends FormWidget {
                 _input.setText("");
         }
         
+        @Override
+        public boolean bind(WidgetSpec spec) {
+                setName(spec.getName());
+                _input.setText("");
+                return true;
+        }
+        
 }
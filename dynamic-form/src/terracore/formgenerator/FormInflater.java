@@ -0,0 +1,222 @@
+package terracore.formgenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import terracore.formgenerator.schema.WidgetSpec;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Creates the widgets of a form a few at a time, so the main thread is never
+ * blocked for more than about a frame.
+ * 
+ * The widgets are created in the order they appear on the screen: the top
+ * level widgets sorted by priority, each accordion followed by its children,
+ * see {@link FormTree}. The first widgets are shown as soon as {@link #start()}
+ * is called, the others are added below them on the next frames. When every
+ * widget has been created they are registered in the form, in the order of the
+ * schema, and the form applies its visibility rules, see
+ * {@link FormActivity#onFormInflated()}.
+ * 
+ * The widgets of a {@link PreparedForm} are created the same way, with a
+ * smaller budget per frame so the form on screen stays responsive. They are
+ * not added to the layout, the form is handed to
+ * {@link FormActivity#onFormPrefetched(PreparedForm)} instead.
+ * 
+ * When {@link FormActivity#isBackgroundInflationEnabled()}, the factories
+ * that are a {@link ThreadSafeWidgetFactory} create their widgets on the
+ * {@link WidgetBuilderThread}, in the same order, and the main thread only
+ * configures and attaches them, see
+ * {@link FormActivity#parseWidget(WidgetSpec, FormWidget)}. The other widgets
+ * are still created on the main thread, when their turn comes.
+ * 
+ * The order is computed in the constructor, which can be called from any
+ * thread. The other methods must be called from the main thread.
+ */
+class FormInflater implements Runnable {
+        /** time, in milliseconds, that each frame may spend creating widgets */
+        public static final long       FRAME_BUDGET    = 8;
+        /** the same, for the widgets of a prefetched form */
+        public static final long       PREFETCH_BUDGET = 2;
+        
+        private final FormActivity     activity;
+        private final Handler          handler = new Handler(Looper.getMainLooper());
+        
+        private final List<WidgetSpec> specs;
+        private final FormTree         tree;
+        // -- the schema index of each widget, in the order they are created
+        private final int[]            order;
+        private final FormWidget[]     widgets;
+        private final PreparedForm     prepared;
+        private final long             budget;
+        
+        // -- the widgets created on the builder thread, guarded by built
+        private final FormWidget[]     built;
+        private final boolean[]        ready;
+        // -- the factory of each widget created on the builder thread, null for the others
+        private WidgetFactory[]        background;
+        
+        private int                    next;
+        private volatile boolean       cancelled;
+        
+        public FormInflater(FormActivity activity, List<WidgetSpec> specs) {
+                this(activity, specs, FormTree.fromSpecs(specs), null, FRAME_BUDGET);
+        }
+        
+        /**
+         * Creates the widgets of a form prepared ahead of time, see
+         * {@link FormActivity#prefetchForm(String, String)}.
+         */
+        public FormInflater(FormActivity activity, PreparedForm prepared) {
+                this(activity, prepared.getSpecs(), prepared.getTree(), prepared, PREFETCH_BUDGET);
+        }
+        
+        private FormInflater(FormActivity activity, List<WidgetSpec> specs, FormTree tree, PreparedForm prepared, long budget) {
+                this.activity = activity;
+                this.specs = specs;
+                this.tree = tree;
+                this.order = tree.getOrder();
+                this.widgets = new FormWidget[specs.size()];
+                this.prepared = prepared;
+                this.budget = budget;
+                this.built = new FormWidget[specs.size()];
+                this.ready = new boolean[specs.size()];
+        }
+        
+        /**
+         * Creates the first widgets, and schedules the others.
+         */
+        public void start() {
+                if (activity.isBackgroundInflationEnabled()) {
+                        background = new WidgetFactory[specs.size()];
+                        
+                        for (int i = 0; i < background.length; i++) {
+                                background[i] = activity.getBackgroundFactory(specs.get(i));
+                        }
+                        
+                        WidgetBuilderThread.post(new Runnable() {
+                                public void run() {
+                                        buildInBackground();
+                                }
+                        });
+                }
+                
+                run();
+        }
+        
+        /**
+         * Creates the thread safe widgets, on the builder thread. Only their
+         * factories are called, the main thread is woken up after each one.
+         */
+        private void buildInBackground() {
+                for (int i = 0; i < order.length && !cancelled; i++) {
+                        int index = order[i];
+                        
+                        if (background[index] == null) {
+                                continue;
+                        }
+                        
+                        WidgetSpec spec = specs.get(index);
+                        FormWidget widget = background[index].create(activity, spec.getName(), spec);
+                        
+                        synchronized (built) {
+                                built[index] = widget;
+                                ready[index] = true;
+                        }
+                        
+                        handler.removeCallbacks(this);
+                        handler.post(this);
+                }
+        }
+        
+        /**
+         * Stops creating widgets, the form is left incomplete.
+         */
+        public void cancel() {
+                cancelled = true;
+                handler.removeCallbacks(this);
+        }
+        
+        public boolean isFinished() {
+                return next == order.length;
+        }
+        
+        @Override
+        public void run() {
+                if (cancelled) {
+                        return;
+                }
+                
+                long start = SystemClock.uptimeMillis();
+                boolean waiting = false;
+                
+                while (next < order.length && SystemClock.uptimeMillis() - start < budget) {
+                        int index = order[next];
+                        
+                        if (background != null && background[index] != null) {
+                                FormWidget widget;
+                                
+                                // -- the builder thread posts this runnable when the widget is ready
+                                synchronized (built) {
+                                        waiting = !ready[index];
+                                        widget = built[index];
+                                }
+                                
+                                if (waiting) {
+                                        break;
+                                }
+                                
+                                attach(index, activity.parseWidget(specs.get(index), widget));
+                        }
+                        else {
+                                attach(index, activity.parseWidget(specs.get(index)));
+                        }
+                        
+                        next++;
+                }
+                
+                if (next < order.length) {
+                        if (!waiting) {
+                                handler.post(this);
+                        }
+                }
+                else {
+                        finish();
+                }
+        }
+        
+        private void attach(int index, FormWidget widget) {
+                widgets[index] = widget;
+                
+                if (widget == null) {
+                        return;
+                }
+                
+                // -- a prepared form is laid out when it is shown
+                if (prepared == null) {
+                        FormWidget parent = tree.getParent(index) != FormTree.ROOT ? widgets[tree.getParent(index)] : null;
+                        activity.addWidgetView(widget, parent);
+                }
+        }
+        
+        private void finish() {
+                List<FormWidget> created = new ArrayList<FormWidget>(widgets.length);
+                
+                for (FormWidget widget : widgets) {
+                        if (widget != null) {
+                                created.add(widget);
+                        }
+                }
+                
+                if (prepared != null) {
+                        prepared.setWidgets(activity, created);
+                        activity.onFormPrefetched(prepared);
+                        return;
+                }
+                
+                activity.registerWidgets(specs, tree, created);
+                activity.onFormInflated();
+        }
+}
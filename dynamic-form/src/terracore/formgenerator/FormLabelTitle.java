@@ -1,11 +1,10 @@
 package terracore.formgenerator;
 
-import java.util.HashMap;
+import java.util.Map;
 
-import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
+import terracore.formgenerator.schema.WidgetSpec;
 import android.content.Context;
 import android.util.Log;
 import android.view.Gravity;
@@ -13,18 +12,25 @@ import android.widget.LinearLayout;
 import android.widget.LinearLayout.LayoutParams;
 
 public class FormLabelTitle extends FormWidget {
-        private HashMap<String, String> optionsMap = null;
+        private Map<String, String> optionsMap = null;
         
-        private Integer                 topMargin  = null;
-        private Integer                 fontSize   = null;
+        private Integer             topMargin  = null;
+        private Integer             fontSize   = null;
         
         public FormLabelTitle(
                               Context context,
                               String property,
                               JSONObject options) {
+                this(context, property, parseJsonObjectToMap(options));
+        }
+        
+        public FormLabelTitle(
+                              Context context,
+                              String property,
+                              Map<String, String> options) {
                 super(context, property);
                 
-                initializeOptions(options);
+                this.optionsMap = options;
                 
                 initializeTopMargin();
                 initiliazeFontSize();
@@ -54,27 +60,7 @@ public class FormLabelTitle extends FormWidget {
         }
         
         public void initializeOptions(JSONObject options) {
-                HashMap<String, String> propertiesMap = new HashMap<String, String>();
-                
-                if (options != null) {
-                        String value;
-                        String key;
-                        
-                        JSONArray propertyNames = options.names();
-                        
-                        try {
-                                for (int i = 0; i < options.length(); i++) {
-                                        key = propertyNames.getString(i);
-                                        value = options.getString(key);
-                                        propertiesMap.put(key, value);
-                                }
-                        }
-                        catch (JSONException e) {
-                                Log.e("FORM_LABEL_TITLE", e.getMessage());
-                        }
-                }
-                
-                this.optionsMap = propertiesMap;
+                this.optionsMap = parseJsonObjectToMap(options);
         }
         
         private Integer parseToint(String property) {
@@ -92,4 +78,18 @@ public class FormLabelTitle extends FormWidget {
                 
                 return propertyToInt;
         }
+        
+        /**
+         * a label shows only the specs with the same options, they set its
+         * margin and font size.
+         */
+        @Override
+        public boolean bind(WidgetSpec spec) {
+                if (optionsMap == null || !optionsMap.equals(spec.getOptions())) {
+                        return false;
+                }
+                
+                setName(spec.getName());
+                return true;
+        }
 }
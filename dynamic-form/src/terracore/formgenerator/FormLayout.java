@@ -0,0 +1,373 @@
+package terracore.formgenerator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import terracore.formgenerator.accordion.FormAccordion;
+import android.content.Context;
+import android.graphics.Rect;
+import android.os.Build;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+
+/**
+ * A form container that holds the views of the widgets directly, without the
+ * layout of each widget: the label and input of every widget are children of
+ * this layout, stacked vertically in a single flat list. The section of an
+ * accordion follows it in the list, including the nested accordions.
+ * 
+ * A child is measured again only when it requested a layout or the width of
+ * the form changed, and laid out again only when its size or position
+ * changed. When a widget is hidden or shown, only the children below it move,
+ * the ones above keep their place. The views of a hidden widget keep their own
+ * visibility and are laid out with an empty size, they are left out of the
+ * focus and touch searches and, from KitKat on, hidden from the accessibility
+ * services.
+ * 
+ * The layout of a widget added here is empty, see
+ * {@link #releaseWidgets()} to give the views back to it.
+ */
+public class FormLayout extends LinearLayout {
+        private static final int                  NOT_LAID_OUT = Integer.MIN_VALUE;
+        
+        // -- the accordion of each widget, for the accordions nested in accordions
+        private final Map<FormWidget, FormWidget> groups       = new HashMap<FormWidget, FormWidget>();
+        
+        /**
+         * The widget of a child, and where it was measured and laid out.
+         */
+        public static class LayoutParams extends LinearLayout.LayoutParams {
+                FormWidget                 owner;
+                FormWidget                 group;
+                ViewGroup.LayoutParams     original;
+                
+                int                        widthMeasureSpec = -1;
+                int                        top              = NOT_LAID_OUT;
+                int                        width;
+                int                        height;
+                
+                boolean                    hidden;
+                int                        importantForAccessibility;
+                
+                public LayoutParams(int width, int height) {
+                        super(width, height);
+                }
+                
+                public LayoutParams(ViewGroup.LayoutParams source) {
+                        super(source);
+                        
+                        if (source instanceof MarginLayoutParams) {
+                                MarginLayoutParams margins = (MarginLayoutParams) source;
+                                leftMargin = margins.leftMargin;
+                                topMargin = margins.topMargin;
+                                rightMargin = margins.rightMargin;
+                                bottomMargin = margins.bottomMargin;
+                        }
+                }
+        }
+        
+        public FormLayout(Context context) {
+                super(context);
+                setOrientation(VERTICAL);
+        }
+        
+        // -----------------------------------------------
+        //
+        // widgets
+        //
+        // -----------------------------------------------
+        
+        /**
+         * Moves the views of a widget to this layout, with the margins of the
+         * widget layout.
+         * 
+         * @param widget
+         * @param group
+         *                - the accordion of the widget, or null. The views are
+         *                added after the last view of the accordion section,
+         *                and are hidden with it.
+         */
+        public void addWidget(FormWidget widget, FormWidget group) {
+                LinearLayout layout = widget._layout;
+                ViewGroup.LayoutParams layoutParams = layout.getLayoutParams();
+                MarginLayoutParams margins = layoutParams instanceof MarginLayoutParams ? (MarginLayoutParams) layoutParams : null;
+                List<View> views = new ArrayList<View>(layout.getChildCount());
+                
+                for (int i = 0; i < layout.getChildCount(); i++) {
+                        views.add(layout.getChildAt(i));
+                }
+                
+                layout.removeAllViews();
+                
+                int index = group != null ? indexAfter(group) : getChildCount();
+                
+                for (int i = 0; i < views.size(); i++) {
+                        View view = views.get(i);
+                        LayoutParams params = new LayoutParams(view.getLayoutParams());
+                        params.owner = widget;
+                        params.group = group;
+                        params.original = view.getLayoutParams();
+                        
+                        if (margins != null) {
+                                params.leftMargin += margins.leftMargin;
+                                params.rightMargin += margins.rightMargin;
+                                params.topMargin += i == 0 ? margins.topMargin : 0;
+                                params.bottomMargin += i == views.size() - 1 ? margins.bottomMargin : 0;
+                        }
+                        
+                        addView(view, index + i, params);
+                }
+                
+                widget.container = this;
+                
+                if (group != null) {
+                        groups.put(widget, group);
+                }
+        }
+        
+        /**
+         * returns the index after the last view of an accordion or of its
+         * section.
+         */
+        private int indexAfter(FormWidget group) {
+                for (int i = getChildCount() - 1; i >= 0; i--) {
+                        LayoutParams params = (LayoutParams) getChildAt(i).getLayoutParams();
+                        
+                        for (FormWidget widget = params.owner; widget != null; widget = groups.get(widget)) {
+                                if (widget == group) {
+                                        return i + 1;
+                                }
+                        }
+                }
+                
+                return getChildCount();
+        }
+        
+        /**
+         * Gives the views back to the layout of their widget, the views that
+         * belong to no widget stay here.
+         */
+        public void releaseWidgets() {
+                for (int i = 0; i < getChildCount();) {
+                        View child = getChildAt(i);
+                        LayoutParams params = (LayoutParams) child.getLayoutParams();
+                        
+                        if (params.owner == null) {
+                                i++;
+                                continue;
+                        }
+                        
+                        removeViewAt(i);
+                        
+                        groups.remove(params.owner);
+                        params.owner.container = null;
+                        params.owner._layout.addView(child, params.original);
+                }
+        }
+        
+        /**
+         * returns true if the child takes place in the form: it is not gone,
+         * and neither is its widget or any accordion above its widget.
+         */
+        private boolean isShownChild(View child) {
+                LayoutParams params = (LayoutParams) child.getLayoutParams();
+                
+                if (child.getVisibility() == GONE || (params.owner != null && !params.owner.isVisible())) {
+                        return false;
+                }
+                
+                for (FormWidget group = params.group; group != null; group = groups.get(group)) {
+                        if (!group.isVisible() || (group instanceof FormAccordion && !((FormAccordion) group).isExpanded())) {
+                                return false;
+                        }
+                }
+                
+                return true;
+        }
+        
+        // -----------------------------------------------
+        //
+        // measure and layout
+        //
+        // -----------------------------------------------
+        
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+                int heightSpec = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+                int width = 0;
+                int height = 0;
+                
+                for (int i = 0; i < getChildCount(); i++) {
+                        View child = getChildAt(i);
+                        
+                        if (!isShownChild(child)) {
+                                continue;
+                        }
+                        
+                        LayoutParams params = (LayoutParams) child.getLayoutParams();
+                        
+                        // -- the other children keep their size
+                        if (params.widthMeasureSpec != widthMeasureSpec || child.isLayoutRequested()) {
+                                measureChildWithMargins(child, widthMeasureSpec, 0, heightSpec, 0);
+                                params.widthMeasureSpec = widthMeasureSpec;
+                        }
+                        
+                        width = Math.max(width, params.leftMargin + child.getMeasuredWidth() + params.rightMargin);
+                        height += params.topMargin + child.getMeasuredHeight() + params.bottomMargin;
+                }
+                
+                width += getPaddingLeft() + getPaddingRight();
+                height += getPaddingTop() + getPaddingBottom();
+                
+                setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+        }
+        
+        @Override
+        protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+                int y = getPaddingTop();
+                
+                for (int i = 0; i < getChildCount(); i++) {
+                        View child = getChildAt(i);
+                        LayoutParams params = (LayoutParams) child.getLayoutParams();
+                        
+                        setHidden(child, params, !isShownChild(child));
+                        
+                        if (params.hidden) {
+                                // -- an empty frame, the child draws nothing and gets no touch
+                                if (params.top != NOT_LAID_OUT) {
+                                        child.layout(0, 0, 0, 0);
+                                        params.top = NOT_LAID_OUT;
+                                }
+                                
+                                continue;
+                        }
+                        
+                        int x = getPaddingLeft() + params.leftMargin;
+                        int width = child.getMeasuredWidth();
+                        int height = child.getMeasuredHeight();
+                        
+                        y += params.topMargin;
+                        
+                        // -- the children above a change keep their place and are not laid out again
+                        if (params.top != y || params.width != width || params.height != height || child.isLayoutRequested()) {
+                                child.layout(x, y, x + width, y + height);
+                                
+                                params.top = y;
+                                params.width = width;
+                                params.height = height;
+                        }
+                        
+                        y += height + params.bottomMargin;
+                }
+        }
+        
+        /**
+         * Takes the focus from a child that is hidden, and hides it from the
+         * accessibility services where the platform can.
+         */
+        private void setHidden(View child, LayoutParams params, boolean hidden) {
+                if (params.hidden == hidden) {
+                        return;
+                }
+                
+                params.hidden = hidden;
+                
+                if (hidden && child.hasFocus()) {
+                        child.clearFocus();
+                }
+                
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                        if (hidden) {
+                                params.importantForAccessibility = child.getImportantForAccessibility();
+                                child.setImportantForAccessibility(IMPORTANT_FOR_ACCESSIBILITY_NO_HIDE_DESCENDANTS);
+                        }
+                        else {
+                                child.setImportantForAccessibility(params.importantForAccessibility);
+                        }
+                }
+        }
+        
+        // -----------------------------------------------
+        //
+        // focus
+        //
+        // -----------------------------------------------
+        
+        @Override
+        public void addFocusables(ArrayList<View> views, int direction, int focusableMode) {
+                int count = views.size();
+                super.addFocusables(views, direction, focusableMode);
+                removeHidden(views, count);
+        }
+        
+        @Override
+        public void addTouchables(ArrayList<View> views) {
+                int count = views.size();
+                super.addTouchables(views);
+                removeHidden(views, count);
+        }
+        
+        /**
+         * Gives the focus to the first shown child that takes it, like
+         * LinearLayout does for the visible ones.
+         */
+        @Override
+        protected boolean onRequestFocusInDescendants(int direction, Rect previouslyFocusedRect) {
+                int start = 0;
+                int end = getChildCount();
+                int step = 1;
+                
+                if ((direction & FOCUS_FORWARD) == 0) {
+                        start = end - 1;
+                        end = -1;
+                        step = -1;
+                }
+                
+                for (int i = start; i != end; i += step) {
+                        View child = getChildAt(i);
+                        
+                        if (child.getVisibility() == VISIBLE && isShownChild(child) && child.requestFocus(direction, previouslyFocusedRect)) {
+                                return true;
+                        }
+                }
+                
+                return false;
+        }
+        
+        /**
+         * Removes the views added to the list after a position that are in a
+         * hidden child.
+         */
+        private void removeHidden(List<View> views, int from) {
+                for (int i = views.size() - 1; i >= from; i--) {
+                        View child = views.get(i);
+                        
+                        // -- the child of this layout that holds the view
+                        while (child.getParent() != this && child.getParent() instanceof View) {
+                                child = (View) child.getParent();
+                        }
+                        
+                        if (child.getParent() == this && !isShownChild(child)) {
+                                views.remove(i);
+                        }
+                }
+        }
+        
+        @Override
+        protected boolean checkLayoutParams(ViewGroup.LayoutParams params) {
+                return params instanceof LayoutParams;
+        }
+        
+        @Override
+        protected LayoutParams generateDefaultLayoutParams() {
+                return new LayoutParams(LayoutParams.FILL_PARENT, LayoutParams.WRAP_CONTENT);
+        }
+        
+        @Override
+        protected LayoutParams generateLayoutParams(ViewGroup.LayoutParams params) {
+                return new LayoutParams(params);
+        }
+}
@@ -0,0 +1,522 @@
+package terracore.formgenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONObject;
+
+import terracore.formgenerator.accordion.FormAccordion;
+import terracore.formgenerator.camera.FormCamera;
+import terracore.formgenerator.schema.WidgetSpec;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.AdapterView;
+import android.widget.BaseAdapter;
+import android.widget.CompoundButton;
+
+/**
+ * Shows the widgets of a form as the rows of a ListView, creating views only
+ * for the rows on screen. The values live in a {@link FormValueModel}, a widget
+ * shows the value of its row while it is on screen and writes it back when its
+ * view is recycled.
+ * 
+ * The views are recycled by widget type: a widget that can show another entry
+ * of the schema, see {@link FormWidget#bind(WidgetSpec)}, is reused for the
+ * next row of its type. The others, like the cameras, the grids or the
+ * repeating groups, are created once and kept by the adapter for their row
+ * until {@link #recycleWidgets()}. Hidden widgets have no row, and the
+ * children of an accordion are the rows that follow it, dropped while the
+ * accordion is collapsed.
+ */
+public class FormListAdapter extends BaseAdapter implements AbsListView.RecyclerListener {
+        private final FormActivity          activity;
+        private final FormValueModel        model;
+        private final int[]                 order;
+        private final int[]                 parents;
+        private final Map<String, Integer>  viewTypes = new HashMap<String, Integer>();
+        private final Map<String, Boolean>  reusable  = new HashMap<String, Boolean>();
+        private final Map<Integer, Binding> kept      = new HashMap<Integer, Binding>();
+        private final Set<Integer>          collapsed = new HashSet<Integer>();
+        private final Set<Binding>          bindings  = new HashSet<Binding>();
+        
+        private int[]                       rows;
+        
+        /**
+         * The row shown by a widget, kept in the tag of its view.
+         */
+        private static class Binding {
+                FormWidget widget;
+                int        index = -1;
+        }
+        
+        public FormListAdapter(FormActivity activity, FormValueModel model) {
+                this.activity = activity;
+                this.model = model;
+                this.order = sort(model.getSpecs());
+                this.parents = parents(model.getSpecs());
+                
+                for (WidgetSpec spec : model.getSpecs()) {
+                        if (spec.getType() != null && !viewTypes.containsKey(spec.getType())) {
+                                viewTypes.put(spec.getType(), viewTypes.size());
+                        }
+                }
+                
+                updateRows();
+        }
+        
+        /**
+         * returns the indexes of the widgets in the order of the form: sorted
+         * on priority, with the children of each accordion right after it.
+         */
+        private static int[] sort(final List<WidgetSpec> specs) {
+                List<Integer> indexes = new ArrayList<Integer>(specs.size());
+                Map<String, Integer> ids = new HashMap<String, Integer>(specs.size() * 2);
+                Set<Integer> children = new HashSet<Integer>();
+                
+                for (int i = 0; i < specs.size(); i++) {
+                        indexes.add(i);
+                        
+                        if (specs.get(i).getId() != null) {
+                                ids.put(specs.get(i).getId(), i);
+                        }
+                }
+                
+                for (WidgetSpec spec : specs) {
+                        if (FormActivity.SCHEMA_KEY_ACCORDION.equals(spec.getType())) {
+                                for (String child : spec.getChildren()) {
+                                        if (ids.containsKey(child)) {
+                                                children.add(ids.get(child));
+                                        }
+                                }
+                        }
+                }
+                
+                // -- stable, the widgets with the same priority keep the order of the schema
+                Collections.sort(indexes, new Comparator<Integer>() {
+                        public int compare(Integer index1, Integer index2) {
+                                int priority1 = specs.get(index1).getPriority();
+                                int priority2 = specs.get(index2).getPriority();
+                                return priority1 < priority2 ? -1 : (priority1 == priority2 ? 0 : 1);
+                        }
+                });
+                
+                int[] order = new int[specs.size()];
+                int count = 0;
+                
+                for (int index : indexes) {
+                        if (children.contains(index)) {
+                                continue;
+                        }
+                        
+                        order[count++] = index;
+                        
+                        if (FormActivity.SCHEMA_KEY_ACCORDION.equals(specs.get(index).getType())) {
+                                for (String child : specs.get(index).getChildren()) {
+                                        Integer childIndex = ids.get(child);
+                                        
+                                        if (childIndex != null && children.remove(childIndex)) {
+                                                order[count++] = childIndex;
+                                        }
+                                }
+                        }
+                }
+                
+                return copy(order, count);
+        }
+        
+        /**
+         * returns the index of the accordion of each widget, or -1.
+         */
+        private static int[] parents(List<WidgetSpec> specs) {
+                int[] parents = new int[specs.size()];
+                Map<String, Integer> ids = new HashMap<String, Integer>(specs.size() * 2);
+                
+                Arrays.fill(parents, -1);
+                
+                for (int i = 0; i < specs.size(); i++) {
+                        if (specs.get(i).getId() != null) {
+                                ids.put(specs.get(i).getId(), i);
+                        }
+                }
+                
+                for (int i = 0; i < specs.size(); i++) {
+                        if (!FormActivity.SCHEMA_KEY_ACCORDION.equals(specs.get(i).getType())) {
+                                continue;
+                        }
+                        
+                        for (String child : specs.get(i).getChildren()) {
+                                Integer childIndex = ids.get(child);
+                                
+                                // -- the first accordion of a child wins, like in the order of the rows
+                                if (childIndex != null && parents[childIndex] == -1 && childIndex != i) {
+                                        parents[childIndex] = i;
+                                }
+                        }
+                }
+                
+                return parents;
+        }
+        
+        private static int[] copy(int[] array, int length) {
+                int[] copy = new int[length];
+                System.arraycopy(array, 0, copy, 0, length);
+                return copy;
+        }
+        
+        /**
+         * keeps the rows of the visible widgets, without the children of the
+         * collapsed accordions.
+         */
+        private void updateRows() {
+                int[] visibleRows = new int[order.length];
+                int count = 0;
+                
+                for (int index : order) {
+                        if (model.isVisible(index) && !isCollapsed(parents[index])) {
+                                visibleRows[count++] = index;
+                        }
+                }
+                
+                rows = copy(visibleRows, count);
+        }
+        
+        /**
+         * returns true if the accordion, or one of the accordions it is in, is
+         * collapsed.
+         */
+        private boolean isCollapsed(int accordion) {
+                // -- bounded, in case the schema nests accordions in a loop
+                for (int i = 0; accordion != -1 && i < parents.length; i++) {
+                        if (collapsed.contains(accordion)) {
+                                return true;
+                        }
+                        
+                        accordion = parents[accordion];
+                }
+                
+                return false;
+        }
+        
+        /**
+         * Collapses an expanded accordion, or expands a collapsed one. The
+         * accordions start expanded.
+         */
+        public void toggle(int index) {
+                if (!collapsed.remove(index)) {
+                        collapsed.add(index);
+                }
+                
+                flush();
+                notifyDataSetChanged();
+        }
+        
+        /**
+         * returns true if the children of the accordion have rows.
+         */
+        public boolean isExpanded(int index) {
+                return !collapsed.contains(index);
+        }
+        
+        public FormValueModel getModel() {
+                return model;
+        }
+        
+        // -----------------------------------------------
+        //
+        // adapter
+        //
+        // -----------------------------------------------
+        
+        @Override
+        public int getCount() {
+                return rows.length;
+        }
+        
+        @Override
+        public WidgetSpec getItem(int position) {
+                return model.getSpecs().get(rows[position]);
+        }
+        
+        @Override
+        public long getItemId(int position) {
+                return rows[position];
+        }
+        
+        @Override
+        public boolean hasStableIds() {
+                return true;
+        }
+        
+        @Override
+        public int getViewTypeCount() {
+                return Math.max(1, viewTypes.size());
+        }
+        
+        /**
+         * returns the view type of the widget, or
+         * {@link #IGNORE_ITEM_VIEW_TYPE} for the widgets the list must not
+         * recycle: the ones kept by the adapter, and the types whose first
+         * widget isn't created yet.
+         */
+        @Override
+        public int getItemViewType(int position) {
+                String type = getItem(position).getType();
+                Integer viewType = viewTypes.get(type);
+                return viewType != null && Boolean.TRUE.equals(reusable.get(type)) ? viewType : IGNORE_ITEM_VIEW_TYPE;
+        }
+        
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+                int index = rows[position];
+                WidgetSpec spec = model.getSpecs().get(index);
+                Binding binding = kept.get(index);
+                
+                if (binding != null) {
+                        unbind(binding);
+                        bind(binding, index);
+                        return binding.widget.getView();
+                }
+                
+                binding = convertView != null ? (Binding) convertView.getTag() : null;
+                
+                if (binding != null) {
+                        unbind(binding);
+                        
+                        if (!binding.widget.bind(spec)) {
+                                binding = null;
+                        }
+                        else {
+                                binding.widget.setId(spec.getId());
+                                binding.widget.setPriority(spec.getPriority());
+                                binding.widget.setHint(spec.getHint());
+                        }
+                }
+                
+                if (binding == null) {
+                        FormWidget widget = activity.parseWidget(spec);
+                        
+                        // -- unknown types have no view type, the list doesn't recycle them
+                        if (widget == null) {
+                                return new View(activity);
+                        }
+                        
+                        binding = new Binding();
+                        binding.widget = widget;
+                        widget.getView().setTag(binding);
+                        
+                        if (!isReusable(spec, widget)) {
+                                kept.put(index, binding);
+                        }
+                }
+                
+                bind(binding, index);
+                
+                return binding.widget.getView();
+        }
+        
+        /**
+         * returns true if the widgets of the type can show another row, found
+         * out with the first widget of the type: it is bound to its own entry.
+         */
+        private boolean isReusable(WidgetSpec spec, FormWidget widget) {
+                Boolean value = reusable.get(spec.getType());
+                
+                if (value == null) {
+                        value = widget.bind(spec);
+                        reusable.put(spec.getType(), value);
+                }
+                
+                return value;
+        }
+        
+        /**
+         * Stops the widgets kept by the adapter, see
+         * {@link FormWidget#recycle()}, after writing their values to the
+         * model. The list must not be shown anymore.
+         */
+        public void recycleWidgets() {
+                flush();
+                
+                for (Binding binding : kept.values()) {
+                        binding.widget.recycle();
+                }
+                
+                kept.clear();
+        }
+        
+        @Override
+        public void onMovedToScrapHeap(View view) {
+                Object tag = view.getTag();
+                
+                if (tag instanceof Binding) {
+                        unbind((Binding) tag);
+                }
+        }
+        
+        // -----------------------------------------------
+        //
+        // values
+        //
+        // -----------------------------------------------
+        
+        private void bind(final Binding binding, int index) {
+                FormWidget widget = binding.widget;
+                String value = model.getRawValue(index);
+                WidgetSpec spec = model.getSpecs().get(index);
+                
+                if (widget instanceof FormCamera) {
+                        FormCamera formCamera = (FormCamera) widget;
+                        formCamera.setIdHash(activity.getIdHash());
+                        formCamera.setPhotos(value == null || value.length() == 0 ? new ArrayList<String>() : new ArrayList<String>(Arrays.asList(value.split("\\, "))));
+                        formCamera.updatePhotos();
+                }
+                else if (value != null) {
+                        widget.setValue(value);
+                }
+                
+                binding.index = index;
+                bindings.add(binding);
+                
+                // -- the listeners are set after the value, so binding a row doesn't apply the rules
+                if (widget instanceof FormCheckBox) {
+                        ((FormCheckBox) widget)._checkbox.setOnCheckedChangeListener(spec.getToggles() == null ? null : new CompoundButton.OnCheckedChangeListener() {
+                                public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                                        onRuleChanged(binding);
+                                }
+                        });
+                }
+                else if (widget instanceof FormSpinner) {
+                        ((FormSpinner) widget)._spinner.setOnItemSelectedListener(spec.getHideOnClick() == null ? null : new AdapterView.OnItemSelectedListener() {
+                                public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                                        onRuleChanged(binding);
+                                }
+                                
+                                public void onNothingSelected(AdapterView<?> parent) {}
+                        });
+                }
+                else if (widget instanceof FormAccordion) {
+                        FormAccordion formAccordion = (FormAccordion) widget;
+                        
+                        // -- the children are rows of the list, the accordion only shows its state
+                        if (formAccordion.isExpanded() != isExpanded(index)) {
+                                formAccordion.collapse();
+                        }
+                        
+                        formAccordion._label.setOnClickListener(new View.OnClickListener() {
+                                public void onClick(View view) {
+                                        if (binding.index != -1) {
+                                                toggle(binding.index);
+                                        }
+                                }
+                        });
+                }
+        }
+        
+        /**
+         * writes the value of the widget to the model, the widget no longer
+         * shows its row.
+         */
+        private void unbind(Binding binding) {
+                if (binding.index == -1) {
+                        return;
+                }
+                
+                FormWidget widget = binding.widget;
+                String value;
+                
+                if (widget instanceof FormCamera) {
+                        String photos = Arrays.toString(((FormCamera) widget).getPhotos().toArray());
+                        value = photos.substring(1, photos.length() - 1);
+                }
+                else {
+                        value = widget.getValue();
+                }
+                
+                model.setValue(binding.index, value);
+                binding.index = -1;
+                bindings.remove(binding);
+        }
+        
+        private void onRuleChanged(Binding binding) {
+                if (binding.index == -1) {
+                        return;
+                }
+                
+                String previous = model.getValue(binding.index);
+                
+                if (!previous.equals(binding.widget.getValue())) {
+                        flush();
+                        notifyDataSetChanged();
+                }
+        }
+        
+        /**
+         * Writes the values of the rows on screen to the model, their widgets
+         * will show the values of the model again when the list is laid out.
+         * Must be called before the values of the model are read or changed.
+         */
+        public void flush() {
+                for (Binding binding : new ArrayList<Binding>(bindings)) {
+                        unbind(binding);
+                }
+        }
+        
+        @Override
+        public void notifyDataSetChanged() {
+                updateRows();
+                super.notifyDataSetChanged();
+        }
+        
+        /**
+         * Sets the value of a widget, see
+         * {@link FormValueModel#setValue(String, String)}.
+         */
+        public void setValue(String id, String value) {
+                flush();
+                model.setValue(id, value);
+                notifyDataSetChanged();
+        }
+        
+        /**
+         * Adds a photo to the value of a camera widget, the photos are
+         * separated by ", ".
+         */
+        public void addPhoto(String id, String photo) {
+                flush();
+                
+                int index = model.indexOf(id);
+                
+                if (index != -1) {
+                        String value = model.getRawValue(index);
+                        model.setValue(index, value == null || value.length() == 0 ? photo : value + ", " + photo);
+                }
+                
+                notifyDataSetChanged();
+        }
+        
+        /**
+         * Clears every value, see {@link FormValueModel#clear()}.
+         */
+        public void clear() {
+                flush();
+                model.clear();
+                notifyDataSetChanged();
+        }
+        
+        /**
+         * returns the values of the form, see {@link FormValueModel#save()}.
+         */
+        public JSONObject save() {
+                flush();
+                notifyDataSetChanged();
+                return model.save();
+        }
+}
@@ -1,5 +1,6 @@
 package terracore.formgenerator;
 
+import terracore.formgenerator.schema.WidgetSpec;
 import android.content.Context;
 import android.text.InputType;
 import android.view.inputmethod.EditorInfo;
@@ -43,4 +44,12 @@ public class FormNumericEditText extends FormWidget {
         public void clear() {
                 _input.setText("");
         }
+        
+        @Override
+        public boolean bind(WidgetSpec spec) {
+                setName(spec.getName());
+                _input.setText("");
+                return true;
+        }
+        
 }
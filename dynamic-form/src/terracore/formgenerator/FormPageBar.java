@@ -0,0 +1,129 @@
+package terracore.formgenerator;
+
+import makemachine.android.examples.forms.R.string;
+import android.content.Context;
+import android.graphics.Color;
+import android.view.View;
+import android.view.View.OnClickListener;
+import android.widget.Button;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+/**
+ * The previous and next buttons of a widget that shows its rows a page at a
+ * time, with the rows shown between them, like "21-40 / 135". The widgets
+ * inside the scroll view of the form can't use a list, which would scroll
+ * inside it, so they keep the views of one page in a plain layout and page
+ * through the rows with this bar. It is hidden while the rows fit in a page.
+ */
+class FormPageBar extends LinearLayout {
+        private final int      pageSize;
+        private final Listener listener;
+        private final Button   previous;
+        private final Button   next;
+        private final TextView range;
+        
+        private int            page;
+        private int            count;
+        
+        /**
+         * Called when a button asks for another page, the widget shows it and
+         * then calls {@link FormPageBar#setPage(int)}.
+         */
+        interface Listener {
+                void onPage(int page);
+        }
+        
+        public FormPageBar(Context context, int pageSize, Listener listener) {
+                super(context);
+                
+                this.pageSize = pageSize;
+                this.listener = listener;
+                
+                setOrientation(LinearLayout.HORIZONTAL);
+                
+                previous = new Button(context);
+                previous.setText(context.getResources().getString(string.btn_previous));
+                previous.setOnClickListener(new OnClickListener() {
+                        @Override
+                        public void onClick(View v) {
+                                FormPageBar.this.listener.onPage(page - 1);
+                        }
+                });
+                
+                range = new TextView(context);
+                range.setTextColor(Color.BLACK);
+                range.setLayoutParams(new LinearLayout.LayoutParams(0, LayoutParams.WRAP_CONTENT, 1));
+                
+                next = new Button(context);
+                next.setText(context.getResources().getString(string.btn_next));
+                next.setOnClickListener(new OnClickListener() {
+                        @Override
+                        public void onClick(View v) {
+                                FormPageBar.this.listener.onPage(page + 1);
+                        }
+                });
+                
+                addView(previous);
+                addView(range);
+                addView(next);
+                
+                update();
+        }
+        
+        public int getPage() {
+                return page;
+        }
+        
+        /**
+         * returns the number of pages of the rows, at least one.
+         */
+        public int getPageCount() {
+                return Math.max(1, (count + pageSize - 1) / pageSize);
+        }
+        
+        /**
+         * returns the position of the first row of the page shown.
+         */
+        public int getStart() {
+                return page * pageSize;
+        }
+        
+        /**
+         * returns the number of rows of the page shown.
+         */
+        public int getSize() {
+                return Math.max(0, Math.min(pageSize, count - getStart()));
+        }
+        
+        public void setPage(int page) {
+                this.page = Math.max(0, Math.min(page, getPageCount() - 1));
+                update();
+        }
+        
+        /**
+         * Sets the number of rows, the page shown is kept if it still exists.
+         */
+        public void setCount(int count) {
+                this.count = count;
+                setPage(page);
+        }
+        
+        /**
+         * Turns the buttons on or off, for example while a page is read.
+         */
+        @Override
+        public void setEnabled(boolean enabled) {
+                super.setEnabled(enabled);
+                previous.setEnabled(enabled && page > 0);
+                next.setEnabled(enabled && page < getPageCount() - 1);
+        }
+        
+        private void update() {
+                int start = getStart();
+                
+                range.setText(count == 0 ? "0 / 0" : (start + 1) + "-" + (start + getSize()) + " / " + count);
+                setEnabled(isEnabled());
+                setVisibility(count > pageSize ? View.VISIBLE : View.GONE);
+        }
+}
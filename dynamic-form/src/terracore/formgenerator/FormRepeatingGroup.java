@@ -0,0 +1,536 @@
+package terracore.formgenerator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import makemachine.android.examples.forms.R.string;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import terracore.formgenerator.schema.AssetFragmentResolver;
+import terracore.formgenerator.schema.FragmentResolver;
+import terracore.formgenerator.schema.JsonPullReader;
+import terracore.formgenerator.schema.JsonPullReader.Token;
+import terracore.formgenerator.schema.WidgetSpec;
+import android.content.Context;
+import android.util.Log;
+import android.view.View;
+import android.view.View.OnClickListener;
+import android.widget.AdapterView;
+import android.widget.Button;
+import android.widget.CompoundButton;
+import android.widget.LinearLayout;
+
+/**
+ * A list of sub-records with the same fields, like the additional numbers of a
+ * lot. The fields of a row are the widgets of a template, a schema fragment
+ * named by the "template" option, see {@link FragmentResolver}:
+ * 
+ * <pre>
+ * { "name": "Números Adicionais", "type": "RepeatingGroup", "id": "aditional_numbers",
+ *   "options": { "template": "fragments/aditional_number.json" } }
+ * </pre>
+ * 
+ * The rows are shown a page at a time, in a plain layout inside the scroll view
+ * of the form, and the {@link FormPageBar} moves between the pages. Only the
+ * views of a page are created, whatever the number of rows, and they are bound
+ * again to the rows of the page shown. The values of each row live in a
+ * {@link FormValueModel}, so the "toggles" and
+ * "hideOnClick" rules of the template apply within each row, and the whole
+ * group can be hidden by the rules of the form like any widget. The value is a
+ * json array with an object per row, saved as an array by
+ * {@link FormActivity#save()}. A value that is not an array, saved when the
+ * field was a text field, is read as a single row, see
+ * {@link #toRows(String, List)}.
+ * 
+ * Accordions, cameras and repeating groups are not supported in a template.
+ */
+public class FormRepeatingGroup extends FormWidget {
+        private static final String         LOG_TAG   = "FORM_REPEATING_GROUP";
+        private static final int            PAGE_SIZE = 10;
+        
+        protected LinearLayout              _rows;
+        protected FormPageBar               _pageBar;
+        protected Button                    _addButton;
+        
+        private final List<WidgetSpec>      template;
+        private final WidgetFactoryRegistry factories;
+        private final FormActivity          activity;
+        private final List<FormValueModel>  rows      = new ArrayList<FormValueModel>();
+        // -- the views of the rows of the page shown, in order, then the unused ones
+        private final List<Binding>         bindings  = new ArrayList<Binding>();
+        
+        /**
+         * The row shown by the widgets of a row view.
+         */
+        private static class Binding {
+                View         view;
+                FormWidget[] widgets;
+                int          index = -1;
+        }
+        
+        /**
+         * @param context
+         * @param name
+         * @param template
+         *                - the ref of the schema fragment of a row, like a
+         *                "$ref" entry
+         */
+        public FormRepeatingGroup(Context context, String name, String template) {
+                super(context, name);
+                
+                this.template = resolveTemplate(context, template);
+                this.factories = context instanceof FormActivity ? ((FormActivity) context).getWidgetFactories() : WidgetFactoryRegistry.getDefault();
+                this.activity = context instanceof FormActivity ? (FormActivity) context : null;
+                
+                _rows = new LinearLayout(context);
+                _rows.setOrientation(LinearLayout.VERTICAL);
+                
+                _pageBar = new FormPageBar(context, PAGE_SIZE, new FormPageBar.Listener() {
+                        public void onPage(int page) {
+                                flush();
+                                _pageBar.setPage(page);
+                                refresh();
+                        }
+                });
+                
+                _addButton = new Button(context);
+                _addButton.setText(context.getResources().getString(string.btn_add));
+                _addButton.setOnClickListener(new OnClickListener() {
+                        @Override
+                        public void onClick(View v) {
+                                addRow();
+                        }
+                });
+                
+                _layout.addView(_rows);
+                _layout.addView(_pageBar);
+                _layout.addView(_addButton);
+        }
+        
+        /**
+         * returns the widgets of the template fragment, without the types a
+         * row can't hold. The fragment is resolved by the activity if the
+         * context is a form.
+         */
+        static List<WidgetSpec> resolveTemplate(Context context, String ref) {
+                List<WidgetSpec> specs = new ArrayList<WidgetSpec>();
+                FragmentResolver resolver = context instanceof FormActivity ? ((FormActivity) context).getFragmentResolver() : new AssetFragmentResolver(context);
+                
+                if (ref == null) {
+                        Log.e(LOG_TAG, "The repeating group has no template");
+                        return specs;
+                }
+                
+                try {
+                        for (WidgetSpec spec : resolver.resolve(ref)) {
+                                String type = spec.getType();
+                                
+                                if (FormActivity.SCHEMA_KEY_ACCORDION.equals(type) || FormActivity.SCHEMA_KEY_CAMERA.equals(type) || FormActivity.SCHEMA_KEY_REPEATING_GROUP.equals(type)) {
+                                        Log.w(LOG_TAG, "Skipping " + spec + ", not supported in a template");
+                                }
+                                else {
+                                        specs.add(spec);
+                                }
+                        }
+                }
+                catch (IOException e) {
+                        Log.e(LOG_TAG, e.getMessage());
+                }
+                
+                return specs;
+        }
+        
+        /**
+         * returns the values of a new row, saved like the values of the form,
+         * see {@link FormActivity#isOptionKeySaved()}.
+         */
+        private FormValueModel createRow() {
+                FormValueModel row = new FormValueModel(template);
+                row.setOptionKeySaved(activity != null && activity.isOptionKeySaved());
+                return row;
+        }
+        
+        public List<WidgetSpec> getTemplate() {
+                return Collections.unmodifiableList(template);
+        }
+        
+        public int getRowCount() {
+                return rows.size();
+        }
+        
+        /**
+         * Adds an empty row, with the default values of the template, and
+         * shows its page.
+         */
+        public void addRow() {
+                flush();
+                rows.add(createRow());
+                _pageBar.setCount(rows.size());
+                _pageBar.setPage(_pageBar.getPageCount() - 1);
+                refresh();
+        }
+        
+        public void removeRow(int index) {
+                flush();
+                rows.remove(index);
+                refresh();
+        }
+        
+        // -----------------------------------------------
+        //
+        // values
+        //
+        // -----------------------------------------------
+        
+        /**
+         * returns the rows as json text, empty if the group is hidden.
+         */
+        @Override
+        public String getValue() {
+                return isVisible() ? toJson().toString() : "";
+        }
+        
+        /**
+         * returns an object per row with the values of its fields, like
+         * {@link FormValueModel#save()}. Empty if the group is hidden.
+         */
+        public JSONArray toJson() {
+                JSONArray array = new JSONArray();
+                
+                if (!isVisible()) {
+                        return array;
+                }
+                
+                flush();
+                
+                for (FormValueModel row : rows) {
+                        array.put(row.save());
+                }
+                
+                return array;
+        }
+        
+        /**
+         * Replaces the rows by the ones of a json array of objects, the fields
+         * missing from an object keep their default value. See
+         * {@link #toRows(String, List)} for the values that are not an array.
+         */
+        @Override
+        public void setValue(String value) {
+                JSONArray array = toRows(value, template);
+                
+                rows.clear();
+                
+                for (int i = 0; i < array.length(); i++) {
+                        JSONObject object = array.optJSONObject(i);
+                        FormValueModel row = createRow();
+                        
+                        for (int j = 0; object != null && j < template.size(); j++) {
+                                String id = template.get(j).getId();
+                                
+                                if (id != null && object.has(id)) {
+                                        row.setValue(j, object.optString(id));
+                                }
+                        }
+                        
+                        rows.add(row);
+                }
+                
+                // -- the rows shown are replaced, their values are not written back
+                _pageBar.setCount(rows.size());
+                _pageBar.setPage(0);
+                refresh();
+        }
+        
+        /**
+         * returns the rows of a value, a json array of objects. A value that
+         * is not an array, saved when the field was a text field, is a single
+         * row with the value in the first field of the template.
+         */
+        static JSONArray toRows(String value, List<WidgetSpec> template) {
+                JSONArray rows = parseRows(value);
+                return rows != null ? rows : toRow(value, template);
+        }
+        
+        /**
+         * returns the rows of the value of a group, like
+         * {@link #toRows(String, List)}. The template is resolved only if the
+         * value is not an array.
+         */
+        static JSONArray toRows(String value, Context context, WidgetSpec group) {
+                JSONArray rows = parseRows(value);
+                
+                if (rows != null) {
+                        return rows;
+                }
+                
+                String ref = group.getOptions() != null ? group.getOptions().get(FormActivity.SCHEMA_KEY_TEMPLATE) : null;
+                return toRow(value, context != null ? resolveTemplate(context, ref) : Collections.<WidgetSpec> emptyList());
+        }
+        
+        /**
+         * returns the array of a value, empty for an empty value, or null if
+         * the value is not an array.
+         */
+        private static JSONArray parseRows(String value) {
+                if (value == null || value.length() == 0) {
+                        return new JSONArray();
+                }
+                
+                try {
+                        return new JSONArray(value);
+                }
+                catch (JSONException e) {
+                        return null;
+                }
+        }
+        
+        private static JSONArray toRow(String value, List<WidgetSpec> template) {
+                JSONArray rows = new JSONArray();
+                
+                for (WidgetSpec spec : template) {
+                        if (spec.getId() != null && !FormActivity.SCHEMA_KEY_LABEL.equals(spec.getType())) {
+                                try {
+                                        rows.put(new JSONObject().put(spec.getId(), value));
+                                }
+                                catch (JSONException e) {
+                                        Log.e(LOG_TAG, e.getMessage());
+                                }
+                                
+                                return rows;
+                        }
+                }
+                
+                Log.w(LOG_TAG, "Dropping the value " + value + ", the template has no field");
+                return rows;
+        }
+        
+        /**
+         * returns an array of objects read as a stream, as json text. Only the
+         * values that are strings, numbers or booleans are kept.
+         */
+        static String readRows(JsonPullReader reader) throws IOException {
+                JSONArray rows = new JSONArray();
+                
+                reader.beginArray();
+                
+                while (reader.hasNext()) {
+                        if (reader.peek() != Token.BEGIN_OBJECT) {
+                                reader.skipValue();
+                                continue;
+                        }
+                        
+                        JSONObject row = new JSONObject();
+                        reader.beginObject();
+                        
+                        while (reader.hasNext()) {
+                                String property = reader.nextName();
+                                Token token = reader.peek();
+                                
+                                try {
+                                        if (token == Token.STRING || token == Token.NUMBER || token == Token.BOOLEAN) {
+                                                row.put(property, reader.nextString());
+                                        }
+                                        else {
+                                                reader.skipValue();
+                                        }
+                                }
+                                catch (JSONException e) {
+                                        Log.e(LOG_TAG, e.getMessage());
+                                }
+                        }
+                        
+                        reader.endObject();
+                        rows.put(row);
+                }
+                
+                reader.endArray();
+                
+                return rows.toString();
+        }
+        
+        @Override
+        public void clear() {
+                setValue("");
+        }
+        
+        /**
+         * Writes the values of the rows shown to their models, the widgets
+         * keep showing their rows.
+         */
+        private void flush() {
+                for (Binding binding : bindings) {
+                        if (binding.index != -1 && write(binding)) {
+                                updateVisibility(binding);
+                        }
+                }
+        }
+        
+        /**
+         * Shows the rows of the page, the views are bound again in order, new
+         * ones are created if the page has more rows than before and the ones
+         * left are removed from the layout but kept for later pages.
+         */
+        private void refresh() {
+                _pageBar.setCount(rows.size());
+                
+                int start = _pageBar.getStart();
+                int size = _pageBar.getSize();
+                
+                for (int i = 0; i < Math.max(size, bindings.size()); i++) {
+                        if (i >= size) {
+                                Binding binding = bindings.get(i);
+                                
+                                if (binding.index != -1) {
+                                        binding.index = -1;
+                                        _rows.removeView(binding.view);
+                                }
+                                
+                                continue;
+                        }
+                        
+                        if (i >= bindings.size()) {
+                                Binding binding = new Binding();
+                                binding.view = createRowView(binding);
+                                bindings.add(binding);
+                        }
+                        
+                        Binding binding = bindings.get(i);
+                        
+                        if (binding.index == -1) {
+                                _rows.addView(binding.view);
+                        }
+                        
+                        bind(binding, start + i);
+                }
+        }
+        
+        private void bind(final Binding binding, int index) {
+                FormValueModel row = rows.get(index);
+                
+                for (int i = 0; i < template.size(); i++) {
+                        FormWidget widget = binding.widgets[i];
+                        WidgetSpec spec = template.get(i);
+                        
+                        if (widget == null) {
+                                continue;
+                        }
+                        
+                        // -- the widget may show the value of another row
+                        if (row.getRawValue(i) != null) {
+                                widget.setValue(row.getRawValue(i));
+                        }
+                        else {
+                                widget.clear();
+                        }
+                        
+                        if (widget instanceof FormCheckBox) {
+                                ((FormCheckBox) widget)._checkbox.setOnCheckedChangeListener(spec.getToggles() == null ? null : new CompoundButton.OnCheckedChangeListener() {
+                                        public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                                                onRuleChanged(binding);
+                                        }
+                                });
+                        }
+                        else if (widget instanceof FormSpinner) {
+                                ((FormSpinner) widget)._spinner.setOnItemSelectedListener(spec.getHideOnClick() == null ? null : new AdapterView.OnItemSelectedListener() {
+                                        public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                                                onRuleChanged(binding);
+                                        }
+                                        
+                                        public void onNothingSelected(AdapterView<?> parent) {}
+                                });
+                        }
+                }
+                
+                binding.index = index;
+                
+                updateVisibility(binding);
+        }
+        
+        /**
+         * writes the values of the widgets to their row. The hidden widgets
+         * keep the value they had when they were shown.
+         * 
+         * @return true if the visibility of a field of the row has changed.
+         */
+        private boolean write(Binding binding) {
+                FormValueModel row = rows.get(binding.index);
+                boolean changed = false;
+                
+                for (int i = 0; i < template.size(); i++) {
+                        if (binding.widgets[i] != null && binding.widgets[i].isVisible()) {
+                                changed |= row.setValue(i, binding.widgets[i].getValue());
+                        }
+                }
+                
+                return changed;
+        }
+        
+        private void onRuleChanged(Binding binding) {
+                if (binding.index != -1 && write(binding)) {
+                        updateVisibility(binding);
+                }
+        }
+        
+        private void updateVisibility(Binding binding) {
+                FormValueModel row = rows.get(binding.index);
+                
+                for (int i = 0; i < template.size(); i++) {
+                        if (binding.widgets[i] != null) {
+                                binding.widgets[i].setVisibility(row.isVisible(i) ? View.VISIBLE : View.GONE);
+                        }
+                }
+        }
+        
+        // -----------------------------------------------
+        //
+        // rows
+        //
+        // -----------------------------------------------
+        
+        /**
+         * returns the view of a row, a widget per field of the template and a
+         * remove button.
+         */
+        private View createRowView(final Binding binding) {
+                Context context = _rows.getContext();
+                LinearLayout layout = new LinearLayout(context);
+                layout.setOrientation(LinearLayout.VERTICAL);
+                
+                binding.widgets = new FormWidget[template.size()];
+                
+                for (int i = 0; i < template.size(); i++) {
+                        WidgetSpec spec = template.get(i);
+                        FormWidget widget = factories.create(context, spec.getName(), spec);
+                        
+                        if (widget != null) {
+                                widget.setId(spec.getId());
+                                
+                                if (spec.getHint() != null) widget.setHint(spec.getHint());
+                                
+                                binding.widgets[i] = widget;
+                                layout.addView(widget.getView());
+                        }
+                }
+                
+                Button removeButton = new Button(context);
+                removeButton.setText(context.getResources().getString(string.btn_remove));
+                removeButton.setOnClickListener(new OnClickListener() {
+                        @Override
+                        public void onClick(View v) {
+                                if (binding.index != -1) {
+                                        removeRow(binding.index);
+                                }
+                        }
+                });
+                
+                layout.addView(removeButton);
+                
+                return layout;
+        }
+}
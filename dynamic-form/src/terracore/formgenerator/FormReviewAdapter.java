@@ -0,0 +1,421 @@
+package terracore.formgenerator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import makemachine.android.examples.forms.R;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import terracore.formgenerator.camera.FormCamera;
+import terracore.formgenerator.schema.WidgetSpec;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.AsyncTask;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+/**
+ * Shows a saved record as a read only list of label and value rows, without
+ * creating the widgets of the form. Only the visible fields have a row, the
+ * "toggles" and "hideOnClick" rules are applied to the values of the record by
+ * a {@link FormValueModel}.
+ * 
+ * The rows are plain text views recycled by the list. The rows of a repeating
+ * group are shown one per line, with the labels of the fields of its
+ * template. The photos of a camera field are shown as thumbnails, decoded in
+ * background when their row is shown and kept in a small cache. A photo is
+ * decoded once even if several rows show it, and its decoding is cancelled
+ * when no row shows it anymore.
+ */
+public class FormReviewAdapter extends BaseAdapter {
+        private static final int                     THUMBNAIL_SIZE = 100;
+        private static final int                     MAX_THUMBNAILS = 32;
+        
+        private final Context                        context;
+        private final List<WidgetSpec>               specs;
+        private final FormTree                       tree;
+        private final int[]                          order;
+        private final Map<String, Bitmap>            thumbnails     = new LinkedHashMap<String, Bitmap>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Bitmap> eldest) {
+                        return size() > MAX_THUMBNAILS;
+                }
+        };
+        // -- the thumbnails being decoded, by path
+        private final Map<String, ThumbnailLoader>   loaders        = new HashMap<String, ThumbnailLoader>();
+        // -- the template of each repeating group, resolved when first shown
+        private final Map<Integer, List<WidgetSpec>> templates      = new HashMap<Integer, List<WidgetSpec>>();
+        
+        private FormValueModel                       model;
+        private int[]                                rows;
+        
+        /**
+         * The views of a row, kept in the tag of the row.
+         */
+        private static class Row {
+                TextView     label;
+                TextView     value;
+                LinearLayout photos;
+        }
+        
+        /**
+         * @param context
+         * @param specs
+         *                - the widgets of the schema
+         * @param data
+         *                - the json object of the record, or null
+         */
+        public FormReviewAdapter(Context context, List<WidgetSpec> specs, String data) {
+                this.context = context;
+                this.specs = specs;
+                this.tree = FormTree.fromSpecs(specs);
+                this.order = tree.getOrder();
+                
+                setRecord(data);
+        }
+        
+        public List<WidgetSpec> getSpecs() {
+                return specs;
+        }
+        
+        public FormValueModel getModel() {
+                return model;
+        }
+        
+        /**
+         * Shows another record of the same schema, the rows and the
+         * thumbnails already decoded are reused.
+         * 
+         * @param data
+         *                - the json object of the record, or null
+         */
+        public void setRecord(String data) {
+                model = new FormValueModel(specs);
+                model.setContext(context);
+                
+                if (data != null) {
+                        for (Map.Entry<String, String> entry : PreparedForm.readValues(data, specs).entrySet()) {
+                                model.setValue(entry.getKey(), entry.getValue());
+                        }
+                }
+                
+                notifyDataSetChanged();
+        }
+        
+        /**
+         * Sets the value of a field, see
+         * {@link FormValueModel#setValue(String, String)}.
+         */
+        public void setValue(String id, String value) {
+                model.setValue(id, value);
+                notifyDataSetChanged();
+        }
+        
+        /**
+         * keeps the rows of the visible fields, the sections of the hidden
+         * accordions are hidden with them.
+         */
+        private void updateRows() {
+                int[] visibleRows = new int[order.length];
+                int count = 0;
+                
+                for (int index : order) {
+                        if (tree.isField(index) && model.isVisible(index) && isSectionShown(index)) {
+                                visibleRows[count++] = index;
+                        }
+                }
+                
+                rows = new int[count];
+                System.arraycopy(visibleRows, 0, rows, 0, count);
+        }
+        
+        private boolean isSectionShown(int index) {
+                for (int i = tree.getParent(index); i != FormTree.ROOT; i = tree.getParent(i)) {
+                        if (!model.isVisible(i)) {
+                                return false;
+                        }
+                }
+                
+                return true;
+        }
+        
+        @Override
+        public void notifyDataSetChanged() {
+                updateRows();
+                super.notifyDataSetChanged();
+        }
+        
+        // -----------------------------------------------
+        //
+        // adapter
+        //
+        // -----------------------------------------------
+        
+        @Override
+        public int getCount() {
+                return rows.length;
+        }
+        
+        @Override
+        public WidgetSpec getItem(int position) {
+                return specs.get(rows[position]);
+        }
+        
+        @Override
+        public long getItemId(int position) {
+                return rows[position];
+        }
+        
+        @Override
+        public boolean hasStableIds() {
+                return true;
+        }
+        
+        @Override
+        public boolean isEnabled(int position) {
+                return false;
+        }
+        
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+                Row row = convertView != null ? (Row) convertView.getTag() : null;
+                View view = convertView;
+                
+                if (row == null) {
+                        row = new Row();
+                        view = createRow(row);
+                }
+                
+                int index = rows[position];
+                WidgetSpec spec = specs.get(index);
+                
+                row.label.setText(FormWidget.titleCase(spec.getName().replace("_", " ")));
+                
+                if (FormActivity.SCHEMA_KEY_CAMERA.equals(spec.getType())) {
+                        String value = model.getValue(index);
+                        
+                        row.value.setVisibility(View.GONE);
+                        bindPhotos(row.photos, value.length() == 0 ? new String[0] : value.split("\\, "));
+                }
+                else {
+                        row.value.setVisibility(View.VISIBLE);
+                        row.value.setText(getDisplayValue(index));
+                        bindPhotos(row.photos, new String[0]);
+                }
+                
+                return view;
+        }
+        
+        private View createRow(Row row) {
+                LinearLayout layout = new LinearLayout(context);
+                layout.setOrientation(LinearLayout.VERTICAL);
+                layout.setPadding(15, 10, 15, 10);
+                
+                row.label = new TextView(context);
+                row.label.setTextColor(Color.GRAY);
+                layout.addView(row.label);
+                
+                row.value = new TextView(context);
+                row.value.setTextColor(Color.BLACK);
+                layout.addView(row.value);
+                
+                row.photos = new LinearLayout(context);
+                row.photos.setOrientation(LinearLayout.HORIZONTAL);
+                layout.addView(row.photos);
+                
+                layout.setTag(row);
+                
+                return layout;
+        }
+        
+        /**
+         * returns the value of the field as the form shows it: the label of the
+         * option of a spinner, yes or no for a checkbox, a line per row of a
+         * repeating group.
+         */
+        private String getDisplayValue(int index) {
+                String value = model.getValue(index);
+                
+                if (FormActivity.SCHEMA_KEY_REPEATING_GROUP.equals(specs.get(index).getType())) {
+                        return getRowsText(index, value);
+                }
+                
+                return getDisplayValue(specs.get(index), value);
+        }
+        
+        private String getDisplayValue(WidgetSpec spec, String value) {
+                if (FormActivity.SCHEMA_KEY_CHECKBOX.equals(spec.getType())) {
+                        return context.getResources().getString("1".equals(value) ? R.string.lbl_yes : R.string.lbl_no);
+                }
+                
+                return value;
+        }
+        
+        /**
+         * returns the rows of a repeating group, a line per row with the
+         * visible fields of the template as label and value. The rules of the
+         * template are applied to each row.
+         */
+        private String getRowsText(int index, String value) {
+                List<WidgetSpec> template = templates.get(index);
+                
+                if (template == null) {
+                        template = FormRepeatingGroup.resolveTemplate(context, specs.get(index).getOptions().get(FormActivity.SCHEMA_KEY_TEMPLATE));
+                        templates.put(index, template);
+                }
+                
+                StringBuilder text = new StringBuilder();
+                JSONArray array = FormRepeatingGroup.toRows(value, template);
+                
+                for (int i = 0; i < array.length(); i++) {
+                        JSONObject object = array.optJSONObject(i);
+                        FormValueModel row = new FormValueModel(template);
+                        List<String> fields = new ArrayList<String>();
+                        
+                        for (int j = 0; object != null && j < template.size(); j++) {
+                                String id = template.get(j).getId();
+                                
+                                if (id != null && object.has(id)) {
+                                        row.setValue(j, object.optString(id));
+                                }
+                        }
+                        
+                        for (int j = 0; j < template.size(); j++) {
+                                WidgetSpec spec = template.get(j);
+                                
+                                if (spec.getId() != null && row.isVisible(j) && !FormActivity.SCHEMA_KEY_LABEL.equals(spec.getType())) {
+                                        fields.add(FormWidget.titleCase(spec.getName().replace("_", " ")) + ": " + getDisplayValue(spec, row.getValue(j)));
+                                }
+                        }
+                        
+                        text.append(i == 0 ? "" : "\n").append(i + 1).append(". ").append(join(fields));
+                }
+                
+                return text.toString();
+        }
+        
+        private static String join(List<String> values) {
+                StringBuilder joined = new StringBuilder();
+                
+                for (String value : values) {
+                        joined.append(joined.length() == 0 ? "" : ", ").append(value);
+                }
+                
+                return joined.toString();
+        }
+        
+        // -----------------------------------------------
+        //
+        // thumbnails
+        //
+        // -----------------------------------------------
+        
+        /**
+         * Shows the thumbnails of the photos, the image views of the row are
+         * reused and the photos not decoded yet are loaded in background.
+         */
+        private void bindPhotos(LinearLayout photos, String[] paths) {
+                for (int i = 0; i < Math.max(paths.length, photos.getChildCount()); i++) {
+                        if (i >= paths.length) {
+                                ImageView imageView = (ImageView) photos.getChildAt(i);
+                                unbind(imageView);
+                                imageView.setImageBitmap(null);
+                                imageView.setVisibility(View.GONE);
+                                continue;
+                        }
+                        
+                        if (i >= photos.getChildCount()) {
+                                ImageView imageView = new ImageView(context);
+                                imageView.setPadding(10, 10, 10, 10);
+                                photos.addView(imageView);
+                        }
+                        
+                        ImageView imageView = (ImageView) photos.getChildAt(i);
+                        Bitmap bitmap = thumbnails.get(paths[i]);
+                        
+                        imageView.setVisibility(View.VISIBLE);
+                        
+                        // -- still waiting for the same photo
+                        if (bitmap == null && paths[i].equals(imageView.getTag())) {
+                                continue;
+                        }
+                        
+                        unbind(imageView);
+                        imageView.setImageBitmap(bitmap);
+                        imageView.setTag(paths[i]);
+                        
+                        if (bitmap == null) {
+                                ThumbnailLoader loader = loaders.get(paths[i]);
+                                
+                                if (loader == null) {
+                                        loader = new ThumbnailLoader(paths[i]);
+                                        loaders.put(paths[i], loader);
+                                        loader.execute();
+                                }
+                                
+                                loader.imageViews.add(imageView);
+                        }
+                }
+        }
+        
+        /**
+         * Stops showing a photo in an image view, its decoding is cancelled
+         * if no other image view waits for it.
+         */
+        private void unbind(ImageView imageView) {
+                Object path = imageView.getTag();
+                ThumbnailLoader loader = path != null ? loaders.get(path) : null;
+                
+                imageView.setTag(null);
+                
+                if (loader != null && loader.imageViews.remove(imageView) && loader.imageViews.isEmpty()) {
+                        loader.cancel(false);
+                        loaders.remove(path);
+                }
+        }
+        
+        /**
+         * Decodes a thumbnail, and shows it in the image views that still
+         * show the same photo.
+         */
+        private class ThumbnailLoader extends AsyncTask<Void, Void, Bitmap> {
+                private final String          path;
+                private final List<ImageView> imageViews = new ArrayList<ImageView>();
+                
+                public ThumbnailLoader(String path) {
+                        this.path = path;
+                }
+                
+                @Override
+                protected Bitmap doInBackground(Void... params) {
+                        return FormCamera.decodeSampledBitmapFromResource(path, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+                }
+                
+                @Override
+                protected void onPostExecute(Bitmap bitmap) {
+                        loaders.remove(path);
+                        
+                        if (bitmap == null) {
+                                return;
+                        }
+                        
+                        thumbnails.put(path, bitmap);
+                        
+                        for (ImageView imageView : imageViews) {
+                                if (path.equals(imageView.getTag())) {
+                                        imageView.setImageBitmap(bitmap);
+                                }
+                        }
+                }
+        }
+}
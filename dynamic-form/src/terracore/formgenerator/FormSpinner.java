@@ -1,14 +1,12 @@
 package terracore.formgenerator;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
 
-import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
+import terracore.formgenerator.schema.WidgetSpec;
 import android.content.Context;
 import android.util.Log;
 import android.view.View;
@@ -16,54 +14,50 @@ import android.widget.ArrayAdapter;
 import android.widget.Spinner;
 
 public class FormSpinner extends FormWidget {
-        private static String                        LOG_TAG             = "FORM_SPINNER";
-        
-        protected JSONObject                         _options;
-        protected Spinner                            _spinner;
-        protected HashMap<String, String>            _propmap;
-        protected ArrayAdapter<String>               _adapter;
+        /**
+         * @deprecated the options are read from {@link #getOptionSet()}, this
+         *             is only set when the spinner is created from a
+         *             JSONObject, for the subclasses that read it.
+         */
+        @Deprecated
+        protected JSONObject                          _options;
+        protected Spinner                             _spinner;
+        protected OptionSet                           _optionSet;
+        protected ArrayAdapter<String>                _adapter;
         
-        protected List<FormWidget>                   lastModifiedWidgets = new ArrayList<FormWidget>();
+        protected List<FormWidget>                    lastModifiedWidgets = new ArrayList<FormWidget>();
         
-        protected HashMap<String, ArrayList<String>> _widgetsToHide;
+        protected Map<String, ? extends List<String>> _widgetsToHide;
         
         public FormSpinner(Context context, String property, JSONObject options) {
-                super(context, property);
-                
+                this(context, property, parseJsonObjectToMap(options));
                 _options = options;
+        }
+        
+        public FormSpinner(Context context, String property, Map<String, String> options) {
+                super(context, property);
                 
                 _spinner = new Spinner(context);
                 _spinner.setLayoutParams(FormActivity.defaultLayoutParams);
                 
-                String value;
-                String key;
-                JSONArray propertyNames = options.names();
+                setOptions(OptionSet.of(options));
                 
-                _propmap = new HashMap<String, String>();
-                _adapter = new ArrayAdapter<String>(context, android.R.layout.simple_spinner_item);
+                _layout.addView(_spinner);
+        }
+        
+        /**
+         * Shows the labels of an option set, the adapter reads them from the
+         * shared set instead of copying them.
+         */
+        private void setOptions(OptionSet options) {
+                _optionSet = options;
+                _adapter = new ArrayAdapter<String>(_spinner.getContext(), android.R.layout.simple_spinner_item, options.getLabels());
                 _adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
                 _spinner.setAdapter(_adapter);
-                
-                try {
-                        for (int i = 0; i < options.length(); i++) {
-                                key = propertyNames.getString(i);
-                                value = options.getString(key);
-                                
-                                _propmap.put(key, value);
-                        }
-                }
-                catch (JSONException e) {
-                        Log.e(LOG_TAG, e.getMessage());
-                }
-                
-                _propmap = sortByKeys(_propmap); // sort the hashmap entries
-                
-                for (Entry<String, String> entry : _propmap.entrySet()) {
-                        String combo_value = entry.getValue();
-                        _adapter.add(combo_value);
-                }
-                
-                _layout.addView(_spinner);
+        }
+        
+        public OptionSet getOptionSet() {
+                return _optionSet;
         }
         
         @Override
@@ -72,12 +66,20 @@ public class FormSpinner extends FormWidget {
                 String value = "";
                 
                 if (isVisible()) {
-                        value = _adapter.getItem(spinnerPosition);
+                        value = _optionSet.labelAt(spinnerPosition);
                 }
                 
                 return value;
         }
         
+        /**
+         * returns the key of the selected option, empty if the spinner is
+         * hidden. See {@link FormActivity#isOptionKeySaved()}.
+         */
+        public String getKey() {
+                return isVisible() ? _optionSet.getKey(_spinner.getSelectedItemPosition()) : "";
+        }
+        
         public String getPosition() {
                 int spinnerPosition = _spinner.getSelectedItemPosition();
                 return "" + spinnerPosition;
@@ -85,20 +87,10 @@ public class FormSpinner extends FormWidget {
         
         @Override
         public void setValue(String value) {
-                try {
-                        String name;
-                        JSONArray names = _options.names();
-                        for (int i = 0; i < names.length(); i++) {
-                                name = names.getString(i);
-                                String item = _options.getString(name);
-                                
-                                if (name.equals(value) || item.equals(value)) {
-                                        _spinner.setSelection(_adapter.getPosition(item));
-                                }
-                        }
-                }
-                catch (JSONException e) {
-                        Log.e(LOG_TAG, e.getMessage());
+                int position = _optionSet.indexOf(value);
+                
+                if (position != -1) {
+                        _spinner.setSelection(position);
                 }
         }
         
@@ -133,8 +125,8 @@ public class FormSpinner extends FormWidget {
                 for (i = 0; i < widgetsToHide.size(); i++) {
                         widgetId = widgetsToHide.get(i);
                         
-                        if (FormActivity._map.get(widgetId) != null) {
-                                FormWidget widget = FormActivity._map.get(widgetId);
+                        if (findWidget(widgetId) != null) {
+                                FormWidget widget = findWidget(widgetId);
                                 
                                 if (widget.isVisible()) {
                                         Log.i(_displayText + " GONE: ", widget._displayText);
@@ -154,8 +146,8 @@ public class FormSpinner extends FormWidget {
          * @param value
          * @return
          */
-        public ArrayList<String> getWidgetsToBeInvisible() {
-                ArrayList<String> widgetsToHide = new ArrayList<String>();
+        public List<String> getWidgetsToBeInvisible() {
+                List<String> widgetsToHide = new ArrayList<String>();
                 
                 if (_widgetsToHide != null) {
                         String value = getPosition();
@@ -169,7 +161,7 @@ public class FormSpinner extends FormWidget {
         }
         
         public void setWidgetsToHide(
-                                     HashMap<String, ArrayList<String>> _widgetsToHide) {
+                                     Map<String, ? extends List<String>> _widgetsToHide) {
                 this._widgetsToHide = _widgetsToHide;
         }
         
@@ -178,4 +170,60 @@ public class FormSpinner extends FormWidget {
                 _spinner.setSelection(0);
         }
         
+        /**
+         * Drops the listener and the widgets hidden by the spinner, they
+         * belong to the form the widget was shown in.
+         */
+        @Override
+        public void recycle() {
+                _spinner.setOnItemSelectedListener(null);
+                _widgetsToHide = null;
+                lastModifiedWidgets.clear();
+        }
+        
+        /**
+         * Replaces the options of the spinner and its rules, and selects the
+         * first option.
+         */
+        @Override
+        public boolean bind(WidgetSpec spec) {
+                if (!spec.hasOptions()) {
+                        return false;
+                }
+                
+                setName(spec.getName());
+                
+                _spinner.setOnItemSelectedListener(null);
+                _widgetsToHide = null;
+                lastModifiedWidgets.clear();
+                
+                // -- the adapter is kept if the options are the same
+                OptionSet options = OptionSet.of(spec.getOptions());
+                
+                if (options != _optionSet) {
+                        setOptions(options);
+                }
+                
+                _spinner.setSelection(0);
+                
+                return true;
+        }
+        
+        /**
+         * returns the position that {@link #setValue(String)} selects for a
+         * value, a key or a label of the options, or 0 if the value is none of
+         * them. The options are sorted like the spinner sorts them.
+         */
+        public static int positionOf(Map<String, String> options, String value) {
+                return OptionSet.of(options).positionOf(value);
+        }
+        
+        /**
+         * returns the label of the option at a position, see
+         * {@link #positionOf(Map, String)}.
+         */
+        public static String labelAt(Map<String, String> options, int position) {
+                return OptionSet.of(options).labelAt(position);
+        }
+        
 }
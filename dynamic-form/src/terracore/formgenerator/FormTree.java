@@ -0,0 +1,364 @@
+package terracore.formgenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import terracore.formgenerator.accordion.FormAccordion;
+import terracore.formgenerator.schema.WidgetSpec;
+
+/**
+ * The sections of a form: each widget is a node, the children of an accordion
+ * are its child nodes, and accordions can be nested in accordions. The tree is
+ * built in one pass over the schema, a node knows its parent and its children,
+ * so walking a section costs the size of the section, not of the form.
+ * 
+ * Nodes are the indexes of the widgets in the schema. A widget is the child of
+ * the first accordion that lists it, an accordion that would contain itself,
+ * directly or not, doesn't get the child. The top level widgets are the roots,
+ * sorted by priority.
+ * 
+ * The tree can be built from any thread, the widgets are set once they are
+ * created, see {@link #setWidget(int, FormWidget)}.
+ */
+public class FormTree {
+        public static final int            ROOT = -1;
+        
+        private final String[]             ids;
+        private final int[]                priorities;
+        private final boolean[]            fields;
+        private final int[]                parents;
+        private final int[][]              children;
+        private final int[]                roots;
+        private final FormWidget[]         widgets;
+        private Map<String, Integer>       indexes;
+        
+        /**
+         * @param children
+         *                - the child nodes of each node
+         * @param indexes
+         *                - the node of each id, or null to index the ids
+         *                when a node is first looked up by id
+         */
+        private FormTree(String[] ids, int[] priorities, boolean[] fields, int[][] children, Map<String, Integer> indexes) {
+                int count = ids.length;
+                
+                this.ids = ids;
+                this.priorities = priorities;
+                this.fields = fields;
+                this.parents = new int[count];
+                this.children = children;
+                this.indexes = indexes;
+                this.widgets = new FormWidget[count];
+                
+                Arrays.fill(parents, ROOT);
+                
+                for (int i = 0; i < count; i++) {
+                        for (int child : children[i]) {
+                                parents[child] = i;
+                        }
+                }
+                
+                List<Integer> nodes = new ArrayList<Integer>();
+                
+                for (int i = 0; i < count; i++) {
+                        if (parents[i] == ROOT) {
+                                nodes.add(i);
+                        }
+                }
+                
+                // -- stable, the widgets with the same priority keep the order of the schema
+                Collections.sort(nodes, new Comparator<Integer>() {
+                        public int compare(Integer index1, Integer index2) {
+                                int priority1 = FormTree.this.priorities[index1];
+                                int priority2 = FormTree.this.priorities[index2];
+                                return priority1 < priority2 ? -1 : (priority1 == priority2 ? 0 : 1);
+                        }
+                });
+                
+                roots = toArray(nodes);
+        }
+        
+        /**
+         * returns the tree of the nodes whose children are listed by id.
+         */
+        private static FormTree create(String[] ids, int[] priorities, boolean[] fields, List<List<String>> childIds) {
+                int count = ids.length;
+                Map<String, Integer> indexes = indexIds(ids);
+                int[] parents = new int[count];
+                int[][] children = new int[count][];
+                List<Integer> nodes = new ArrayList<Integer>();
+                
+                Arrays.fill(parents, ROOT);
+                
+                for (int i = 0; i < count; i++) {
+                        nodes.clear();
+                        
+                        for (int j = 0; childIds.get(i) != null && j < childIds.get(i).size(); j++) {
+                                Integer child = indexes.get(childIds.get(i).get(j));
+                                
+                                if (child != null && parents[child] == ROOT && !isAncestor(parents, child, i)) {
+                                        parents[child] = i;
+                                        nodes.add(child);
+                                }
+                        }
+                        
+                        children[i] = toArray(nodes);
+                }
+                
+                return new FormTree(ids, priorities, fields, children, indexes);
+        }
+        
+        private static Map<String, Integer> indexIds(String[] ids) {
+                Map<String, Integer> indexes = new HashMap<String, Integer>(ids.length * 2);
+                
+                for (int i = 0; i < ids.length; i++) {
+                        // -- the last widget of an id wins, like in the map of the FormActivity
+                        if (ids[i] != null) {
+                                indexes.put(ids[i], i);
+                        }
+                }
+                
+                return indexes;
+        }
+        
+        /**
+         * returns the tree of the widgets of a schema.
+         */
+        public static FormTree fromSpecs(List<WidgetSpec> specs) {
+                int count = specs.size();
+                String[] ids = new String[count];
+                int[] priorities = new int[count];
+                boolean[] fields = new boolean[count];
+                List<List<String>> childIds = new ArrayList<List<String>>(count);
+                
+                for (int i = 0; i < count; i++) {
+                        WidgetSpec spec = specs.get(i);
+                        boolean accordion = FormActivity.SCHEMA_KEY_ACCORDION.equals(spec.getType());
+                        
+                        ids[i] = spec.getId();
+                        priorities[i] = spec.getPriority();
+                        fields[i] = !accordion && !FormActivity.SCHEMA_KEY_LABEL.equals(spec.getType());
+                        childIds.add(accordion ? spec.getChildren() : null);
+                }
+                
+                return create(ids, priorities, fields, childIds);
+        }
+        
+        /**
+         * returns the tree of widgets already created, for the forms that
+         * have no schema. The widgets are set in the tree.
+         */
+        public static FormTree fromWidgets(List<FormWidget> formWidgets) {
+                int count = formWidgets.size();
+                String[] ids = new String[count];
+                int[] priorities = new int[count];
+                boolean[] fields = new boolean[count];
+                List<List<String>> childIds = new ArrayList<List<String>>(count);
+                
+                for (int i = 0; i < count; i++) {
+                        FormWidget widget = formWidgets.get(i);
+                        boolean accordion = widget instanceof FormAccordion;
+                        
+                        ids[i] = widget.getId();
+                        priorities[i] = widget.getPriority();
+                        fields[i] = !accordion && !(widget instanceof FormLabelTitle);
+                        childIds.add(accordion ? ((FormAccordion) widget).getChildrenIds() : null);
+                }
+                
+                FormTree tree = create(ids, priorities, fields, childIds);
+                
+                for (int i = 0; i < count; i++) {
+                        tree.widgets[i] = formWidgets.get(i);
+                }
+                
+                return tree;
+        }
+        
+        /**
+         * returns the tree of widgets already created, whose children are
+         * given by their indexes, like the ones of a {@link GeneratedForm}.
+         * The widgets are set in the tree, and their ids are indexed only if a
+         * node is looked up by id.
+         * 
+         * @param formWidgets
+         * @param childIndexes
+         *                - the indexes of the children of each widget, null
+         *                for the widgets that have none
+         */
+        public static FormTree fromChildren(List<FormWidget> formWidgets, int[][] childIndexes) {
+                int count = formWidgets.size();
+                String[] ids = new String[count];
+                int[] priorities = new int[count];
+                boolean[] fields = new boolean[count];
+                int[][] children = new int[count][];
+                
+                for (int i = 0; i < count; i++) {
+                        FormWidget widget = formWidgets.get(i);
+                        
+                        ids[i] = widget.getId();
+                        priorities[i] = widget.getPriority();
+                        fields[i] = !(widget instanceof FormAccordion) && !(widget instanceof FormLabelTitle);
+                        children[i] = childIndexes[i] != null ? childIndexes[i] : new int[0];
+                }
+                
+                FormTree tree = new FormTree(ids, priorities, fields, children, null);
+                
+                for (int i = 0; i < count; i++) {
+                        tree.widgets[i] = formWidgets.get(i);
+                }
+                
+                return tree;
+        }
+        
+        private static boolean isAncestor(int[] parents, int node, int index) {
+                for (int i = index; i != ROOT; i = parents[i]) {
+                        if (i == node) {
+                                return true;
+                        }
+                }
+                
+                return false;
+        }
+        
+        private static int[] toArray(List<Integer> list) {
+                int[] array = new int[list.size()];
+                
+                for (int i = 0; i < array.length; i++) {
+                        array[i] = list.get(i);
+                }
+                
+                return array;
+        }
+        
+        // -----------------------------------------------
+        //
+        // nodes
+        //
+        // -----------------------------------------------
+        
+        public int size() {
+                return ids.length;
+        }
+        
+        /**
+         * returns the node of the widget with the id, or -1.
+         */
+        public int indexOf(String id) {
+                Integer index = getIndexes().get(id);
+                return index != null ? index : -1;
+        }
+        
+        private synchronized Map<String, Integer> getIndexes() {
+                if (indexes == null) {
+                        indexes = indexIds(ids);
+                }
+                
+                return indexes;
+        }
+        
+        public String getId(int index) {
+                return ids[index];
+        }
+        
+        /**
+         * returns the accordion of the node, or {@link #ROOT}.
+         */
+        public int getParent(int index) {
+                return parents[index];
+        }
+        
+        public int[] getChildren(int index) {
+                return children[index];
+        }
+        
+        /**
+         * returns the top level nodes, sorted by priority.
+         */
+        public int[] getRoots() {
+                return roots;
+        }
+        
+        /**
+         * returns true if the node holds a value: it is neither a label nor an
+         * accordion.
+         */
+        public boolean isField(int index) {
+                return fields[index];
+        }
+        
+        /**
+         * returns the widget of the node, null if it is not created.
+         */
+        public FormWidget getWidget(int index) {
+                return widgets[index];
+        }
+        
+        public void setWidget(int index, FormWidget widget) {
+                widgets[index] = widget;
+        }
+        
+        /**
+         * returns every node in the order of the form: the roots, each one
+         * followed by its section.
+         */
+        public int[] getOrder() {
+                int[] order = new int[ids.length];
+                int position = 0;
+                
+                for (int root : roots) {
+                        position = addSection(root, order, position);
+                }
+                
+                return order;
+        }
+        
+        /**
+         * returns the node and the nodes of its section, in the order of the
+         * form.
+         */
+        public int[] getSection(int index) {
+                int[] section = new int[countSection(index)];
+                addSection(index, section, 0);
+                return section;
+        }
+        
+        private int countSection(int index) {
+                int count = 1;
+                
+                for (int child : children[index]) {
+                        count += countSection(child);
+                }
+                
+                return count;
+        }
+        
+        private int addSection(int index, int[] order, int position) {
+                order[position++] = index;
+                
+                for (int child : children[index]) {
+                        position = addSection(child, order, position);
+                }
+                
+                return position;
+        }
+        
+        /**
+         * returns true if the widget of the node and every accordion above it
+         * are visible. A node whose widget is not created is shown if its
+         * accordions are.
+         */
+        public boolean isShown(int index) {
+                for (int i = index; i != ROOT; i = parents[i]) {
+                        if (widgets[i] != null && !widgets[i].isVisible()) {
+                                return false;
+                        }
+                }
+                
+                return true;
+        }
+}
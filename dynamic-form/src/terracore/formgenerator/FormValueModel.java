@@ -0,0 +1,293 @@
+package terracore.formgenerator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import terracore.formgenerator.schema.WidgetSpec;
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * The values and the visibility of the widgets of a form, without the widgets.
+ * 
+ * Used by the {@link FormListAdapter}, which creates views only for the rows on
+ * screen: the values of the other rows are kept here, and the "toggles" and
+ * "hideOnClick" rules are applied to these values the same way
+ * {@link FormActivity#reapplyVisibility()} applies them to the widgets.
+ */
+public class FormValueModel {
+        private static final String        LOG_TAG = "FORM_VALUE_MODEL";
+        
+        private final List<WidgetSpec>     specs;
+        private final String[]             values;
+        private final boolean[]            visible;
+        private final Map<String, Integer> indexes;
+        private final OptionSet[]          optionSets;
+        
+        private boolean                    optionKeySaved;
+        private Context                    context;
+        
+        public FormValueModel(List<WidgetSpec> specs) {
+                this.specs = specs;
+                this.values = new String[specs.size()];
+                this.visible = new boolean[specs.size()];
+                this.indexes = new HashMap<String, Integer>(specs.size() * 2);
+                this.optionSets = new OptionSet[specs.size()];
+                
+                for (int i = 0; i < specs.size(); i++) {
+                        values[i] = specs.get(i).getDefault();
+                        
+                        // -- the last widget of an id wins, like in the map of the FormActivity
+                        if (specs.get(i).getId() != null) {
+                                indexes.put(specs.get(i).getId(), i);
+                        }
+                }
+                
+                updateVisibility();
+        }
+        
+        public List<WidgetSpec> getSpecs() {
+                return specs;
+        }
+        
+        public int size() {
+                return specs.size();
+        }
+        
+        /**
+         * returns the index of the widget with the id, or -1.
+         */
+        public int indexOf(String id) {
+                Integer index = indexes.get(id);
+                return index != null ? index : -1;
+        }
+        
+        // -----------------------------------------------
+        //
+        // values
+        //
+        // -----------------------------------------------
+        
+        /**
+         * returns the value the widget would return: empty if it is hidden,
+         * "1" or "0" for a checkbox and the label of the selected option for a
+         * spinner.
+         */
+        public String getValue(int index) {
+                if (!visible[index]) {
+                        return "";
+                }
+                
+                WidgetSpec spec = specs.get(index);
+                String value = values[index];
+                
+                if (FormActivity.SCHEMA_KEY_CHECKBOX.equals(spec.getType())) {
+                        return "1".equals(value) ? "1" : "0";
+                }
+                
+                if (FormActivity.SCHEMA_KEY_SPINNER.equals(spec.getType())) {
+                        return getOptionSet(index).labelOf(value);
+                }
+                
+                return value != null ? value : "";
+        }
+        
+        /**
+         * returns the value as it is saved: the key of the selected option of
+         * a spinner if {@link #isOptionKeySaved()}, else like
+         * {@link #getValue(int)}.
+         */
+        public String getSavedValue(int index) {
+                if (optionKeySaved && visible[index] && FormActivity.SCHEMA_KEY_SPINNER.equals(specs.get(index).getType())) {
+                        return getOptionSet(index).keyOf(values[index]);
+                }
+                
+                return getValue(index);
+        }
+        
+        /**
+         * returns true if the key of the selected option of a spinner is
+         * saved, instead of its label. See {@link FormActivity#isOptionKeySaved()}.
+         */
+        public boolean isOptionKeySaved() {
+                return optionKeySaved;
+        }
+        
+        public void setOptionKeySaved(boolean optionKeySaved) {
+                this.optionKeySaved = optionKeySaved;
+        }
+        
+        /**
+         * Sets the context the templates of the repeating groups are resolved
+         * with, for the values saved before a field was a repeating group,
+         * see {@link #save()}.
+         */
+        public void setContext(Context context) {
+                this.context = context;
+        }
+        
+        /**
+         * returns the options of a spinner, looked up once per widget.
+         */
+        private OptionSet getOptionSet(int index) {
+                if (optionSets[index] == null) {
+                        optionSets[index] = OptionSet.of(specs.get(index).getOptions());
+                }
+                
+                return optionSets[index];
+        }
+        
+        /**
+         * returns the value as it was set, null if it was never set and the
+         * widget has no default.
+         */
+        public String getRawValue(int index) {
+                return values[index];
+        }
+        
+        /**
+         * Sets the value of a widget.
+         * 
+         * @return true if the visibility of a widget has changed.
+         */
+        public boolean setValue(int index, String value) {
+                values[index] = value;
+                
+                if (specs.get(index).getToggles() == null && specs.get(index).getHideOnClick() == null) {
+                        return false;
+                }
+                
+                return updateVisibility();
+        }
+        
+        /**
+         * @see #setValue(int, String)
+         */
+        public boolean setValue(String id, String value) {
+                int index = indexOf(id);
+                return index != -1 && setValue(index, value);
+        }
+        
+        /**
+         * Clears every value, like {@link FormWidget#clear()}.
+         */
+        public void clear() {
+                Arrays.fill(values, "");
+                updateVisibility();
+        }
+        
+        /**
+         * Takes the values of the widgets of another model that have the same
+         * id, like {@link FormActivity#reloadForm(List)} does.
+         */
+        public void copyValues(FormValueModel model) {
+                for (int i = 0; i < values.length; i++) {
+                        int index = model.indexOf(specs.get(i).getId());
+                        
+                        if (index != -1) {
+                                values[i] = model.values[index];
+                        }
+                }
+                
+                updateVisibility();
+        }
+        
+        /**
+         * returns the values of the form, like {@link FormActivity#save()}.
+         */
+        public JSONObject save() {
+                JSONObject data = new JSONObject();
+                
+                try {
+                        for (int i = 0; i < specs.size(); i++) {
+                                String type = specs.get(i).getType();
+                                
+                                if (FormActivity.SCHEMA_KEY_REPEATING_GROUP.equals(type)) {
+                                        // -- the rows of a repeating group are kept as json text, or a plain value saved before
+                                        data.put(specs.get(i).getId(), FormRepeatingGroup.toRows(getValue(i), context, specs.get(i)));
+                                }
+                                else if (!FormActivity.SCHEMA_KEY_LABEL.equals(type) && !FormActivity.SCHEMA_KEY_ACCORDION.equals(type)) {
+                                        data.put(specs.get(i).getId(), getSavedValue(i));
+                                }
+                        }
+                }
+                catch (JSONException e) {
+                        Log.e(LOG_TAG, e.getMessage());
+                        return null;
+                }
+                
+                return data;
+        }
+        
+        // -----------------------------------------------
+        //
+        // visibility
+        //
+        // -----------------------------------------------
+        
+        public boolean isVisible(int index) {
+                return visible[index];
+        }
+        
+        /**
+         * Applies the rules of the form to the current values: every widget
+         * is shown, the "hideOnClick" rules are applied from the bottom to the
+         * top, then the "toggles" rules. The children of a hidden accordion
+         * are hidden with it.
+         * 
+         * @return true if the visibility of a widget has changed.
+         */
+        public boolean updateVisibility() {
+                boolean[] previous = visible.clone();
+                
+                Arrays.fill(visible, true);
+                
+                for (int i = specs.size() - 1; i >= 0; i--) {
+                        WidgetSpec spec = specs.get(i);
+                        
+                        if (spec.getHideOnClick() != null && FormActivity.SCHEMA_KEY_SPINNER.equals(spec.getType())) {
+                                int position = getOptionSet(i).positionOf(values[i]);
+                                setVisible(spec.getHideOnClick().get(String.valueOf(position)), false);
+                        }
+                }
+                
+                for (int i = 0; i < specs.size(); i++) {
+                        WidgetSpec spec = specs.get(i);
+                        
+                        if (spec.getToggles() != null && FormActivity.SCHEMA_KEY_CHECKBOX.equals(spec.getType())) {
+                                String value = getValue(i);
+                                
+                                for (Map.Entry<String, List<String>> entry : spec.getToggles().entrySet()) {
+                                        if (!entry.getKey().equals(value)) {
+                                                setVisible(entry.getValue(), false);
+                                        }
+                                }
+                                
+                                setVisible(spec.getToggles().get(value), true);
+                        }
+                }
+                
+                for (int i = 0; i < specs.size(); i++) {
+                        if (!visible[i] && FormActivity.SCHEMA_KEY_ACCORDION.equals(specs.get(i).getType())) {
+                                setVisible(specs.get(i).getChildren(), false);
+                        }
+                }
+                
+                return !Arrays.equals(previous, visible);
+        }
+        
+        private void setVisible(List<String> ids, boolean value) {
+                for (int i = 0; ids != null && i < ids.size(); i++) {
+                        int index = indexOf(ids.get(i));
+                        
+                        if (index != -1) {
+                                visible[index] = value;
+                        }
+                }
+        }
+}
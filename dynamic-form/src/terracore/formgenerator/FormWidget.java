@@ -11,18 +11,16 @@ import java.util.List;
 import java.util.Locale;
 
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
+import terracore.formgenerator.schema.WidgetSpec;
 import android.content.Context;
 import android.graphics.Color;
-import android.util.Log;
 import android.view.View;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
 public abstract class FormWidget {
-        private static final String                    LOG_TAG = "#FORMWIDGET";
         protected View                                 _view;
         protected String                               _property;
         protected String                               _displayText;
@@ -31,6 +29,8 @@ public abstract class FormWidget {
         protected FormActivity.FormWidgetToggleHandler _handler;
         protected TextView                             _label;
         private String                                 id;
+        private FormActivity                           form;
+        FormLayout                                     container;
         
         public FormWidget(Context context, String name) {
                 _layout = new LinearLayout(context);
@@ -84,6 +84,32 @@ public abstract class FormWidget {
          */
         public void setVisibility(int value) {
                 _layout.setVisibility(value);
+                
+                // -- the views are in a flat layout, which hides them with the widget
+                if (container != null) {
+                        container.requestLayout();
+                }
+        }
+        
+        /**
+         * returns the widget with the id in the form of this widget, or null.
+         * Widgets resolve each other through their form, so several forms can
+         * live at the same time.
+         */
+        protected FormWidget findWidget(String id) {
+                return form != null ? form.findWidget(id) : null;
+        }
+        
+        /**
+         * returns the form the widget is registered in, null if it is not
+         * registered.
+         */
+        public FormActivity getForm() {
+                return form;
+        }
+        
+        void setForm(FormActivity form) {
+                this.form = form;
         }
         
         // -----------------------------------------------
@@ -180,6 +206,15 @@ public abstract class FormWidget {
                 return _property;
         }
         
+        /**
+         * changes the property this widget represents, and its label.
+         */
+        protected void setName(String name) {
+                _property = name;
+                _displayText = toTitleCase(name.replace("_", " "));
+                _label.setText(getDisplayText());
+        }
+        
         /**
          * returns a title case version of this property
          * 
@@ -196,6 +231,13 @@ public abstract class FormWidget {
          * @return
          */
         public String toTitleCase(String s) {
+                return titleCase(s);
+        }
+        
+        /**
+         * @see #toTitleCase(String)
+         */
+        static String titleCase(String s) {
                 char[] chars = s.trim().toLowerCase().toCharArray();
                 boolean found = false;
                 
@@ -216,11 +258,11 @@ public abstract class FormWidget {
                                                                                            HashMap<K, V> map) {
                 List<K> keys = new LinkedList<K>(map.keySet());
                 
+                final Collator collator = Collator.getInstance(Locale.getDefault());
+                
                 Collections.sort(keys, (Comparator<? super K>) new Comparator<String>() {
                         @Override
                         public int compare(String first, String second) {
-                                Collator collator = Collator.getInstance(Locale.getDefault());
-                                //Collator collator = Collator.getInstance(new Locale("tr", "TR"));
                                 return collator.compare(first, second);
                         }
                 });
@@ -234,6 +276,32 @@ public abstract class FormWidget {
                 return sortedMap;
         }
         
+        /**
+         * 
+         * Converts a json object of plain values to Java HashMap
+         * 
+         * @param jsonObject
+         *                the object that has the values in it.
+         * @return the jsonObject converted as Java HashMap.
+         */
+        public static HashMap<String, String> parseJsonObjectToMap(
+                                                                   JSONObject jsonObject) {
+                HashMap<String, String> propertiesMap = new HashMap<String, String>();
+                
+                if (jsonObject != null) {
+                        String key;
+                        
+                        JSONArray propertyNames = jsonObject.names();
+                        
+                        for (int i = 0; propertyNames != null && i < propertyNames.length(); i++) {
+                                key = propertyNames.optString(i);
+                                propertiesMap.put(key, jsonObject.optString(key));
+                        }
+                }
+                
+                return propertiesMap;
+        }
+        
         /**
          * 
          * Converts a json map to Java HashMap
@@ -252,28 +320,27 @@ public abstract class FormWidget {
                         
                         JSONArray propertyNames = jsonMap.names();
                         
-                        try {
-                                for (int i = 0; i < jsonMap.length(); i++) {
-                                        key = propertyNames.getString(i);
-                                        value = jsonArrayToJavaArray(jsonMap.getJSONArray(key));
+                        for (int i = 0; propertyNames != null && i < propertyNames.length(); i++) {
+                                key = propertyNames.optString(i);
+                                JSONArray array = jsonMap.optJSONArray(key);
+                                
+                                if (array != null) {
+                                        value = jsonArrayToJavaArray(array);
                                         propertiesMap.put(key, value);
                                 }
                         }
-                        catch (JSONException e) {
-                                Log.e(LOG_TAG, e.getMessage());
-                        }
                 }
                 
                 return propertiesMap;
         }
         
-        public static List<String> jsonArrayToJavaArray(JSONArray jsonArray) throws JSONException {
+        public static List<String> jsonArrayToJavaArray(JSONArray jsonArray) {
                 List<String> list = new ArrayList<String>();
                 
                 if (jsonArray != null) {
                         int len = jsonArray.length();
                         for (int i = 0; i < len; i++) {
-                                list.add(jsonArray.get(i).toString());
+                                list.add(jsonArray.opt(i).toString());
                         }
                 }
                 
@@ -293,4 +360,22 @@ public abstract class FormWidget {
          * option on spinner.
          */
         public void clear() {}
+        
+        /**
+         * Stops the work the widget does in background, its form is going
+         * away. The widget may be shown again by another form.
+         */
+        public void recycle() {}
+        
+        /**
+         * Shows another entry of the schema in this widget, cleared, so its
+         * views can be reused instead of creating a new widget. The id,
+         * priority, hint and value are set by the caller.
+         * 
+         * @param spec
+         * @return false if this widget can't show the entry, the default.
+         */
+        public boolean bind(WidgetSpec spec) {
+                return false;
+        }
 }
@@ -0,0 +1,453 @@
+package terracore.formgenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONObject;
+
+import terracore.formgenerator.camera.FormCamera;
+import terracore.formgenerator.schema.WidgetSpec;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.CompoundButton;
+
+/**
+ * Shows a form one page at a time. The pages follow the order of the form, a
+ * new page starts at each top level widget that is a page break, see
+ * {@link FormActivity#isPageBreak(WidgetSpec)}; an accordion stays on the page
+ * of its section.
+ * 
+ * Only the widgets of the current page are created. The values of every page
+ * live in a {@link FormValueModel}, so the "toggles" and "hideOnClick" rules
+ * apply across pages, and a page whose widgets are all hidden is skipped. While
+ * a page is shown, the thread safe widgets of the next one are created on the
+ * {@link WidgetBuilderThread} if
+ * {@link FormActivity#isBackgroundInflationEnabled()}, see
+ * {@link ThreadSafeWidgetFactory}, and configured on the main thread when the
+ * page is shown.
+ */
+public class FormWizard {
+        private final FormActivity     activity;
+        private final FormValueModel   model;
+        private final FormTree         tree;
+        private final int[][]          pages;
+        
+        private int                    page = -1;
+        private FormWidget[]           widgets;
+        
+        // -- the next page, created on the builder thread and guarded by lock
+        private final Object           lock = new Object();
+        private int                    preparedPage = -1;
+        private FormWidget[]           prepared;
+        
+        public FormWizard(FormActivity activity, FormValueModel model, FormTree tree) {
+                this.activity = activity;
+                this.model = model;
+                this.tree = tree;
+                
+                List<int[]> sections = new ArrayList<int[]>();
+                List<Integer> nodes = new ArrayList<Integer>();
+                
+                for (int root : tree.getRoots()) {
+                        if (!nodes.isEmpty() && activity.isPageBreak(model.getSpecs().get(root))) {
+                                sections.add(toArray(nodes));
+                                nodes.clear();
+                        }
+                        
+                        for (int index : tree.getSection(root)) {
+                                nodes.add(index);
+                        }
+                }
+                
+                // -- an empty form has a single empty page
+                if (!nodes.isEmpty() || sections.isEmpty()) {
+                        sections.add(toArray(nodes));
+                }
+                
+                this.pages = sections.toArray(new int[sections.size()][]);
+        }
+        
+        private static int[] toArray(List<Integer> list) {
+                int[] array = new int[list.size()];
+                
+                for (int i = 0; i < array.length; i++) {
+                        array[i] = list.get(i);
+                }
+                
+                return array;
+        }
+        
+        public FormValueModel getModel() {
+                return model;
+        }
+        
+        public int getPageCount() {
+                return pages.length;
+        }
+        
+        /**
+         * returns the page shown, or -1 before {@link #start()}.
+         */
+        public int getPage() {
+                return page;
+        }
+        
+        // -----------------------------------------------
+        //
+        // navigation
+        //
+        // -----------------------------------------------
+        
+        /**
+         * Shows the first page that has a visible widget.
+         */
+        public void start() {
+                int first = nextPage(-1);
+                showPage(first != -1 ? first : 0);
+        }
+        
+        public boolean hasPrevious() {
+                return previousPage(page) != -1;
+        }
+        
+        public boolean hasNext() {
+                return nextPage(page) != -1;
+        }
+        
+        /**
+         * Shows the previous page that has a visible widget, if there is one.
+         */
+        public void previous() {
+                int previous = previousPage(page);
+                
+                if (previous != -1) {
+                        showPage(previous);
+                }
+        }
+        
+        /**
+         * Shows the next page that has a visible widget, if there is one.
+         */
+        public void next() {
+                int next = nextPage(page);
+                
+                if (next != -1) {
+                        showPage(next);
+                }
+        }
+        
+        private int previousPage(int from) {
+                for (int i = from - 1; i >= 0; i--) {
+                        if (isPageShown(i)) {
+                                return i;
+                        }
+                }
+                
+                return -1;
+        }
+        
+        private int nextPage(int from) {
+                for (int i = from + 1; i < pages.length; i++) {
+                        if (isPageShown(i)) {
+                                return i;
+                        }
+                }
+                
+                return -1;
+        }
+        
+        /**
+         * returns true if a widget of the page is visible with the current
+         * values.
+         */
+        private boolean isPageShown(int index) {
+                for (int node : pages[index]) {
+                        if (model.isVisible(node)) {
+                                return true;
+                        }
+                }
+                
+                return false;
+        }
+        
+        /**
+         * Replaces the widgets of the current page by the ones of another
+         * page, the widgets created in background are used when they are
+         * ready, the others are created now.
+         */
+        private void showPage(int index) {
+                flush();
+                
+                if (page != -1) {
+                        for (int node : pages[page]) {
+                                tree.setWidget(node, null);
+                        }
+                }
+                
+                FormWidget[] created = takePrepared(index);
+                List<FormWidget> shown = new ArrayList<FormWidget>(pages[index].length);
+                
+                page = index;
+                widgets = new FormWidget[pages[index].length];
+                
+                for (int i = 0; i < widgets.length; i++) {
+                        int node = pages[index][i];
+                        FormWidget widget = activity.parseWidget(model.getSpecs().get(node), created != null ? created[i] : null);
+                        
+                        if (widget != null) {
+                                widgets[i] = widget;
+                                tree.setWidget(node, widget);
+                                shown.add(widget);
+                        }
+                }
+                
+                // -- the widgets of the page left are recycled
+                activity.showWizardPage(shown);
+                
+                refresh();
+        }
+        
+        /**
+         * Shows the values of the model in the widgets of the page, and starts
+         * creating the next page.
+         */
+        private void refresh() {
+                for (int i = 0; i < widgets.length; i++) {
+                        if (widgets[i] != null) {
+                                bind(i);
+                        }
+                }
+                
+                updateVisibility();
+        }
+        
+        private void updateVisibility() {
+                for (int i = 0; i < widgets.length; i++) {
+                        if (widgets[i] != null) {
+                                widgets[i].setVisibility(model.isVisible(pages[page][i]) ? View.VISIBLE : View.GONE);
+                        }
+                }
+                
+                activity.updateWizardButtons();
+                prepare(nextPage(page));
+        }
+        
+        // -----------------------------------------------
+        //
+        // values
+        //
+        // -----------------------------------------------
+        
+        private void bind(final int offset) {
+                final FormWidget widget = widgets[offset];
+                int node = pages[page][offset];
+                String value = model.getRawValue(node);
+                WidgetSpec spec = model.getSpecs().get(node);
+                
+                if (widget instanceof FormCamera) {
+                        FormCamera formCamera = (FormCamera) widget;
+                        formCamera.setIdHash(activity.getIdHash());
+                        formCamera.setPhotos(value == null || value.length() == 0 ? new ArrayList<String>() : new ArrayList<String>(Arrays.asList(value.split("\\, "))));
+                        formCamera.updatePhotos();
+                }
+                else if (value != null) {
+                        widget.setValue(value);
+                }
+                
+                // -- the listeners are set after the value, so showing a page doesn't apply the rules
+                if (widget instanceof FormCheckBox) {
+                        ((FormCheckBox) widget)._checkbox.setOnCheckedChangeListener(spec.getToggles() == null ? null : new CompoundButton.OnCheckedChangeListener() {
+                                public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                                        onRuleChanged(widget, offset);
+                                }
+                        });
+                }
+                else if (widget instanceof FormSpinner) {
+                        ((FormSpinner) widget)._spinner.setOnItemSelectedListener(spec.getHideOnClick() == null ? null : new AdapterView.OnItemSelectedListener() {
+                                public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                                        onRuleChanged(widget, offset);
+                                }
+                                
+                                public void onNothingSelected(AdapterView<?> parent) {}
+                        });
+                }
+        }
+        
+        private void onRuleChanged(FormWidget widget, int offset) {
+                // -- a widget of a page that is no longer shown, or hidden and without a value
+                if (offset >= widgets.length || widgets[offset] != widget || !widget.isVisible()) {
+                        return;
+                }
+                
+                if (model.setValue(pages[page][offset], widget.getValue())) {
+                        updateVisibility();
+                }
+        }
+        
+        /**
+         * Writes the values of the widgets of the page to the model. The
+         * hidden widgets keep the value they had when they were shown.
+         */
+        public void flush() {
+                for (int i = 0; widgets != null && i < widgets.length; i++) {
+                        FormWidget widget = widgets[i];
+                        
+                        if (widget == null || !widget.isVisible()) {
+                                continue;
+                        }
+                        
+                        if (widget instanceof FormCamera) {
+                                String photos = Arrays.toString(((FormCamera) widget).getPhotos().toArray());
+                                model.setValue(pages[page][i], photos.substring(1, photos.length() - 1));
+                        }
+                        else {
+                                model.setValue(pages[page][i], widget.getValue());
+                        }
+                }
+        }
+        
+        /**
+         * Sets the value of a widget of any page, see
+         * {@link FormValueModel#setValue(String, String)}.
+         */
+        public void setValue(String id, String value) {
+                flush();
+                model.setValue(id, value);
+                refresh();
+        }
+        
+        /**
+         * Adds a photo to the value of a camera widget, the photos are
+         * separated by ", ".
+         */
+        public void addPhoto(String id, String photo) {
+                flush();
+                
+                int index = model.indexOf(id);
+                
+                if (index != -1) {
+                        String value = model.getRawValue(index);
+                        model.setValue(index, value == null || value.length() == 0 ? photo : value + ", " + photo);
+                }
+                
+                refresh();
+        }
+        
+        /**
+         * Takes the values of another model, see
+         * {@link FormValueModel#copyValues(FormValueModel)}.
+         */
+        public void copyValues(FormValueModel values) {
+                flush();
+                model.copyValues(values);
+                refresh();
+        }
+        
+        /**
+         * Clears the values of every page, see {@link FormValueModel#clear()}.
+         */
+        public void clear() {
+                model.clear();
+                refresh();
+        }
+        
+        /**
+         * returns the values of every page, see {@link FormValueModel#save()}.
+         */
+        public JSONObject save() {
+                flush();
+                return model.save();
+        }
+        
+        // -----------------------------------------------
+        //
+        // next page
+        //
+        // -----------------------------------------------
+        
+        /**
+         * Starts creating the thread safe widgets of a page on the builder
+         * thread, unless they are already, when the activity inflates in
+         * background. Only their factories are called there, the widgets are
+         * configured when the page is shown. Otherwise every widget is created
+         * on the main thread when its page is shown.
+         */
+        private void prepare(int index) {
+                if (index == -1 || index == preparedPage || !activity.isBackgroundInflationEnabled()) {
+                        return;
+                }
+                
+                takePrepared(-1);
+                
+                final int[] nodes = pages[index];
+                final WidgetFactory[] factories = new WidgetFactory[nodes.length];
+                final FormWidget[] target = new FormWidget[nodes.length];
+                
+                for (int i = 0; i < nodes.length; i++) {
+                        factories[i] = activity.getBackgroundFactory(model.getSpecs().get(nodes[i]));
+                }
+                
+                synchronized (lock) {
+                        preparedPage = index;
+                        prepared = target;
+                }
+                
+                WidgetBuilderThread.post(new Runnable() {
+                        public void run() {
+                                for (int i = 0; i < nodes.length; i++) {
+                                        if (factories[i] == null) {
+                                                continue;
+                                        }
+                                        
+                                        synchronized (lock) {
+                                                if (prepared != target) {
+                                                        return;
+                                                }
+                                        }
+                                        
+                                        WidgetSpec spec = model.getSpecs().get(nodes[i]);
+                                        FormWidget widget = factories[i].create(activity, spec.getName(), spec);
+                                        
+                                        synchronized (lock) {
+                                                if (prepared != target) {
+                                                        // -- the page was taken or dropped while the widget was created
+                                                        return;
+                                                }
+                                                
+                                                target[i] = widget;
+                                        }
+                                }
+                        }
+                });
+        }
+        
+        /**
+         * returns the widgets created in background for the page, null if the
+         * page was not prepared. The widgets of another page are dropped, they
+         * were never configured nor taken from the pool. Either way the
+         * builder thread stops preparing.
+         */
+        private FormWidget[] takePrepared(int index) {
+                FormWidget[] taken;
+                boolean same;
+                
+                synchronized (lock) {
+                        taken = prepared;
+                        same = preparedPage == index;
+                        prepared = null;
+                        preparedPage = -1;
+                }
+                
+                // -- the entries still null are created by the caller
+                return same ? taken : null;
+        }
+        
+        /**
+         * Stops creating the next page, the widgets already created are
+         * dropped. The page shown is recycled with the form.
+         */
+        public void cancel() {
+                takePrepared(-1);
+        }
+}
@@ -0,0 +1,228 @@
+package terracore.formgenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import terracore.formgenerator.schema.FormClassGenerator;
+import android.content.Context;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.CompoundButton;
+
+/**
+ * Base class of the forms written by {@link FormClassGenerator}.
+ * 
+ * A generated form creates its widgets with their constructors, without
+ * reading any json, and keeps the visibility rules and the sections of the
+ * schema as tables of widget indexes instead of maps of ids. Each rule is a row
+ * of the table of its widget: the value that selects the row, then the indexes
+ * of the widgets it applies to.
+ * 
+ * An instance holds the widgets of one form, see
+ * {@link FormActivity#generateForm(GeneratedForm)}.
+ */
+public abstract class GeneratedForm {
+        /**
+         * the value of a row that no value of the widget can select.
+         */
+        protected static final int NO_VALUE = Integer.MIN_VALUE;
+        
+        protected FormWidget[]     widgets;
+        private List<Integer>[]    hidden;
+        
+        /**
+         * returns the widgets of the form, in the order of the schema.
+         */
+        protected abstract FormWidget[] createWidgets(Context context);
+        
+        /**
+         * returns the "toggles" rows of each widget, null for the widgets
+         * that have none. The value of a row is the value of the checkbox.
+         */
+        protected abstract int[][][] getToggles();
+        
+        /**
+         * returns the "hideOnClick" rows of each widget, null for the widgets
+         * that have none. The value of a row is the position of the spinner.
+         */
+        protected abstract int[][][] getHideOnClick();
+        
+        /**
+         * returns the indexes of the children of each accordion, null for the
+         * widgets that have none, see {@link FormTree#fromChildren(List, int[][])}.
+         */
+        protected abstract int[][] getChildren();
+        
+        /**
+         * Creates the widgets of the form.
+         */
+        @SuppressWarnings("unchecked")
+        public List<FormWidget> inflate(Context context) {
+                widgets = createWidgets(context);
+                hidden = new List[widgets.length];
+                
+                return Arrays.asList(widgets);
+        }
+        
+        /**
+         * returns the widget at an index of the schema.
+         */
+        public FormWidget getWidget(int index) {
+                return widgets[index];
+        }
+        
+        /**
+         * Sets the properties of the schema entry of a widget, like
+         * {@link FormActivity#parseWidget(terracore.formgenerator.schema.WidgetSpec)}
+         * does.
+         */
+        protected static FormWidget init(FormWidget widget, String id, int priority, String defaultValue, String hint) {
+                widget.setId(id);
+                widget.setPriority(priority);
+                widget.setValue(defaultValue);
+                
+                if (hint != null) widget.setHint(hint);
+                
+                return widget;
+        }
+        
+        // -----------------------------------------------
+        //
+        // rules
+        //
+        // -----------------------------------------------
+        
+        /**
+         * Shows every widget, then applies the "hideOnClick" rules from the
+         * bottom to the top and the "toggles" rules, and listens to the widgets
+         * that have rules.
+         */
+        public void applyRules() {
+                int[][][] toggles = getToggles();
+                int[][][] hideOnClick = getHideOnClick();
+                
+                for (FormWidget widget : widgets) {
+                        widget.setVisibility(View.VISIBLE);
+                }
+                
+                for (int i = widgets.length - 1; i >= 0; i--) {
+                        if (hideOnClick[i] != null && widgets[i] instanceof FormSpinner) {
+                                final int index = i;
+                                FormSpinner formSpinner = (FormSpinner) widgets[i];
+                                
+                                hidden[i] = null;
+                                formSpinner._spinner.setSelection(0);
+                                hide(index, 0);
+                                
+                                formSpinner._spinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+                                        public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                                                hide(index, position);
+                                        }
+                                        
+                                        public void onNothingSelected(AdapterView<?> parent) {}
+                                });
+                        }
+                }
+                
+                for (int i = 0; i < widgets.length; i++) {
+                        if (toggles[i] != null && widgets[i] instanceof FormCheckBox) {
+                                final int index = i;
+                                
+                                toggle(index);
+                                
+                                ((FormCheckBox) widgets[i])._checkbox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+                                        public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                                                toggle(index);
+                                        }
+                                });
+                        }
+                }
+        }
+        
+        /**
+         * Shows the widgets hidden by the previous position of a spinner, then
+         * hides the visible widgets of the row of its new position.
+         */
+        private void hide(int index, int position) {
+                if (hidden[index] != null) {
+                        for (int target : hidden[index]) {
+                                widgets[target].setVisibility(View.VISIBLE);
+                        }
+                }
+                
+                hidden[index] = new ArrayList<Integer>();
+                int[] row = findRow(getHideOnClick()[index], position);
+                
+                for (int i = 1; row != null && i < row.length; i++) {
+                        FormWidget widget = widgets[row[i]];
+                        
+                        if (widget.isVisible()) {
+                                widget.setVisibility(View.GONE);
+                                hidden[index].add(row[i]);
+                        }
+                }
+        }
+        
+        /**
+         * Shows the widgets of the row of the checkbox value and hides the
+         * widgets of the other rows.
+         */
+        private void toggle(int index) {
+                int[][] rows = getToggles()[index];
+                int[] on = findRow(rows, parseValue(widgets[index].getValue()));
+                
+                for (int[] row : rows) {
+                        if (row == on) {
+                                continue;
+                        }
+                        
+                        for (int i = 1; i < row.length; i++) {
+                                if (!contains(on, row[i])) {
+                                        widgets[row[i]].setVisibility(View.GONE);
+                                }
+                        }
+                }
+                
+                for (int i = 1; on != null && i < on.length; i++) {
+                        widgets[on[i]].setVisibility(View.VISIBLE);
+                }
+        }
+        
+        private static int[] findRow(int[][] rows, int value) {
+                if (value == NO_VALUE) {
+                        return null;
+                }
+                
+                for (int[] row : rows) {
+                        if (row[0] == value) {
+                                return row;
+                        }
+                }
+                
+                return null;
+        }
+        
+        private static boolean contains(int[] row, int target) {
+                for (int i = 1; row != null && i < row.length; i++) {
+                        if (row[i] == target) {
+                                return true;
+                        }
+                }
+                
+                return false;
+        }
+        
+        /**
+         * returns the value as a row value, or {@link #NO_VALUE} if it is not
+         * an integer, the generator does the same with the keys of the schema.
+         */
+        public static int parseValue(String value) {
+                try {
+                        return value == null ? NO_VALUE : Integer.parseInt(value);
+                }
+                catch (NumberFormatException e) {
+                        return NO_VALUE;
+                }
+        }
+}
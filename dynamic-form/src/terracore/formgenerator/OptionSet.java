@@ -0,0 +1,168 @@
+package terracore.formgenerator;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The options of a spinner, sorted by key like the spinner shows them. Option
+ * sets are immutable and shared: {@link #of(Map)} returns the same instance for
+ * options with the same keys and labels, so spinners with the same options,
+ * like the 1 to 4 condition scales, share the sort and the labels shown by
+ * their adapters.
+ * 
+ * The keys are sorted once, by their collation keys in the default locale. The
+ * positions of the keys and of the labels are read from two hash indexes built
+ * with the set, so looking up a value doesn't depend on the number of options.
+ * A value is looked up as a key first and then as a label, so a saved key is
+ * never mistaken for the label of another option.
+ */
+public final class OptionSet {
+        private static final int                     MAX_SETS = 256;
+        
+        private static final Map<List<Object>, OptionSet> sets     = new LinkedHashMap<List<Object>, OptionSet>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, OptionSet> eldest) {
+                        return size() > MAX_SETS;
+                }
+        };
+        
+        private final Map<String, String>            options;
+        private final String[]                       keys;
+        private final List<String>                   labels;
+        private final Map<String, Integer>           keyPositions;
+        private final Map<String, Integer>           labelPositions;
+        
+        private OptionSet(Map<String, String> options, Locale locale) {
+                Collator collator = Collator.getInstance(locale);
+                CollationKey[] collationKeys = new CollationKey[options.size()];
+                String[] sortedLabels = new String[collationKeys.length];
+                int i = 0;
+                
+                for (String key : options.keySet()) {
+                        collationKeys[i++] = collator.getCollationKey(key);
+                }
+                
+                Arrays.sort(collationKeys);
+                
+                this.options = options;
+                this.keys = new String[collationKeys.length];
+                
+                for (i = 0; i < keys.length; i++) {
+                        keys[i] = collationKeys[i].getSourceString();
+                        sortedLabels[i] = options.get(keys[i]);
+                }
+                
+                this.labels = Collections.unmodifiableList(Arrays.asList(sortedLabels));
+                this.keyPositions = new HashMap<String, Integer>(keys.length * 2);
+                this.labelPositions = new HashMap<String, Integer>(keys.length * 2);
+                
+                // -- the first option of a repeated label wins, like ArrayAdapter.getPosition()
+                for (i = keys.length - 1; i >= 0; i--) {
+                        keyPositions.put(keys[i], i);
+                        labelPositions.put(sortedLabels[i], i);
+                }
+        }
+        
+        /**
+         * returns the shared option set with the keys and labels of the map,
+         * sorted in the default locale.
+         */
+        public static OptionSet of(Map<String, String> options) {
+                Locale locale = Locale.getDefault();
+                
+                synchronized (sets) {
+                        OptionSet set = sets.get(Arrays.<Object> asList(locale, options));
+                        
+                        if (set == null) {
+                                Map<String, String> copy = Collections.unmodifiableMap(new LinkedHashMap<String, String>(options));
+                                set = new OptionSet(copy, locale);
+                                sets.put(Arrays.<Object> asList(locale, copy), set);
+                        }
+                        
+                        return set;
+                }
+        }
+        
+        /**
+         * returns the options, a key to label map.
+         */
+        public Map<String, String> getOptions() {
+                return options;
+        }
+        
+        public int size() {
+                return keys.length;
+        }
+        
+        /**
+         * returns the key at a position, or "" if there is none.
+         */
+        public String getKey(int position) {
+                return position >= 0 && position < keys.length ? keys[position] : "";
+        }
+        
+        /**
+         * returns the labels in the order of the keys. The list is read only,
+         * it backs the adapters of the spinners.
+         */
+        public List<String> getLabels() {
+                return labels;
+        }
+        
+        /**
+         * returns the label at a position, or "" if there is none.
+         */
+        public String labelAt(int position) {
+                return position >= 0 && position < keys.length ? labels.get(position) : "";
+        }
+        
+        /**
+         * returns the position of a value, a key or a label of the options, or
+         * 0 if the value is none of them.
+         */
+        public int positionOf(String value) {
+                return Math.max(indexOf(value), 0);
+        }
+        
+        /**
+         * returns the position of a value, a key or a label of the options, or
+         * -1 if the value is none of them. The value is looked up as a key
+         * first, then as a label.
+         */
+        public int indexOf(String value) {
+                if (value == null) {
+                        return -1;
+                }
+                
+                Integer position = keyPositions.get(value);
+                
+                if (position == null) {
+                        position = labelPositions.get(value);
+                }
+                
+                return position != null ? position : -1;
+        }
+        
+        /**
+         * returns the key of a value, a key or a label of the options, like
+         * {@link #positionOf(String)}.
+         */
+        public String keyOf(String value) {
+                return getKey(positionOf(value));
+        }
+        
+        /**
+         * returns the label of a value, a key or a label of the options, like
+         * {@link #positionOf(String)}.
+         */
+        public String labelOf(String value) {
+                return labelAt(positionOf(value));
+        }
+}
@@ -0,0 +1,183 @@
+package terracore.formgenerator;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import terracore.formgenerator.schema.JsonPullReader;
+import terracore.formgenerator.schema.JsonPullReader.Token;
+import terracore.formgenerator.schema.WidgetSpec;
+import android.util.Log;
+
+/**
+ * A form built ahead of time for a schema and a record, see
+ * {@link FormActivity#prefetchForm(String, String)}: the schema is parsed, the
+ * values of the record are read and the widgets are created, so showing it
+ * with {@link FormActivity#generateForm(PreparedForm)} only lays it out.
+ * 
+ * The widgets belong to the activity that created them, another activity only
+ * reuses the schema and the values.
+ */
+public class PreparedForm {
+        private static final String       LOG_TAG = "PREPARED_FORM";
+        
+        private final String              filename;
+        private final String              data;
+        private final List<WidgetSpec>    specs;
+        private final FormTree            tree;
+        private final Map<String, String> values;
+        
+        private FormActivity              activity;
+        private List<FormWidget>          widgets;
+        
+        /**
+         * Reads the values of the record, can be called from any thread.
+         * 
+         * @param filename
+         *                - the json schema in the assets folder
+         * @param data
+         *                - the json object of the record, or null
+         * @param specs
+         *                - the widgets of the schema
+         */
+        public PreparedForm(String filename, String data, List<WidgetSpec> specs) {
+                this.filename = filename;
+                this.data = data;
+                this.specs = specs;
+                this.tree = FormTree.fromSpecs(specs);
+                this.values = data != null ? readValues(data, specs) : Collections.<String, String> emptyMap();
+        }
+        
+        /**
+         * returns the values of a json object, like
+         * {@link FormActivity#populate(java.io.Reader)} reads them: strings,
+         * numbers, booleans, the rows of the repeating groups of the specs and
+         * the photos of their cameras.
+         */
+        static Map<String, String> readValues(String data, List<WidgetSpec> specs) {
+                Map<String, String> values = new LinkedHashMap<String, String>();
+                Set<String> groups = new HashSet<String>();
+                Set<String> cameras = new HashSet<String>();
+                JsonPullReader reader = new JsonPullReader(new StringReader(data));
+                
+                for (WidgetSpec spec : specs) {
+                        if (FormActivity.SCHEMA_KEY_REPEATING_GROUP.equals(spec.getType())) {
+                                groups.add(spec.getId());
+                        }
+                        else if (FormActivity.SCHEMA_KEY_CAMERA.equals(spec.getType())) {
+                                cameras.add(spec.getId());
+                        }
+                }
+                
+                try {
+                        reader.beginObject();
+                        
+                        while (reader.hasNext()) {
+                                String property = reader.nextName();
+                                Token token = reader.peek();
+                                
+                                if (token == Token.STRING || token == Token.NUMBER || token == Token.BOOLEAN) {
+                                        values.put(property, reader.nextString());
+                                }
+                                else if (token == Token.BEGIN_ARRAY && groups.contains(property)) {
+                                        values.put(property, FormRepeatingGroup.readRows(reader));
+                                }
+                                else if (token == Token.BEGIN_ARRAY && cameras.contains(property)) {
+                                        values.put(property, readPhotos(reader));
+                                }
+                                else {
+                                        reader.skipValue();
+                                }
+                        }
+                        
+                        reader.endObject();
+                }
+                catch (IOException e) {
+                        Log.e(LOG_TAG, e.getMessage());
+                }
+                
+                return values;
+        }
+        
+        /**
+         * returns an array of photos read as a stream, separated by ", " like
+         * the forms save them. Only the values that are strings are kept.
+         */
+        static String readPhotos(JsonPullReader reader) throws IOException {
+                StringBuilder photos = new StringBuilder();
+                
+                reader.beginArray();
+                
+                while (reader.hasNext()) {
+                        if (reader.peek() != Token.STRING) {
+                                reader.skipValue();
+                                continue;
+                        }
+                        
+                        photos.append(photos.length() == 0 ? "" : ", ").append(reader.nextString());
+                }
+                
+                reader.endArray();
+                
+                return photos.toString();
+        }
+        
+        /**
+         * returns true if the form was prepared for the schema and the
+         * record.
+         */
+        public boolean matches(String filename, String data) {
+                return equals(this.filename, filename) && equals(this.data, data);
+        }
+        
+        private static boolean equals(String value1, String value2) {
+                return value1 == null ? value2 == null : value1.equals(value2);
+        }
+        
+        public String getFilename() {
+                return filename;
+        }
+        
+        public List<WidgetSpec> getSpecs() {
+                return specs;
+        }
+        
+        public FormTree getTree() {
+                return tree;
+        }
+        
+        /**
+         * returns the values of the record, by id.
+         */
+        public Map<String, String> getValues() {
+                return values;
+        }
+        
+        /**
+         * returns the widgets created for the activity, in the order of the
+         * schema, or null if they are not created or belong to another
+         * activity.
+         */
+        public List<FormWidget> getWidgets(FormActivity activity) {
+                return this.activity == activity ? widgets : null;
+        }
+        
+        void setWidgets(FormActivity activity, List<FormWidget> widgets) {
+                this.activity = activity;
+                this.widgets = widgets;
+        }
+        
+        /**
+         * Forgets the widgets, once they are shown or given back to the
+         * {@link WidgetPool}.
+         */
+        void releaseWidgets() {
+                activity = null;
+                widgets = null;
+        }
+}
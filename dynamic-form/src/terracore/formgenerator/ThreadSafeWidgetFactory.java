@@ -0,0 +1,17 @@
+package terracore.formgenerator;
+
+import terracore.formgenerator.schema.WidgetSpec;
+
+/**
+ * A {@link WidgetFactory} whose widgets can be created on a thread other than
+ * the main one, see {@link FormActivity#isBackgroundInflationEnabled()}.
+ * 
+ * Only {@link #create(android.content.Context, String, WidgetSpec)} is called
+ * there, the widget is configured and shown on the main thread. The widget
+ * must only create views and read resources while it is created: a view with a
+ * popup, like a spinner, or one that creates a handler or starts a task is not
+ * thread safe, as it would be tied to the builder thread.
+ */
+public interface ThreadSafeWidgetFactory extends WidgetFactory {
+        
+}
@@ -0,0 +1,36 @@
+package terracore.formgenerator;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+/**
+ * The thread the widgets are created on when
+ * {@link FormActivity#isBackgroundInflationEnabled()}, shared by every form of
+ * the process and started when first used. Only the factories that are a
+ * {@link ThreadSafeWidgetFactory} are called there. It has a looper, so a view
+ * that creates a handler doesn't throw, but the handler would run on this
+ * thread, which is why such views are not thread safe.
+ * 
+ * The widgets created there are not attached to any window, they are handed to
+ * the main thread which configures and attaches them, see {@link FormInflater}.
+ */
+final class WidgetBuilderThread {
+        private static HandlerThread thread;
+        private static Handler       handler;
+        
+        private WidgetBuilderThread() {}
+        
+        /**
+         * Runs the task on the builder thread, after the tasks already posted.
+         */
+        public static synchronized void post(Runnable task) {
+                if (handler == null) {
+                        thread = new HandlerThread("FormWidgetBuilder", Process.THREAD_PRIORITY_BACKGROUND);
+                        thread.start();
+                        handler = new Handler(thread.getLooper());
+                }
+                
+                handler.post(task);
+        }
+}
@@ -0,0 +1,33 @@
+package terracore.formgenerator;
+
+import terracore.formgenerator.schema.WidgetSpec;
+import android.content.Context;
+
+/**
+ * Creates the widgets of one type of the schema. Factories are registered by
+ * type in a {@link WidgetFactoryRegistry}, host apps can register their own
+ * types or replace the built-in ones. The widgets are created on the main
+ * thread, unless the factory is a {@link ThreadSafeWidgetFactory}.
+ */
+public interface WidgetFactory {
+        
+        /**
+         * @param context
+         * @param name
+         *                - the label of the widget
+         * @param spec
+         *                - the schema entry of the widget
+         * @return the widget, or null if the spec can't be built.
+         */
+        public FormWidget create(Context context, String name, WidgetSpec spec);
+        
+        /**
+         * returns true if the widget can be created only when it is first
+         * shown, like the children of a collapsed accordion, see
+         * {@link FormActivity#isAccordionDeferralEnabled()}. A widget that
+         * must exist as soon as the form is created, like one driving the
+         * visibility of others, is not lazy.
+         */
+        public boolean isLazy(WidgetSpec spec);
+        
+}
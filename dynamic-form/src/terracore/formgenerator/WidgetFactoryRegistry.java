@@ -0,0 +1,255 @@
+package terracore.formgenerator;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import terracore.formgenerator.accordion.FormAccordion;
+import terracore.formgenerator.camera.FormCamera;
+import terracore.formgenerator.schema.WidgetSpec;
+import android.content.Context;
+
+/**
+ * The {@link WidgetFactory} of each type of the schema.
+ * 
+ * Types are interned by the schema readers, so the lookup of a widget is a
+ * single hash map access whose key comparison is usually an identity check.
+ * The map is copied when a factory is registered and never changed once
+ * published, so lookups take no lock, registering is the rare case.
+ * 
+ * The default registry holds the built-in types, host apps may register their
+ * own types in it before creating forms, or register them in the registry of a
+ * single FormActivity, see {@link FormActivity#getWidgetFactories()}.
+ */
+public class WidgetFactoryRegistry {
+        private static final WidgetFactoryRegistry  defaultRegistry = createDefault();
+        
+        private volatile Map<String, WidgetFactory> factories;
+        
+        public WidgetFactoryRegistry() {
+                factories = new HashMap<String, WidgetFactory>();
+        }
+        
+        /**
+         * Creates a registry with the factories of the given one.
+         */
+        public WidgetFactoryRegistry(WidgetFactoryRegistry registry) {
+                factories = registry.factories;
+        }
+        
+        /**
+         * returns the process wide registry, holding the built-in types.
+         */
+        public static WidgetFactoryRegistry getDefault() {
+                return defaultRegistry;
+        }
+        
+        /**
+         * Registers the factory of a type, replacing the previous one if any.
+         */
+        public synchronized void register(String type, WidgetFactory factory) {
+                Map<String, WidgetFactory> copy = new HashMap<String, WidgetFactory>(factories);
+                copy.put(type.intern(), factory);
+                factories = copy;
+        }
+        
+        public synchronized void unregister(String type) {
+                Map<String, WidgetFactory> copy = new HashMap<String, WidgetFactory>(factories);
+                copy.remove(type);
+                factories = copy;
+        }
+        
+        /**
+         * returns the factory of the type, or null if the type is unknown.
+         */
+        public WidgetFactory get(String type) {
+                if (type == null) {
+                        return null;
+                }
+                
+                return factories.get(type);
+        }
+        
+        /**
+         * returns the registered types, a read only snapshot.
+         */
+        public Set<String> getTypes() {
+                return Collections.unmodifiableSet(factories.keySet());
+        }
+        
+        /**
+         * returns the widget created by the factory of the spec type, or null
+         * if the type is unknown.
+         */
+        public FormWidget create(Context context, String name, WidgetSpec spec) {
+                WidgetFactory factory = get(spec.getType());
+                
+                if (factory == null) {
+                        return null;
+                }
+                
+                return factory.create(context, name, spec);
+        }
+        
+        /**
+         * returns true if the widget of the spec can be created only when it
+         * is first shown. Unknown types are never lazy.
+         */
+        public boolean isLazy(WidgetSpec spec) {
+                WidgetFactory factory = get(spec.getType());
+                return factory != null && factory.isLazy(spec);
+        }
+        
+        /**
+         * returns true if the widget of the spec can be created off the main
+         * thread, see {@link ThreadSafeWidgetFactory}. Unknown types are never
+         * thread safe.
+         */
+        public boolean isThreadSafe(WidgetSpec spec) {
+                return get(spec.getType()) instanceof ThreadSafeWidgetFactory;
+        }
+        
+        // -----------------------------------------------
+        //
+        // built-in types
+        //
+        // -----------------------------------------------
+        
+        private static WidgetFactoryRegistry createDefault() {
+                WidgetFactoryRegistry registry = new WidgetFactoryRegistry();
+                
+                registry.register(FormActivity.SCHEMA_KEY_STRING_TEXTVIEW, new ThreadSafeWidgetFactory() {
+                        @Override
+                        public FormWidget create(Context context, String name, WidgetSpec spec) {
+                                return new FormEditText(context, name);
+                        }
+                        
+                        @Override
+                        public boolean isLazy(WidgetSpec spec) {
+                                return true;
+                        }
+                });
+                
+                registry.register(FormActivity.SCHEMA_KEY_INTEGER_TEXTVIEW, new ThreadSafeWidgetFactory() {
+                        @Override
+                        public FormWidget create(Context context, String name, WidgetSpec spec) {
+                                return new FormNumericEditText(context, name);
+                        }
+                        
+                        @Override
+                        public boolean isLazy(WidgetSpec spec) {
+                                return true;
+                        }
+                });
+                
+                registry.register(FormActivity.SCHEMA_KEY_LABEL, new ThreadSafeWidgetFactory() {
+                        @Override
+                        public FormWidget create(Context context, String name, WidgetSpec spec) {
+                                return new FormLabelTitle(context, name, spec.getOptions());
+                        }
+                        
+                        @Override
+                        public boolean isLazy(WidgetSpec spec) {
+                                return true;
+                        }
+                });
+                
+                // a checkbox with toggles sets the visibility of other widgets as soon as the form is created
+                registry.register(FormActivity.SCHEMA_KEY_CHECKBOX, new ThreadSafeWidgetFactory() {
+                        @Override
+                        public FormWidget create(Context context, String name, WidgetSpec spec) {
+                                return new FormCheckBox(context, name);
+                        }
+                        
+                        @Override
+                        public boolean isLazy(WidgetSpec spec) {
+                                return spec.getToggles() == null;
+                        }
+                });
+                
+                // same for a spinner with hideOnClick, its popup is tied to the thread that creates it
+                registry.register(FormActivity.SCHEMA_KEY_SPINNER, new WidgetFactory() {
+                        @Override
+                        public FormWidget create(Context context, String name, WidgetSpec spec) {
+                                if (!spec.hasOptions()) {
+                                        return null;
+                                }
+                                
+                                return new FormSpinner(context, name, spec.getOptions());
+                        }
+                        
+                        @Override
+                        public boolean isLazy(WidgetSpec spec) {
+                                return spec.getHideOnClick() == null;
+                        }
+                });
+                
+                // starts the download of its database when created, from the main thread
+                registry.register(FormActivity.SCHEMA_KEY_AUTOCOMPLETE_TEXTVIEW, new WidgetFactory() {
+                        @Override
+                        public FormWidget create(Context context, String name, WidgetSpec spec) {
+                                return new FormAutoCompleteTextBox(context, name, spec.getOptionLists());
+                        }
+                        
+                        @Override
+                        public boolean isLazy(WidgetSpec spec) {
+                                return false;
+                        }
+                });
+                
+                // holds the layout of its children
+                registry.register(FormActivity.SCHEMA_KEY_ACCORDION, new ThreadSafeWidgetFactory() {
+                        @Override
+                        public FormWidget create(Context context, String name, WidgetSpec spec) {
+                                return new FormAccordion(context, name, spec.getChildren());
+                        }
+                        
+                        @Override
+                        public boolean isLazy(WidgetSpec spec) {
+                                return false;
+                        }
+                });
+                
+                // receives the result of the CameraActivity through FormActivity.onActivityResult()
+                registry.register(FormActivity.SCHEMA_KEY_CAMERA, new ThreadSafeWidgetFactory() {
+                        @Override
+                        public FormWidget create(Context context, String name, WidgetSpec spec) {
+                                return new FormCamera(context, name);
+                        }
+                        
+                        @Override
+                        public boolean isLazy(WidgetSpec spec) {
+                                return false;
+                        }
+                });
+                
+                // reads its template through the fragment resolver of its activity
+                registry.register(FormActivity.SCHEMA_KEY_REPEATING_GROUP, new WidgetFactory() {
+                        @Override
+                        public FormWidget create(Context context, String name, WidgetSpec spec) {
+                                return new FormRepeatingGroup(context, name, spec.getOptions().get(FormActivity.SCHEMA_KEY_TEMPLATE));
+                        }
+                        
+                        @Override
+                        public boolean isLazy(WidgetSpec spec) {
+                                return true;
+                        }
+                });
+                
+                // reads its rows with async tasks, started from the main thread
+                registry.register(FormActivity.SCHEMA_KEY_DATABASE_GRID, new WidgetFactory() {
+                        @Override
+                        public FormWidget create(Context context, String name, WidgetSpec spec) {
+                                return new FormDatabaseGrid(context, name, spec.getOptionLists());
+                        }
+                        
+                        @Override
+                        public boolean isLazy(WidgetSpec spec) {
+                                return true;
+                        }
+                });
+                
+                return registry;
+        }
+}
@@ -0,0 +1,195 @@
+package terracore.formgenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import terracore.formgenerator.schema.WidgetSpec;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.res.Resources;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Process wide pool of widgets, so the forms opened one after the other reuse
+ * the views of the previous ones instead of creating them again. Widgets are
+ * pooled by type and options, a pooled spinner keeps the adapter of its
+ * options, and are given back by {@link FormActivity#onDestroy()}.
+ * 
+ * A view keeps the context it was created with, so each pooled widget is
+ * created with its own context of the application, which forwards the
+ * windows, the inflaters and the theme to the form the widget is obtained
+ * for, until the widget is recycled. The form calls
+ * {@link FormWidget#recycle()} before giving a widget back, which drops the
+ * listeners and handlers tied to it. The views are styled when they are
+ * created, so widgets are only reused by forms of the same activity class,
+ * which share a theme. Only the widgets that need nothing else from their
+ * activity are pooled: text fields, checkboxes, spinners and labels.
+ */
+public class WidgetPool {
+        private static final int                          MAX_PER_KEY = 64;
+        
+        private static WidgetPool                         instance;
+        
+        private final Map<List<Object>, List<FormWidget>> widgets     = new HashMap<List<Object>, List<FormWidget>>();
+        private final Map<FormWidget, List<Object>>       keys        = new WeakHashMap<FormWidget, List<Object>>();
+        private final Map<FormWidget, FormContext>        contexts    = new WeakHashMap<FormWidget, FormContext>();
+        
+        /**
+         * returns the pool of the process.
+         */
+        public static synchronized WidgetPool getInstance() {
+                if (instance == null) {
+                        instance = new WidgetPool();
+                }
+                
+                return instance;
+        }
+        
+        /**
+         * returns true if the widgets of the type can be pooled.
+         */
+        public static boolean isPooled(String type) {
+                return FormActivity.SCHEMA_KEY_STRING_TEXTVIEW.equals(type) || FormActivity.SCHEMA_KEY_INTEGER_TEXTVIEW.equals(type) || FormActivity.SCHEMA_KEY_CHECKBOX.equals(type) || FormActivity.SCHEMA_KEY_SPINNER.equals(type) || FormActivity.SCHEMA_KEY_LABEL.equals(type);
+        }
+        
+        /**
+         * widgets with the same key can show each other's spec, they were
+         * created for the same activity class, so with the same theme.
+         */
+        private static List<Object> keyOf(Context activity, WidgetSpec spec) {
+                if (FormActivity.SCHEMA_KEY_SPINNER.equals(spec.getType()) || FormActivity.SCHEMA_KEY_LABEL.equals(spec.getType())) {
+                        return Arrays.<Object> asList(activity.getClass(), spec.getType(), spec.getOptions());
+                }
+                
+                return Arrays.<Object> asList(activity.getClass(), spec.getType());
+        }
+        
+        /**
+         * returns a pooled widget bound to the spec, or a new one created by
+         * the factory if the pool has none.
+         * 
+         * @param activity
+         *                - the form that shows the widget
+         * @param factory
+         *                - the factory of the spec type
+         * @param name
+         * @param spec
+         */
+        public synchronized FormWidget obtain(Context activity, WidgetFactory factory, String name, WidgetSpec spec) {
+                List<Object> key = keyOf(activity, spec);
+                List<FormWidget> pooled = widgets.get(key);
+                
+                while (pooled != null && !pooled.isEmpty()) {
+                        FormWidget widget = pooled.remove(pooled.size() - 1);
+                        FormContext context = contexts.get(widget);
+                        
+                        if (context != null && widget.bind(spec)) {
+                                context.activity = activity;
+                                widget.setVisibility(View.VISIBLE);
+                                widget.setHint(spec.getHint());
+                                keys.put(widget, key);
+                                
+                                return widget;
+                        }
+                }
+                
+                FormContext context = new FormContext(activity.getApplicationContext());
+                context.activity = activity;
+                
+                FormWidget widget = factory.create(context, name, spec);
+                
+                if (widget != null) {
+                        keys.put(widget, key);
+                        contexts.put(widget, context);
+                }
+                
+                return widget;
+        }
+        
+        /**
+         * Gives back a widget obtained from the pool, its view is removed
+         * from its parent and no longer uses the activity it was obtained
+         * for. Other widgets are ignored.
+         */
+        public synchronized void recycle(FormWidget widget) {
+                List<Object> key = keys.remove(widget);
+                
+                if (key == null) {
+                        return;
+                }
+                
+                View view = widget.getView();
+                
+                if (view.getParent() != null) {
+                        ((ViewGroup) view.getParent()).removeView(view);
+                }
+                
+                FormContext context = contexts.get(widget);
+                
+                if (context != null) {
+                        context.activity = null;
+                }
+                
+                List<FormWidget> pooled = widgets.get(key);
+                
+                if (pooled == null) {
+                        pooled = new ArrayList<FormWidget>();
+                        widgets.put(key, pooled);
+                }
+                
+                if (pooled.size() < MAX_PER_KEY) {
+                        pooled.add(widget);
+                }
+        }
+        
+        /**
+         * Drops every pooled widget, for example when memory is low.
+         */
+        public synchronized void clear() {
+                widgets.clear();
+        }
+        
+        /**
+         * The context of a pooled widget, the application context for the
+         * resources and the activity the widget was obtained for, for
+         * everything tied to a window.
+         */
+        private static class FormContext extends ContextWrapper {
+                private volatile Context activity;
+                
+                public FormContext(Context application) {
+                        super(application);
+                }
+                
+                @Override
+                public Object getSystemService(String name) {
+                        Context current = activity;
+                        return current != null ? current.getSystemService(name) : super.getSystemService(name);
+                }
+                
+                @Override
+                public Resources.Theme getTheme() {
+                        Context current = activity;
+                        return current != null ? current.getTheme() : super.getTheme();
+                }
+                
+                @Override
+                public void startActivity(Intent intent) {
+                        Context current = activity;
+                        
+                        if (current != null) {
+                                current.startActivity(intent);
+                        }
+                        else {
+                                intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                                super.startActivity(intent);
+                        }
+                }
+        }
+}
@@ -16,6 +16,7 @@ public class FormAccordion extends FormWidget {
         private List<String> childrenIds;
         private LinearLayout childrenLayout;
         private String       name;
+        private Runnable     expandHandler;
         
         public FormAccordion(
                              Context context,
@@ -63,6 +64,13 @@ public class FormAccordion extends FormWidget {
                         Log.e("", "gone");
                 }
                 else {
+                        // -- the children are created the first time they are shown
+                        if (expandHandler != null) {
+                                Runnable handler = expandHandler;
+                                expandHandler = null;
+                                handler.run();
+                        }
+                        
                         _label.setCompoundDrawablesWithIntrinsicBounds(R.drawable.down, 0, 0, 0);
                         childrenLayout.setVisibility(View.VISIBLE);
                         Log.e("", "Visible");
@@ -70,6 +78,38 @@ public class FormAccordion extends FormWidget {
                 }
         }
         
+        /**
+         * returns true if the children of the accordion are shown.
+         */
+        public boolean isExpanded() {
+                return childrenLayout.getVisibility() == View.VISIBLE;
+        }
+        
+        /**
+         * Collapses the accordion until it is expanded by the user, the
+         * handler is run then, before the children are shown. Used when the
+         * children are not created yet.
+         * 
+         * @param handler
+         *                - creates the children and adds them with
+         *                {@link #addChildWidget(LinearLayout)}
+         */
+        public void deferChildren(Runnable handler) {
+                expandHandler = handler;
+                
+                if (isExpanded()) {
+                        collapse();
+                }
+        }
+        
+        /**
+         * returns true if the children of the accordion are created only
+         * when it is expanded, see {@link #deferChildren(Runnable)}.
+         */
+        public boolean hasDeferredChildren() {
+                return expandHandler != null;
+        }
+        
         public List<String> getChildrenIds() {
                 return childrenIds;
         }
@@ -81,4 +121,11 @@ public class FormAccordion extends FormWidget {
         public void addChildWidget(LinearLayout layout) {
                 childrenLayout.addView(layout);
         }
+        
+        /**
+         * Removes the views of the children, before they are added again.
+         */
+        public void removeChildWidgets() {
+                childrenLayout.removeAllViews();
+        }
 }
\ No newline at end of file
@@ -107,9 +107,8 @@ public class AsyncAutoCompleteQuery extends AsyncTask<String, Integer, Cursor> {
         @Override
         protected void onPostExecute(Cursor cursor) {
                 
-                Log.i(LOG_TAG, "Quantidade de registros: " + cursor.getCount());
-                
                 if (cursor != null) {
+                        Log.i(LOG_TAG, "Quantidade de registros: " + cursor.getCount());
                         caller.onCompletion(cursor);
                         //myDbHelper.close();
                 }
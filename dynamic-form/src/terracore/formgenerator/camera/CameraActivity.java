@@ -15,29 +15,39 @@ import android.provider.MediaStore;
 import android.text.TextUtils;
 import android.util.Log;
 
+/**
+ * Takes a photo for a {@link FormCamera}. The activity is started for a result
+ * with {@link #REQUEST_PHOTO}, the result holds the id of the widget and the
+ * path of the photo, see {@link #EXTRA_WIDGET_ID} and {@link #EXTRA_PHOTO}.
+ */
 public class CameraActivity extends Activity {
-        public static final int  MEDIA_TYPE_IMAGE                    = 1;
-        public static final int  MEDIA_TYPE_VIDEO                    = 2;
+        public static final int     MEDIA_TYPE_IMAGE                    = 1;
+        public static final int     MEDIA_TYPE_VIDEO                    = 2;
         
-        private static final int CAPTURE_IMAGE_ACTIVITY_REQUEST_CODE = 100;
-        private Uri              fileUri;
+        public static final int     REQUEST_PHOTO                       = 101;
+        public static final String  EXTRA_ID_HASH                       = "idHash";
+        public static final String  EXTRA_WIDGET_ID                     = "widgetId";
+        public static final String  EXTRA_PHOTO                         = "photo";
+        
+        private static final int    CAPTURE_IMAGE_ACTIVITY_REQUEST_CODE = 100;
+        private Uri                 fileUri;
         
         /*
          * This is the id that will be used on the application to give the name
          * of the file.
          */
-        private static String    idHash;
+        private String              idHash;
         
         @Override
         public void onCreate(Bundle savedInstanceState) {
                 super.onCreate(savedInstanceState);
                 
-                idHash = getIntent().getExtras().getString("idHash");
+                idHash = getIntent().getStringExtra(EXTRA_ID_HASH);
                 
                 // create Intent to take a picture and return control to the calling application
                 Intent intent = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
                 
-                fileUri = getOutputMediaFileUri(MEDIA_TYPE_IMAGE); // create a file to save the image
+                fileUri = getOutputMediaFileUri(MEDIA_TYPE_IMAGE, idHash); // create a file to save the image
                 intent.putExtra(MediaStore.EXTRA_OUTPUT, fileUri); // set the image file name   
                 
                 // start the image capture Intent
@@ -49,9 +59,14 @@ public class CameraActivity extends Activity {
                                         int requestCode,
                                         int resultCode,
                                         Intent data) {
-                FormCamera widget = FormCamera.getInstance();
-                if (widget != null) {
-                        widget.addPhoto(fileUri.getPath());
+                if (resultCode == RESULT_OK) {
+                        Intent result = new Intent();
+                        result.putExtra(EXTRA_WIDGET_ID, getIntent().getStringExtra(EXTRA_WIDGET_ID));
+                        result.putExtra(EXTRA_PHOTO, fileUri.getPath());
+                        setResult(RESULT_OK, result);
+                }
+                else {
+                        setResult(RESULT_CANCELED);
                 }
                 
                 super.onActivityResult(requestCode, resultCode, data);
@@ -59,12 +74,12 @@ public class CameraActivity extends Activity {
         }
         
         /** Create a file Uri for saving an image or video */
-        private static Uri getOutputMediaFileUri(int type) {
-                return Uri.fromFile(getOutputMediaFile(type));
+        private static Uri getOutputMediaFileUri(int type, String idHash) {
+                return Uri.fromFile(getOutputMediaFile(type, idHash));
         }
         
         /** Create a File for saving an image or video */
-        private static File getOutputMediaFile(int type) {
+        private static File getOutputMediaFile(int type, String idHash) {
                 // To be safe, you should check that the SDCard is mounted
                 // using Environment.getExternalStorageState() before doing this.
                 
@@ -8,6 +8,7 @@ import java.util.List;
 import makemachine.android.examples.forms.R;
 import makemachine.android.examples.forms.R.string;
 import terracore.formgenerator.FormWidget;
+import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
@@ -29,7 +30,6 @@ public class FormCamera extends FormWidget implements Serializable {
         private Button               cameraButton;
         protected int                _priority;
         
-        private static FormCamera    instance;
         private Context              context;
         
         List<String>                 photos = new ArrayList<String>();
@@ -42,7 +42,6 @@ public class FormCamera extends FormWidget implements Serializable {
                 super(context, "");
                 
                 this.context = context;
-                instance = this;
                 
                 cameraButton = new Button(context);
                 cameraButton.setText(propertyName);
@@ -77,8 +76,16 @@ public class FormCamera extends FormWidget implements Serializable {
                         @Override
                         public void onClick(View v) {
                                 Intent intent = new Intent(context, CameraActivity.class);
-                                intent.putExtra("idHash", idHash);
-                                context.startActivity(intent);
+                                intent.putExtra(CameraActivity.EXTRA_ID_HASH, idHash);
+                                intent.putExtra(CameraActivity.EXTRA_WIDGET_ID, getId());
+                                
+                                // -- the photo is given back to the form of this widget, see FormActivity.onActivityResult()
+                                if (context instanceof Activity) {
+                                        ((Activity) context).startActivityForResult(intent, CameraActivity.REQUEST_PHOTO);
+                                }
+                                else {
+                                        Log.e("FORM_CAMERA", "The photo can't be returned to " + context);
+                                }
                         }
                 });
         }
@@ -202,10 +209,6 @@ public class FormCamera extends FormWidget implements Serializable {
                 }
         }
         
-        public static FormCamera getInstance() {
-                return instance;
-        }
-        
         public static Bitmap decodeSampledBitmapFromResource(
                                                              String path,
                                                              int reqWidth,
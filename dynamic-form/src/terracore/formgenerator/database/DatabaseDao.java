@@ -1,55 +1,80 @@
 package terracore.formgenerator.database;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
 
+/**
+ * Reads the databases of the app. Each database is opened once, by name, and
+ * kept open; the queries are serialized, so the widgets reading them in
+ * background don't race on opening them.
+ */
 public class DatabaseDao {
-        private final static String  LOG_TAG  = "DATABASE_DAO";
-        public static SQLiteDatabase database = null;
+        private final static String                      LOG_TAG   = "DATABASE_DAO";
+        private final static Map<String, SQLiteDatabase> databases = new HashMap<String, SQLiteDatabase>();
         
-        public static SQLiteDatabase getDatabase(
-                                                 Context context,
-                                                 String databaseName) {
-                DataBaseHelper myDbHelper = null;
-                
+        /**
+         * @deprecated the last database opened, which is not the one of every
+         *             widget, see {@link #getDatabase(Context, String)}.
+         */
+        @Deprecated
+        public static SQLiteDatabase                     database  = null;
+        
+        /**
+         * returns the database with the name, opened the first time it is
+         * asked for, or null if it can't be opened.
+         */
+        public static synchronized SQLiteDatabase getDatabase(
+                                                              Context context,
+                                                              String databaseName) {
                 if (databaseName == null) {
-                        myDbHelper = null;
+                        Log.e(LOG_TAG, "db is null?  No useful work will be done by this task.");
+                        return null;
                 }
-                else {
-                        if (myDbHelper == null) myDbHelper = new DataBaseHelper(context, databaseName);
+                
+                SQLiteDatabase opened = databases.get(databaseName);
+                
+                if (opened == null || !opened.isOpen()) {
+                        DataBaseHelper myDbHelper = new DataBaseHelper(context, databaseName);
+                        opened = myDbHelper.openDataBase() ? myDbHelper.getReadableDatabase() : null;
                         
-                        if (myDbHelper.openDataBase()) {
-                                database = myDbHelper.getReadableDatabase();
-                        }
-                        else {
-                                database = null;
+                        if (opened == null) {
+                                Log.e(LOG_TAG, "db is null?  No useful work will be done by this task.");
+                                return null;
                         }
+                        
+                        databases.put(databaseName, opened);
                 }
                 
-                if (database == null) {
-                        Log.e(LOG_TAG, "db is null?  No useful work will be done by this task.");
-                }
-                
-                return database;
+                database = opened;
+                return opened;
         }
         
-        public static Cursor generateCursor(
-                                            Context context,
-                                            String databaseName,
-                                            
-                                            boolean distinct,
-                                            String tableName,
-                                            String[] selectColumns,
-                                            String selection,
-                                            String[] selectionArgs,
-                                            String groupBy,
-                                            String having,
-                                            String orderBy,
-                                            String limit) {
+        /**
+         * returns a cursor of the query, or null if the database can't be
+         * opened. The caller closes the cursor.
+         */
+        public static synchronized Cursor generateCursor(
+                                                         Context context,
+                                                         String databaseName,
+                                                         
+                                                         boolean distinct,
+                                                         String tableName,
+                                                         String[] selectColumns,
+                                                         String selection,
+                                                         String[] selectionArgs,
+                                                         String groupBy,
+                                                         String having,
+                                                         String orderBy,
+                                                         String limit) {
+                SQLiteDatabase database = getDatabase(context, databaseName);
+                
                 if (database == null) {
-                        getDatabase(context, databaseName);
+                        return null;
                 }
                 
                 Cursor cursor = database.query(distinct, /* distinct? */
@@ -64,22 +89,119 @@ public class DatabaseDao {
                 return cursor;
         }
         
+        /**
+         * returns the number of rows of the table, 0 if the database can't be
+         * opened.
+         */
+        public static synchronized int count(
+                                             Context context,
+                                             String databaseName,
+                                             String tableName) {
+                Cursor cursor = generateCursor(context, databaseName, false, tableName, new String[] { "COUNT(*)" }, null, null, null, null, null, null);
+                
+                if (cursor == null) {
+                        return 0;
+                }
+                
+                try {
+                        return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+                }
+                finally {
+                        cursor.close();
+                }
+        }
+        
+        /**
+         * returns the rows of the table that come after a rowid, in the order
+         * of their rowids, at most size of them, with the values of the
+         * columns as strings. The rows are found through the rowid, so reading
+         * a page doesn't depend on how far in the table it is; to read the
+         * next page, pass the rowid of the last row, select "rowid" as one of
+         * the columns to know it. The cursor is closed before returning, so
+         * only the page is kept in memory. Null if the database can't be
+         * opened.
+         */
+        public static synchronized String[][] readAfter(
+                                                        Context context,
+                                                        String databaseName,
+                                                        String tableName,
+                                                        String[] columns,
+                                                        long rowid,
+                                                        int size) {
+                Cursor cursor = generateCursor(context, databaseName, false, tableName, columns, "rowid > ?", new String[] { String.valueOf(rowid) }, null, null, "rowid", String.valueOf(size));
+                return readRows(cursor, columns.length, false);
+        }
+        
+        /**
+         * returns the rows of the table that come before a rowid, the page
+         * before the one starting at that rowid, like
+         * {@link #readAfter(Context, String, String, String[], long, int)}.
+         * The rows are in the order of their rowids.
+         */
+        public static synchronized String[][] readBefore(
+                                                         Context context,
+                                                         String databaseName,
+                                                         String tableName,
+                                                         String[] columns,
+                                                         long rowid,
+                                                         int size) {
+                Cursor cursor = generateCursor(context, databaseName, false, tableName, columns, "rowid < ?", new String[] { String.valueOf(rowid) }, null, null, "rowid DESC", String.valueOf(size));
+                return readRows(cursor, columns.length, true);
+        }
+        
+        /**
+         * returns the rows of the cursor as strings, in the order of the
+         * cursor or reversed, and closes it. Null if the cursor is null.
+         */
+        private static String[][] readRows(Cursor cursor, int columnCount, boolean reversed) {
+                if (cursor == null) {
+                        return null;
+                }
+                
+                try {
+                        String[][] rows = new String[cursor.getCount()][columnCount];
+                        
+                        for (int i = 0; cursor.moveToNext(); i++) {
+                                String[] row = rows[reversed ? rows.length - 1 - i : i];
+                                
+                                for (int j = 0; j < columnCount; j++) {
+                                        row[j] = cursor.getString(j);
+                                }
+                        }
+                        
+                        return rows;
+                }
+                finally {
+                        cursor.close();
+                }
+        }
+        
         /**
          * 
-         * The id column must be called '_id'
+         * The id column must be called '_id'. returns null if the database
+         * can't be opened or there is no such row.
          * 
          * */
-        public static String getById(
-                                     Context context,
-                                     String databaseName,
-                                     long id,
-                                     String tableName,
-                                     String outputColumn) {
+        public static synchronized String getById(
+                                                  Context context,
+                                                  String databaseName,
+                                                  long id,
+                                                  String tableName,
+                                                  String outputColumn) {
                 String output = null;
                 Cursor cursor = generateCursor(context, databaseName, false, tableName, new String[] { "*" }, "_id = " + id, null, null, null, null, null);
                 
-                if (cursor.moveToFirst()) {
-                        output = cursor.getString(cursor.getColumnIndex(outputColumn));
+                if (cursor == null) {
+                        return null;
+                }
+                
+                try {
+                        if (cursor.moveToFirst()) {
+                                output = cursor.getString(cursor.getColumnIndex(outputColumn));
+                        }
+                }
+                finally {
+                        cursor.close();
                 }
                 
                 return output;
@@ -0,0 +1,87 @@
+package terracore.formgenerator.schema;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import terracore.formgenerator.AssetLoader;
+import android.content.Context;
+
+/**
+ * Resolves "$ref" entries to schema files of the assets folder. A ref is the
+ * path of the fragment, optionally followed by "#" and the id of a single
+ * widget of the fragment.
+ * 
+ * Fragments are parsed once and kept in the {@link FormSchemaCache}, every
+ * schema that includes a fragment shares the same {@link WidgetSpec}
+ * instances, with their options and rules. Fragments may include other
+ * fragments, a fragment that includes itself is an error.
+ * 
+ * A resolver keeps track of the fragments being read, it must not be shared
+ * between threads.
+ */
+public class AssetFragmentResolver implements FragmentResolver {
+        private final Context      context;
+        private final Set<String>  included;
+        private final List<String> reading = new ArrayList<String>();
+        
+        public AssetFragmentResolver(Context context) {
+                this(context, null);
+        }
+        
+        /**
+         * Creates a resolver that adds the file of each fragment it reads to
+         * included. The fragments are read from the assets folder instead of
+         * the {@link FormSchemaCache}, so the fragments included by other
+         * fragments are added too.
+         * 
+         * @param context
+         * @param included
+         *                - the files of the fragments read, may be null
+         */
+        public AssetFragmentResolver(Context context, Set<String> included) {
+                this.context = context;
+                this.included = included;
+        }
+        
+        @Override
+        public List<WidgetSpec> resolve(String ref) throws IOException {
+                int separator = ref.indexOf('#');
+                String filename = separator == -1 ? ref : ref.substring(0, separator);
+                String id = separator == -1 ? null : ref.substring(separator + 1);
+                
+                if (reading.contains(filename)) {
+                        throw new IOException("Fragment " + filename + " includes itself");
+                }
+                
+                List<WidgetSpec> specs;
+                reading.add(filename);
+                
+                try {
+                        if (included != null) {
+                                included.add(filename);
+                                specs = SchemaReader.readAll(AssetLoader.openReader(context, filename), this);
+                        }
+                        else {
+                                specs = FormSchemaCache.getInstance().getFragment(context, filename, this).getWidgets();
+                        }
+                }
+                finally {
+                        reading.remove(reading.size() - 1);
+                }
+                
+                if (id == null) {
+                        return specs;
+                }
+                
+                for (WidgetSpec spec : specs) {
+                        if (id.equals(spec.getId())) {
+                                return Collections.singletonList(spec);
+                        }
+                }
+                
+                throw new IOException("Fragment " + filename + " has no widget " + id);
+        }
+}
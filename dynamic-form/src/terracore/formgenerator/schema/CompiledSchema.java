@@ -0,0 +1,388 @@
+package terracore.formgenerator.schema;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import terracore.formgenerator.AssetLoader;
+import android.content.Context;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.util.Log;
+
+/**
+ * Read-only view of a schema compiled by {@link SchemaCompiler}.
+ * 
+ * The file is memory-mapped and nothing is decoded up front: a widget record
+ * is decoded to a {@link WidgetSpec} the first time {@link #get(int)} is called
+ * for it, later calls return the same spec. Each string of the table is decoded
+ * once, the first time a record needs it. The accessors {@link #getType(int)},
+ * {@link #getId(int)} and {@link #getPriority(int)} read a single column of the
+ * record without decoding it.
+ */
+public class CompiledSchema extends AbstractList<WidgetSpec> {
+        private static final String LOG_TAG            = "COMPILED_SCHEMA";
+        private static final String FILE_EXTENSION     = ".fsc";
+        private static final String INCLUDES_EXTENSION = ".fsi";
+        
+        private final ByteBuffer    buffer;
+        private final int           count;
+        private final int           stringsOffset;
+        private final int           stringDataOffset;
+        private final int           recordsOffset;
+        private final int           blocksOffset;
+        private final String[]      strings;
+        private final WidgetSpec[]  specs;
+        
+        public CompiledSchema(ByteBuffer buffer) throws IOException {
+                this.buffer = buffer;
+                
+                if (buffer.getInt(0) != SchemaCompiler.MAGIC || buffer.getInt(4) != SchemaCompiler.VERSION) {
+                        throw new IOException("Not a compiled schema");
+                }
+                
+                count = buffer.getInt(8);
+                specs = new WidgetSpec[count];
+                strings = new String[buffer.getInt(12)];
+                stringsOffset = buffer.getInt(16);
+                stringDataOffset = stringsOffset + strings.length * 4;
+                recordsOffset = buffer.getInt(20);
+                blocksOffset = buffer.getInt(24);
+        }
+        
+        /**
+         * Maps a compiled schema file in memory.
+         */
+        public static CompiledSchema open(File file) throws IOException {
+                RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+                
+                try {
+                        FileChannel channel = randomAccessFile.getChannel();
+                        return new CompiledSchema(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                }
+                finally {
+                        // the mapping stays valid after the file is closed
+                        randomAccessFile.close();
+                }
+        }
+        
+        /**
+         * Opens the compiled version of a json schema from the assets folder.
+         * The schema is compiled in the cache dir the first time, and again
+         * when the version of the application or the content of the asset or
+         * of one of its fragments changes, the compiled files of the older
+         * versions are deleted. The widgets of the fragments included by the
+         * schema are compiled in it.
+         * 
+         * @param context
+         * @param filename
+         *                the json schema in the assets folder
+         */
+        public static CompiledSchema fromAsset(Context context, String filename) throws IOException {
+                File directory = context.getCacheDir();
+                String name = filename.replace('/', '_') + ".";
+                String prefix = name + getVersionCode(context) + ".";
+                String hash = AssetLoader.hash(context, filename);
+                
+                // -- the fragments read the last time this content was compiled
+                File includesFile = new File(directory, prefix + hash + INCLUDES_EXTENSION);
+                File file = new File(directory, prefix + getKey(context, hash, readIncludes(includesFile)) + FILE_EXTENSION);
+                
+                if (!file.exists()) {
+                        deleteCompiled(directory, name);
+                        
+                        Set<String> included = new LinkedHashSet<String>();
+                        List<WidgetSpec> specs = SchemaReader.readAll(AssetLoader.openReader(context, filename), new AssetFragmentResolver(context, included));
+                        
+                        writeIncludes(includesFile, included);
+                        file = new File(directory, prefix + getKey(context, hash, included) + FILE_EXTENSION);
+                        
+                        File temporary = new File(file.getPath() + ".tmp");
+                        OutputStream out = new BufferedOutputStream(new FileOutputStream(temporary));
+                        
+                        try {
+                                SchemaCompiler.compile(specs, out);
+                        }
+                        finally {
+                                out.close();
+                        }
+                        
+                        if (!temporary.renameTo(file)) {
+                                throw new IOException("Could not write " + file);
+                        }
+                }
+                
+                return open(file);
+        }
+        
+        /**
+         * returns the hash of the schema, or if it includes fragments, the
+         * hash of its hash and of the hashes of the fragments.
+         */
+        private static String getKey(Context context, String hash, Collection<String> included) throws IOException {
+                if (included.isEmpty()) {
+                        return hash;
+                }
+                
+                StringBuilder key = new StringBuilder(hash);
+                
+                for (String fragment : included) {
+                        key.append('\n').append(fragment).append(' ').append(AssetLoader.hash(context, fragment));
+                }
+                
+                return FormSchema.hash(key.toString());
+        }
+        
+        /**
+         * returns the files of the fragments listed in the file, one per line,
+         * or an empty list if there is no such file.
+         */
+        private static List<String> readIncludes(File file) throws IOException {
+                List<String> included = new ArrayList<String>();
+                
+                if (!file.exists()) {
+                        return included;
+                }
+                
+                BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+                
+                try {
+                        String line;
+                        
+                        while ((line = reader.readLine()) != null) {
+                                if (line.length() > 0) {
+                                        included.add(line);
+                                }
+                        }
+                }
+                finally {
+                        reader.close();
+                }
+                
+                return included;
+        }
+        
+        private static void writeIncludes(File file, Collection<String> included) throws IOException {
+                Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+                
+                try {
+                        for (String fragment : included) {
+                                writer.write(fragment);
+                                writer.write('\n');
+                        }
+                }
+                finally {
+                        writer.close();
+                }
+        }
+        
+        /**
+         * Deletes the compiled versions of a schema and their lists of
+         * fragments, they are named by the schema followed by the version of
+         * the application and a hash.
+         */
+        private static void deleteCompiled(File directory, String name) {
+                File[] files = directory.listFiles();
+                
+                if (files == null) {
+                        return;
+                }
+                
+                for (File file : files) {
+                        String fileName = file.getName();
+                        String extension = fileName.endsWith(FILE_EXTENSION) ? FILE_EXTENSION : (fileName.endsWith(INCLUDES_EXTENSION) ? INCLUDES_EXTENSION : null);
+                        
+                        if (extension == null || !fileName.startsWith(name)) {
+                                continue;
+                        }
+                        
+                        // -- "version.hash", not a schema whose name starts like this one
+                        String key = fileName.substring(name.length(), fileName.length() - extension.length());
+                        
+                        if (key.indexOf('.') == key.lastIndexOf('.') && key.indexOf('.') != -1) {
+                                file.delete();
+                        }
+                }
+        }
+        
+        private static int getVersionCode(Context context) {
+                try {
+                        return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionCode;
+                }
+                catch (NameNotFoundException e) {
+                        Log.e(LOG_TAG, e.getMessage());
+                        return 0;
+                }
+        }
+        
+        // -----------------------------------------------
+        //
+        // records
+        //
+        // -----------------------------------------------
+        
+        @Override
+        public int size() {
+                return count;
+        }
+        
+        /**
+         * returns the spec of a widget, decoded the first time it is read.
+         * Concurrent callers may decode the same record twice, which is
+         * harmless.
+         */
+        @Override
+        public WidgetSpec get(int index) {
+                int record = record(index);
+                WidgetSpec spec = specs[index];
+                
+                if (spec != null) {
+                        return spec;
+                }
+                
+                Map<String, String> options = null;
+                Map<String, List<String>> optionLists = null;
+                int optionsBlock = buffer.getInt(record + 24);
+                
+                if (optionsBlock != -1) {
+                        int position = blocksOffset + optionsBlock;
+                        int size = buffer.getInt(position);
+                        position += 4;
+                        
+                        options = new LinkedHashMap<String, String>();
+                        
+                        for (int i = 0; i < size; i++) {
+                                options.put(string(buffer.getInt(position)), string(buffer.getInt(position + 4)));
+                                position += 8;
+                        }
+                        
+                        optionLists = readListMap(position);
+                }
+                
+                int togglesBlock = buffer.getInt(record + 28);
+                int hideBlock = buffer.getInt(record + 32);
+                int childrenBlock = buffer.getInt(record + 36);
+                
+                spec = new WidgetSpec(string(buffer.getInt(record)), getType(index), getId(index), getPriority(index), string(buffer.getInt(record + 16)), string(buffer.getInt(record + 20)), options, optionLists, togglesBlock == -1 ? null : readListMap(blocksOffset + togglesBlock), hideBlock == -1 ? null : readListMap(blocksOffset + hideBlock), childrenBlock == -1 ? null : readList(blocksOffset + childrenBlock));
+                specs[index] = spec;
+                
+                return spec;
+        }
+        
+        /**
+         * returns the type of the widget, interned like the types read by the
+         * {@link SchemaReader}.
+         */
+        public String getType(int index) {
+                int id = buffer.getInt(record(index) + 4);
+                
+                if (id == -1) {
+                        return null;
+                }
+                
+                if (strings[id] == null) {
+                        strings[id] = string(id).intern();
+                }
+                
+                return strings[id];
+        }
+        
+        public String getId(int index) {
+                return string(buffer.getInt(record(index) + 8));
+        }
+        
+        public int getPriority(int index) {
+                return buffer.getInt(record(index) + 12);
+        }
+        
+        private int record(int index) {
+                if (index < 0 || index >= count) {
+                        throw new IndexOutOfBoundsException("index " + index + ", size " + count);
+                }
+                
+                return recordsOffset + index * SchemaCompiler.RECORD_SIZE;
+        }
+        
+        // -----------------------------------------------
+        //
+        // blocks
+        //
+        // -----------------------------------------------
+        
+        private Map<String, List<String>> readListMap(int position) {
+                int size = buffer.getInt(position);
+                position += 4;
+                
+                Map<String, List<String>> map = new LinkedHashMap<String, List<String>>();
+                
+                for (int i = 0; i < size; i++) {
+                        String key = string(buffer.getInt(position));
+                        List<String> list = readList(position + 4);
+                        
+                        map.put(key, list);
+                        position += 8 + list.size() * 4;
+                }
+                
+                return map;
+        }
+        
+        private List<String> readList(int position) {
+                int size = buffer.getInt(position);
+                List<String> list = new ArrayList<String>(size);
+                
+                for (int i = 0; i < size; i++) {
+                        list.add(string(buffer.getInt(position + 4 + i * 4)));
+                }
+                
+                return list;
+        }
+        
+        /**
+         * Decodes a string of the table once. Concurrent callers may decode
+         * the same string twice, which is harmless.
+         */
+        private String string(int id) {
+                if (id == -1) {
+                        return null;
+                }
+                
+                String value = strings[id];
+                
+                if (value == null) {
+                        int position = stringDataOffset + buffer.getInt(stringsOffset + id * 4);
+                        byte[] bytes = new byte[buffer.getInt(position)];
+                        
+                        ByteBuffer source = buffer.duplicate();
+                        source.position(position + 4);
+                        source.get(bytes);
+                        
+                        try {
+                                value = new String(bytes, "UTF-8");
+                        }
+                        catch (IOException e) {
+                                throw new IllegalStateException(e);
+                        }
+                        
+                        strings[id] = value;
+                }
+                
+                return value;
+        }
+}
@@ -0,0 +1,57 @@
+package terracore.formgenerator.schema;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resolves "$ref" entries to schema files of a directory, like the assets
+ * folder of the project. Used by the build tools, which run outside of the
+ * application, see {@link AssetFragmentResolver} for the same resolution at
+ * runtime.
+ */
+public class FileFragmentResolver implements FragmentResolver {
+        private final File         directory;
+        private final List<String> reading = new ArrayList<String>();
+        
+        public FileFragmentResolver(File directory) {
+                this.directory = directory;
+        }
+        
+        @Override
+        public List<WidgetSpec> resolve(String ref) throws IOException {
+                int separator = ref.indexOf('#');
+                String filename = separator == -1 ? ref : ref.substring(0, separator);
+                String id = separator == -1 ? null : ref.substring(separator + 1);
+                
+                if (reading.contains(filename)) {
+                        throw new IOException("Fragment " + filename + " includes itself");
+                }
+                
+                List<WidgetSpec> specs;
+                reading.add(filename);
+                
+                try {
+                        specs = SchemaReader.readAll(new InputStreamReader(new FileInputStream(new File(directory, filename)), "UTF-8"), this);
+                }
+                finally {
+                        reading.remove(reading.size() - 1);
+                }
+                
+                if (id == null) {
+                        return specs;
+                }
+                
+                for (WidgetSpec spec : specs) {
+                        if (id.equals(spec.getId())) {
+                                return Collections.singletonList(spec);
+                        }
+                }
+                
+                throw new IOException("Fragment " + filename + " has no widget " + id);
+        }
+}
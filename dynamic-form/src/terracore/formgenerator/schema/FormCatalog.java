@@ -0,0 +1,312 @@
+package terracore.formgenerator.schema;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import terracore.formgenerator.AssetLoader;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+/**
+ * Many schemas bundled in a single asset, written by
+ * {@link FormCatalogWriter}.
+ * 
+ * <pre>
+ * header   magic, version, form count
+ * index    per form: name, title, version, field count, content hash,
+ *          offset and length of its json
+ * forms    the json of each schema, UTF-8
+ * </pre>
+ * 
+ * Only the index is read when the catalog is opened, listing the forms never
+ * parses a schema. Opening a form seeks straight to its bytes and parses only
+ * that form, or nothing at all if its content hash is in the
+ * {@link FormSchemaCache}.
+ * 
+ * The catalog must be stored uncompressed in the apk for the forms to be read
+ * from their offset, for example with <code>aaptOptions { noCompress
+ * "catalog" }</code> for a catalog named "forms.catalog". A compressed catalog
+ * is still read, but each form is reached by inflating the catalog from its
+ * start.
+ */
+public class FormCatalog {
+        private static final Map<String, FormCatalog> catalogs = new HashMap<String, FormCatalog>();
+        
+        private final Context                         context;
+        private final String                          filename;
+        private final Map<String, Entry>              entries;
+        
+        /**
+         * A form of the catalog.
+         */
+        public static class Entry {
+                private final String name;
+                private final String title;
+                private final int    version;
+                private final int    fieldCount;
+                private final String hash;
+                private final int    offset;
+                private final int    length;
+                
+                public Entry(String name, String title, int version, int fieldCount, String hash, int offset, int length) {
+                        this.name = name;
+                        this.title = title;
+                        this.version = version;
+                        this.fieldCount = fieldCount;
+                        this.hash = hash;
+                        this.offset = offset;
+                        this.length = length;
+                }
+                
+                public String getName() {
+                        return name;
+                }
+                
+                /**
+                 * returns the name of the "meta" entry of the schema, or null.
+                 */
+                public String getTitle() {
+                        return title;
+                }
+                
+                public int getVersion() {
+                        return version;
+                }
+                
+                /**
+                 * returns the number of widgets of the schema.
+                 */
+                public int getFieldCount() {
+                        return fieldCount;
+                }
+                
+                public String getHash() {
+                        return hash;
+                }
+                
+                public int getOffset() {
+                        return offset;
+                }
+                
+                public int getLength() {
+                        return length;
+                }
+                
+                @Override
+                public String toString() {
+                        return name + " v" + version + " (" + fieldCount + " fields)";
+                }
+        }
+        
+        private FormCatalog(Context context, String filename, Map<String, Entry> entries) {
+                this.context = context;
+                this.filename = filename;
+                this.entries = entries;
+        }
+        
+        /**
+         * Opens a catalog of the assets folder. The index of each catalog is
+         * read once per process.
+         * 
+         * @param context
+         * @param filename
+         *                - the path of the catalog in the assets folder
+         */
+        public static FormCatalog fromAsset(Context context, String filename) throws IOException {
+                synchronized (catalogs) {
+                        FormCatalog catalog = catalogs.get(filename);
+                        
+                        if (catalog == null) {
+                                catalog = new FormCatalog(context.getApplicationContext(), filename, readIndex(context, filename));
+                                catalogs.put(filename, catalog);
+                        }
+                        
+                        return catalog;
+                }
+        }
+        
+        private static Map<String, Entry> readIndex(Context context, String filename) throws IOException {
+                DataInputStream in = new DataInputStream(AssetLoader.openStream(context, filename));
+                
+                try {
+                        if (in.readInt() != FormCatalogWriter.MAGIC || in.readInt() != FormCatalogWriter.VERSION) {
+                                throw new IOException(filename + " is not a form catalog");
+                        }
+                        
+                        int count = in.readInt();
+                        Map<String, Entry> entries = new LinkedHashMap<String, Entry>(count * 2);
+                        
+                        for (int i = 0; i < count; i++) {
+                                String name = in.readUTF();
+                                String title = in.readBoolean() ? in.readUTF() : null;
+                                Entry entry = new Entry(name, title, in.readInt(), in.readInt(), in.readUTF(), in.readInt(), in.readInt());
+                                
+                                entries.put(name, entry);
+                        }
+                        
+                        return Collections.unmodifiableMap(entries);
+                }
+                finally {
+                        in.close();
+                }
+        }
+        
+        /**
+         * returns the forms of the catalog, in the order they were written.
+         */
+        public List<Entry> getEntries() {
+                return new ArrayList<Entry>(entries.values());
+        }
+        
+        /**
+         * returns the form with the given name, or null.
+         */
+        public Entry getEntry(String name) {
+                return entries.get(name);
+        }
+        
+        /**
+         * returns the parsed schema of a form of the catalog, the schema is
+         * read only if it is not in the {@link FormSchemaCache}.
+         * 
+         * @param name
+         * @param resolver
+         *                - finds the fragments of the "$ref" entries, may be
+         *                null
+         */
+        public FormSchema getSchema(String name, FragmentResolver resolver) throws IOException {
+                Entry entry = entries.get(name);
+                
+                if (entry == null) {
+                        throw new IOException("No form " + name + " in " + filename);
+                }
+                
+                FormSchemaCache cache = FormSchemaCache.getInstance();
+                String key = cache.getKey(entry.getHash(), resolver);
+                FormSchema schema = cache.get(key, false);
+                
+                if (schema == null) {
+                        schema = FormSchema.parse(key, new InputStreamReader(openStream(entry), "UTF-8"), resolver);
+                        cache.put(schema);
+                }
+                
+                return schema;
+        }
+        
+        /**
+         * returns the json of a form, without the rest of the catalog. The
+         * stream starts at the offset of the form in the apk, if the catalog
+         * is stored uncompressed.
+         */
+        public InputStream openStream(Entry entry) throws IOException {
+                AssetFileDescriptor descriptor;
+                
+                try {
+                        descriptor = context.getAssets().openFd(filename);
+                }
+                catch (FileNotFoundException e) {
+                        // -- compressed, the catalog is read from its start
+                        return new LimitedInputStream(skip(AssetLoader.openStream(context, filename), entry.getOffset()), entry.getLength());
+                }
+                
+                // -- closing the stream closes the descriptor
+                FileInputStream stream = descriptor.createInputStream();
+                
+                try {
+                        stream.getChannel().position(descriptor.getStartOffset() + entry.getOffset());
+                }
+                catch (IOException e) {
+                        stream.close();
+                        throw e;
+                }
+                
+                return new LimitedInputStream(stream, entry.getLength());
+        }
+        
+        private InputStream skip(InputStream stream, long offset) throws IOException {
+                long skipped = 0;
+                
+                while (skipped < offset) {
+                        long count = stream.skip(offset - skipped);
+                        
+                        if (count <= 0) {
+                                stream.close();
+                                throw new IOException("Truncated catalog " + filename);
+                        }
+                        
+                        skipped += count;
+                }
+                
+                return stream;
+        }
+        
+        /**
+         * ends after a number of bytes of the underlying stream.
+         */
+        private static class LimitedInputStream extends FilterInputStream {
+                private int remaining;
+                
+                public LimitedInputStream(InputStream in, int length) {
+                        super(in);
+                        this.remaining = length;
+                }
+                
+                @Override
+                public int read() throws IOException {
+                        if (remaining <= 0) {
+                                return -1;
+                        }
+                        
+                        int value = super.read();
+                        
+                        if (value != -1) {
+                                remaining--;
+                        }
+                        
+                        return value;
+                }
+                
+                @Override
+                public int read(byte[] buffer, int offset, int count) throws IOException {
+                        if (remaining <= 0) {
+                                return -1;
+                        }
+                        
+                        int read = super.read(buffer, offset, Math.min(count, remaining));
+                        
+                        if (read > 0) {
+                                remaining -= read;
+                        }
+                        
+                        return read;
+                }
+                
+                @Override
+                public long skip(long count) throws IOException {
+                        long skipped = super.skip(Math.min(count, remaining));
+                        remaining -= skipped;
+                        return skipped;
+                }
+                
+                @Override
+                public int available() throws IOException {
+                        return Math.min(super.available(), remaining);
+                }
+                
+                @Override
+                public boolean markSupported() {
+                        return false;
+                }
+        }
+}
@@ -0,0 +1,137 @@
+package terracore.formgenerator.schema;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bundles schemas in a catalog read by {@link FormCatalog}.
+ * 
+ * Meant to run when the application is built, by the build script of the
+ * form-tools project:
+ * 
+ * <pre>
+ * ant -f form-tools/build.xml catalog
+ * </pre>
+ * 
+ * The "$ref" entries are resolved to count the fields, the json itself is
+ * stored unchanged.
+ */
+public class FormCatalogWriter {
+        public static final int        MAGIC   = 0x46435431;    // "FCT1"
+        public static final int        VERSION = 1;
+        
+        private final List<Form>       forms   = new ArrayList<Form>();
+        private final Set<String>      names   = new HashSet<String>();
+        private final FragmentResolver resolver;
+        
+        private static class Form {
+                String name;
+                String title;
+                int    version;
+                int    fieldCount;
+                String hash;
+                byte[] json;
+        }
+        
+        /**
+         * @param resolver
+         *                - finds the fragments of the "$ref" entries, may be
+         *                null if the schemas have none
+         */
+        public FormCatalogWriter(FragmentResolver resolver) {
+                this.resolver = resolver;
+        }
+        
+        /**
+         * Adds a schema to the catalog, the schema is parsed to check it and
+         * to count its fields.
+         * 
+         * @param name
+         *                - the name used to open the form
+         * @param version
+         *                - the version of the schema
+         * @param json
+         */
+        public void add(String name, int version, String json) throws IOException {
+                if (!names.add(name)) {
+                        throw new IOException("Duplicated form " + name);
+                }
+                
+                SchemaReader reader = new SchemaReader(new StringReader(json), resolver);
+                Form form = new Form();
+                
+                try {
+                        while (reader.hasNext()) {
+                                reader.next();
+                                form.fieldCount++;
+                        }
+                }
+                finally {
+                        reader.close();
+                }
+                
+                form.name = name;
+                form.title = reader.getTitle();
+                form.version = version;
+                form.hash = FormSchema.hash(json);
+                form.json = json.getBytes("UTF-8");
+                
+                forms.add(form);
+        }
+        
+        /**
+         * Writes the catalog, the stream is not closed.
+         */
+        public void write(OutputStream stream) throws IOException {
+                // -- the size of the index doesn't depend on the offsets, so it is written twice
+                int bodyOffset = writeIndex(0).length;
+                byte[] index = writeIndex(bodyOffset);
+                
+                DataOutputStream out = new DataOutputStream(stream);
+                out.write(index);
+                
+                for (Form form : forms) {
+                        out.write(form.json);
+                }
+                
+                out.flush();
+        }
+        
+        private byte[] writeIndex(int bodyOffset) throws IOException {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                int offset = bodyOffset;
+                
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(forms.size());
+                
+                for (Form form : forms) {
+                        out.writeUTF(form.name);
+                        out.writeBoolean(form.title != null);
+                        
+                        if (form.title != null) {
+                                out.writeUTF(form.title);
+                        }
+                        
+                        out.writeInt(form.version);
+                        out.writeInt(form.fieldCount);
+                        out.writeUTF(form.hash);
+                        out.writeInt(offset);
+                        out.writeInt(form.json.length);
+                        
+                        offset += form.json.length;
+                }
+                
+                out.flush();
+                
+                return bytes.toByteArray();
+        }
+}
@@ -0,0 +1,501 @@
+package terracore.formgenerator.schema;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+
+/**
+ * Writes a Java class that creates the form of a schema without reading it,
+ * see {@link terracore.formgenerator.GeneratedForm}. Meant for the schemas that
+ * ship with the application, it is run by the build script of the form-tools
+ * project:
+ * 
+ * <pre>
+ * ant -f form-tools/build.xml forms
+ * </pre>
+ * 
+ * The "$ref" entries are resolved by the given {@link FragmentResolver}. The
+ * class has a typed getter and setter for each widget with an id that holds a
+ * value.
+ * 
+ * Only the built-in types can be generated, a schema with other types must
+ * be read at runtime like the schemas that are not part of the application.
+ */
+public class FormClassGenerator {
+        private static final int           WIDGETS_PER_METHOD = 64;
+        
+        private final String               packageName;
+        private final String               className;
+        private final String               source;
+        private final String               hash;
+        private final List<WidgetSpec>     specs              = new ArrayList<WidgetSpec>();
+        private final Map<String, Integer> indexes            = new HashMap<String, Integer>();
+        
+        /**
+         * @param qualifiedName
+         *                - the package and name of the class to write
+         * @param source
+         *                - the name of the schema, written in the class
+         * @param json
+         *                - the content of the schema
+         * @param resolver
+         *                - finds the fragments of the "$ref" entries, may be
+         *                null if the schema has none
+         */
+        public FormClassGenerator(String qualifiedName, String source, String json, FragmentResolver resolver) throws IOException {
+                int separator = qualifiedName.lastIndexOf('.');
+                
+                this.packageName = separator == -1 ? null : qualifiedName.substring(0, separator);
+                this.className = qualifiedName.substring(separator + 1);
+                this.source = source;
+                this.hash = FormSchema.hash(json);
+                
+                for (WidgetSpec spec : SchemaReader.readAll(new StringReader(json), resolver)) {
+                        String type = spec.getType();
+                        
+                        if (!isGenerated(type)) {
+                                throw new IOException("Widget " + spec + " has no generated type, the schema must be read at runtime");
+                        }
+                        
+                        // -- the factory of a spinner without options creates nothing
+                        if (type.equals(SchemaKeys.SCHEMA_KEY_SPINNER) && !spec.hasOptions()) {
+                                continue;
+                        }
+                        
+                        // -- the last widget of an id wins, like in the map of the FormActivity
+                        if (spec.getId() != null) {
+                                indexes.put(spec.getId(), specs.size());
+                        }
+                        
+                        specs.add(spec);
+                }
+        }
+        
+        private static boolean isGenerated(String type) {
+                return SchemaKeys.SCHEMA_KEY_STRING_TEXTVIEW.equals(type) || SchemaKeys.SCHEMA_KEY_INTEGER_TEXTVIEW.equals(type) || SchemaKeys.SCHEMA_KEY_LABEL.equals(type) || SchemaKeys.SCHEMA_KEY_CHECKBOX.equals(type) || SchemaKeys.SCHEMA_KEY_SPINNER.equals(type) || SchemaKeys.SCHEMA_KEY_AUTOCOMPLETE_TEXTVIEW.equals(type) || SchemaKeys.SCHEMA_KEY_ACCORDION.equals(type) || SchemaKeys.SCHEMA_KEY_CAMERA.equals(type) || SchemaKeys.SCHEMA_KEY_REPEATING_GROUP.equals(type) || SchemaKeys.SCHEMA_KEY_DATABASE_GRID.equals(type);
+        }
+        
+        /**
+         * Writes the source of the class, the writer is not closed.
+         */
+        public void write(PrintWriter out) {
+                out.println("// Generated by FormClassGenerator from " + source + ", do not edit.");
+                
+                if (packageName != null) {
+                        out.println("package " + packageName + ";");
+                }
+                
+                out.println();
+                out.println("import java.util.Arrays;");
+                out.println("import java.util.LinkedHashMap;");
+                out.println("import java.util.List;");
+                out.println("import java.util.Map;");
+                out.println();
+                out.println("import terracore.formgenerator.*;");
+                out.println("import terracore.formgenerator.accordion.FormAccordion;");
+                out.println("import terracore.formgenerator.camera.FormCamera;");
+                out.println("import android.content.Context;");
+                out.println();
+                out.println("public class " + className + " extends GeneratedForm {");
+                out.println("        public static final String SCHEMA      = " + literal(source) + ";");
+                out.println("        public static final String SCHEMA_HASH = " + literal(hash) + ";");
+                out.println();
+                
+                writeTable(out, "TOGGLES", SchemaKeys.SCHEMA_KEY_CHECKBOX);
+                writeTable(out, "HIDE_ON_CLICK", SchemaKeys.SCHEMA_KEY_SPINNER);
+                writeChildren(out);
+                
+                out.println("        @Override");
+                out.println("        protected int[][][] getToggles() {");
+                out.println("                return TOGGLES;");
+                out.println("        }");
+                out.println();
+                out.println("        @Override");
+                out.println("        protected int[][][] getHideOnClick() {");
+                out.println("                return HIDE_ON_CLICK;");
+                out.println("        }");
+                out.println();
+                out.println("        @Override");
+                out.println("        protected int[][] getChildren() {");
+                out.println("                return CHILDREN;");
+                out.println("        }");
+                out.println();
+                out.println("        @Override");
+                out.println("        protected FormWidget[] createWidgets(Context context) {");
+                out.println("                FormWidget[] widgets = new FormWidget[" + specs.size() + "];");
+                
+                // -- split in several methods, a method can't be larger than 64k
+                for (int i = 0; i < specs.size(); i += WIDGETS_PER_METHOD) {
+                        out.println("                createWidgets" + i / WIDGETS_PER_METHOD + "(context, widgets);");
+                }
+                
+                out.println("                return widgets;");
+                out.println("        }");
+                
+                for (int i = 0; i < specs.size(); i += WIDGETS_PER_METHOD) {
+                        writeWidgets(out, i, Math.min(specs.size(), i + WIDGETS_PER_METHOD));
+                }
+                
+                writeAccessors(out);
+                
+                out.println("}");
+                out.flush();
+        }
+        
+        // -----------------------------------------------
+        //
+        // rules
+        //
+        // -----------------------------------------------
+        
+        private void writeTable(PrintWriter out, String name, String type) {
+                out.println("        private static final int[][][] " + name + " = {");
+                
+                for (int i = 0; i < specs.size(); i++) {
+                        WidgetSpec spec = specs.get(i);
+                        Map<String, List<String>> rules = type.equals(SchemaKeys.SCHEMA_KEY_CHECKBOX) ? spec.getToggles() : spec.getHideOnClick();
+                        StringBuilder line = new StringBuilder("                ");
+                        
+                        if (rules == null || !type.equals(spec.getType())) {
+                                line.append("null");
+                        }
+                        else {
+                                line.append("{ ");
+                                
+                                for (Iterator<Entry<String, List<String>>> iterator = rules.entrySet().iterator(); iterator.hasNext();) {
+                                        Entry<String, List<String>> rule = iterator.next();
+                                        int value = parseValue(rule.getKey());
+                                        
+                                        line.append("{ ").append(value == Integer.MIN_VALUE ? "NO_VALUE" : String.valueOf(value));
+                                        
+                                        // -- ids that are not in the form are ignored at runtime too
+                                        for (String id : rule.getValue()) {
+                                                Integer index = indexes.get(id);
+                                                
+                                                if (index != null) {
+                                                        line.append(", ").append(index);
+                                                }
+                                        }
+                                        
+                                        line.append(iterator.hasNext() ? " }, " : " }");
+                                }
+                                
+                                line.append(" }");
+                        }
+                        
+                        line.append(i < specs.size() - 1 ? ", " : " ");
+                        out.println(line.append("// ").append(i).append(" ").append(spec.getId()));
+                }
+                
+                out.println("        };");
+                out.println();
+        }
+        
+        /**
+         * Writes the children of each accordion, linked like
+         * terracore.formgenerator.FormTree links them: a widget is the child
+         * of the first accordion that lists it, an accordion doesn't get a
+         * child that contains it.
+         */
+        private void writeChildren(PrintWriter out) {
+                int[] parents = new int[specs.size()];
+                Arrays.fill(parents, -1);
+                
+                out.println("        private static final int[][] CHILDREN = {");
+                
+                for (int i = 0; i < specs.size(); i++) {
+                        WidgetSpec spec = specs.get(i);
+                        StringBuilder line = new StringBuilder("                ");
+                        List<Integer> children = new ArrayList<Integer>();
+                        
+                        if (spec.getType().equals(SchemaKeys.SCHEMA_KEY_ACCORDION)) {
+                                for (String id : spec.getChildren()) {
+                                        Integer child = indexes.get(id);
+                                        
+                                        if (child != null && parents[child] == -1 && !isAncestor(parents, child, i)) {
+                                                parents[child] = i;
+                                                children.add(child);
+                                        }
+                                }
+                        }
+                        
+                        if (children.isEmpty()) {
+                                line.append("null");
+                        }
+                        else {
+                                line.append("{ ");
+                                
+                                for (int j = 0; j < children.size(); j++) {
+                                        line.append(j == 0 ? "" : ", ").append(children.get(j));
+                                }
+                                
+                                line.append(" }");
+                        }
+                        
+                        line.append(i < specs.size() - 1 ? ", " : " ");
+                        out.println(line.append("// ").append(i).append(" ").append(spec.getId()));
+                }
+                
+                out.println("        };");
+                out.println();
+        }
+        
+        private static boolean isAncestor(int[] parents, int node, int index) {
+                for (int i = index; i != -1; i = parents[i]) {
+                        if (i == node) {
+                                return true;
+                        }
+                }
+                
+                return false;
+        }
+        
+        /**
+         * same as terracore.formgenerator.GeneratedForm#parseValue(String),
+         * which can't be used outside of Android.
+         */
+        private static int parseValue(String value) {
+                try {
+                        return Integer.parseInt(value);
+                }
+                catch (NumberFormatException e) {
+                        return Integer.MIN_VALUE;
+                }
+        }
+        
+        // -----------------------------------------------
+        //
+        // widgets
+        //
+        // -----------------------------------------------
+        
+        private void writeWidgets(PrintWriter out, int start, int end) {
+                out.println();
+                out.println("        private static void createWidgets" + start / WIDGETS_PER_METHOD + "(Context context, FormWidget[] widgets) {");
+                out.println("                Map<String, String> options;");
+                out.println("                Map<String, List<String>> optionLists;");
+                
+                for (int i = start; i < end; i++) {
+                        WidgetSpec spec = specs.get(i);
+                        String type = spec.getType();
+                        String name = literal(spec.getName());
+                        String widget;
+                        
+                        out.println();
+                        
+                        if (type.equals(SchemaKeys.SCHEMA_KEY_STRING_TEXTVIEW)) {
+                                widget = "new FormEditText(context, " + name + ")";
+                        }
+                        else if (type.equals(SchemaKeys.SCHEMA_KEY_INTEGER_TEXTVIEW)) {
+                                widget = "new FormNumericEditText(context, " + name + ")";
+                        }
+                        else if (type.equals(SchemaKeys.SCHEMA_KEY_LABEL)) {
+                                writeOptions(out, spec);
+                                widget = "new FormLabelTitle(context, " + name + ", options)";
+                        }
+                        else if (type.equals(SchemaKeys.SCHEMA_KEY_CHECKBOX)) {
+                                widget = "new FormCheckBox(context, " + name + ")";
+                        }
+                        else if (type.equals(SchemaKeys.SCHEMA_KEY_SPINNER)) {
+                                writeOptions(out, spec);
+                                widget = "new FormSpinner(context, " + name + ", options)";
+                        }
+                        else if (type.equals(SchemaKeys.SCHEMA_KEY_AUTOCOMPLETE_TEXTVIEW)) {
+                                writeOptionLists(out, spec);
+                                widget = "new FormAutoCompleteTextBox(context, " + name + ", optionLists)";
+                        }
+                        else if (type.equals(SchemaKeys.SCHEMA_KEY_ACCORDION)) {
+                                widget = "new FormAccordion(context, " + name + ", " + list(spec.getChildren()) + ")";
+                        }
+                        else if (type.equals(SchemaKeys.SCHEMA_KEY_DATABASE_GRID)) {
+                                writeOptionLists(out, spec);
+                                widget = "new FormDatabaseGrid(context, " + name + ", optionLists)";
+                        }
+                        else if (type.equals(SchemaKeys.SCHEMA_KEY_REPEATING_GROUP)) {
+                                widget = "new FormRepeatingGroup(context, " + name + ", " + literal(spec.getOptions().get(SchemaKeys.SCHEMA_KEY_TEMPLATE)) + ")";
+                        }
+                        else {
+                                widget = "new FormCamera(context, " + name + ")";
+                        }
+                        
+                        out.println("                widgets[" + i + "] = init(" + widget + ", " + literal(spec.getId()) + ", " + spec.getPriority() + ", " + literal(spec.getDefault()) + ", " + literal(spec.getHint()) + ");");
+                }
+                
+                out.println("        }");
+        }
+        
+        private static void writeOptionLists(PrintWriter out, WidgetSpec spec) {
+                out.println("                optionLists = new LinkedHashMap<String, List<String>>();");
+                
+                for (Entry<String, List<String>> entry : spec.getOptionLists().entrySet()) {
+                        out.println("                optionLists.put(" + literal(entry.getKey()) + ", " + list(entry.getValue()) + ");");
+                }
+        }
+        
+        private static void writeOptions(PrintWriter out, WidgetSpec spec) {
+                out.println("                options = new LinkedHashMap<String, String>();");
+                
+                for (Entry<String, String> entry : spec.getOptions().entrySet()) {
+                        out.println("                options.put(" + literal(entry.getKey()) + ", " + literal(entry.getValue()) + ");");
+                }
+        }
+        
+        // -----------------------------------------------
+        //
+        // binder
+        //
+        // -----------------------------------------------
+        
+        private void writeAccessors(PrintWriter out) {
+                Set<String> names = new HashSet<String>();
+                
+                for (int i = 0; i < specs.size(); i++) {
+                        WidgetSpec spec = specs.get(i);
+                        String type = spec.getType();
+                        
+                        // -- like FormActivity.save(), labels and accordions have no value
+                        if (spec.getId() == null || indexes.get(spec.getId()) != i || type.equals(SchemaKeys.SCHEMA_KEY_LABEL) || type.equals(SchemaKeys.SCHEMA_KEY_ACCORDION)) {
+                                continue;
+                        }
+                        
+                        String name = accessorName(spec.getId());
+                        
+                        if (!names.add(name)) {
+                                name = name + i;
+                                names.add(name);
+                        }
+                        
+                        out.println();
+                        
+                        if (type.equals(SchemaKeys.SCHEMA_KEY_CHECKBOX)) {
+                                out.println("        public boolean is" + name + "() {");
+                                out.println("                return \"1\".equals(widgets[" + i + "].getValue());");
+                                out.println("        }");
+                                out.println();
+                                out.println("        public void set" + name + "(boolean value) {");
+                                out.println("                widgets[" + i + "].setValue(value ? \"1\" : \"0\");");
+                                out.println("        }");
+                        }
+                        else if (type.equals(SchemaKeys.SCHEMA_KEY_CAMERA)) {
+                                out.println("        public List<String> get" + name + "() {");
+                                out.println("                return ((FormCamera) widgets[" + i + "]).getPhotos();");
+                                out.println("        }");
+                                out.println();
+                                out.println("        public void set" + name + "(List<String> photos) {");
+                                out.println("                ((FormCamera) widgets[" + i + "]).setPhotos(photos);");
+                                out.println("                ((FormCamera) widgets[" + i + "]).updatePhotos();");
+                                out.println("        }");
+                        }
+                        else {
+                                out.println("        public String get" + name + "() {");
+                                out.println("                return widgets[" + i + "].getValue();");
+                                out.println("        }");
+                                out.println();
+                                out.println("        public void set" + name + "(String value) {");
+                                out.println("                widgets[" + i + "].setValue(value);");
+                                out.println("        }");
+                        }
+                }
+        }
+        
+        /**
+         * returns the id in camel case, starting with an upper case letter,
+         * like "SearchCountry" for "search_country".
+         */
+        static String accessorName(String id) {
+                StringBuilder name = new StringBuilder();
+                boolean upper = true;
+                
+                for (int i = 0; i < id.length(); i++) {
+                        char c = id.charAt(i);
+                        
+                        if (Character.isJavaIdentifierPart(c) && c != '_' && c != '$') {
+                                name.append(upper ? Character.toUpperCase(c) : c);
+                                upper = false;
+                        }
+                        else {
+                                upper = true;
+                        }
+                }
+                
+                if (name.length() == 0 || !Character.isJavaIdentifierStart(name.charAt(0))) {
+                        name.insert(0, '_');
+                }
+                
+                return name.toString();
+        }
+        
+        // -----------------------------------------------
+        //
+        // literals
+        //
+        // -----------------------------------------------
+        
+        /**
+         * returns a Java string literal, characters outside of ASCII are
+         * escaped so the source doesn't depend on its encoding.
+         */
+        static String literal(String value) {
+                if (value == null) {
+                        return "null";
+                }
+                
+                StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+                
+                for (int i = 0; i < value.length(); i++) {
+                        char c = value.charAt(i);
+                        
+                        switch (c) {
+                                case '"':
+                                        builder.append("\\\"");
+                                        break;
+                                
+                                case '\\':
+                                        builder.append("\\\\");
+                                        break;
+                                
+                                case '\n':
+                                        builder.append("\\n");
+                                        break;
+                                
+                                case '\r':
+                                        builder.append("\\r");
+                                        break;
+                                
+                                case '\t':
+                                        builder.append("\\t");
+                                        break;
+                                
+                                default:
+                                        if (c < 0x20 || c > 0x7e) {
+                                                builder.append(String.format("\\u%04x", (int) c));
+                                        }
+                                        else {
+                                                builder.append(c);
+                                        }
+                        }
+                }
+                
+                return builder.append('"').toString();
+        }
+        
+        private static String list(List<String> values) {
+                StringBuilder builder = new StringBuilder("Arrays.asList(");
+                
+                for (int i = 0; i < values.size(); i++) {
+                        builder.append(i == 0 ? "" : ", ").append(literal(values.get(i)));
+                }
+                
+                return builder.append(")").toString();
+        }
+}
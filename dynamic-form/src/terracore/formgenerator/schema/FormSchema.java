@@ -0,0 +1,213 @@
+package terracore.formgenerator.schema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A parsed form schema: the widget specs in the order of the schema, plus its
+ * title and content hash.
+ * 
+ * Instances are immutable and can be shared between threads and forms, see
+ * {@link FormSchemaCache}. The schema is validated once, when it is created,
+ * see {@link #getDiagnostics()}.
+ */
+public final class FormSchema {
+        private static final int             HASH_CHUNK = 4096;
+        
+        private final String                 hash;
+        private final String                 title;
+        private final List<WidgetSpec>       widgets;
+        private final long                   estimatedSize;
+        private final List<SchemaDiagnostic> diagnostics;
+        
+        public FormSchema(String hash, String title, List<WidgetSpec> widgets) {
+                this.hash = hash;
+                this.title = title;
+                this.widgets = Collections.unmodifiableList(new ArrayList<WidgetSpec>(widgets));
+                
+                long size = 0;
+                
+                for (WidgetSpec spec : widgets) {
+                        size += spec.estimateSize();
+                }
+                
+                this.estimatedSize = size;
+                this.diagnostics = Collections.unmodifiableList(SchemaValidator.validate(this.widgets, null));
+        }
+        
+        /**
+         * Parses a schema.
+         * 
+         * @param json
+         *                - the raw json data as a String
+         */
+        public static FormSchema parse(String json) throws IOException {
+                return parse(hash(json), json, null);
+        }
+        
+        static FormSchema parse(String hash, String json, FragmentResolver resolver) throws IOException {
+                return parse(hash, new StringReader(json), resolver);
+        }
+        
+        /**
+         * Parses a schema read from a stream, the reader is closed.
+         * 
+         * @param hash
+         *                - the hash of the content, see {@link #hash(String)}
+         * @param in
+         * @param resolver
+         *                - finds the fragments of the "$ref" entries, may be
+         *                null
+         */
+        public static FormSchema parse(String hash, Reader in, FragmentResolver resolver) throws IOException {
+                SchemaReader reader = new SchemaReader(in, resolver);
+                List<WidgetSpec> widgets = new ArrayList<WidgetSpec>();
+                
+                try {
+                        while (reader.hasNext()) {
+                                widgets.add(reader.next());
+                        }
+                }
+                finally {
+                        reader.close();
+                }
+                
+                return new FormSchema(hash, reader.getTitle(), widgets);
+        }
+        
+        /**
+         * returns the SHA-1 of the UTF-8 bytes of the content, as hex, the
+         * same as {@link #hash(InputStream)} of the bytes. The content is
+         * encoded through one buffer, a character split by the end of the
+         * buffer is encoded whole in the next one.
+         */
+        public static String hash(String json) {
+                try {
+                        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                        CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+                        CharBuffer in = CharBuffer.wrap(json);
+                        ByteBuffer out = ByteBuffer.allocate(HASH_CHUNK);
+                        CoderResult result;
+                        
+                        do {
+                                result = encoder.encode(in, out, true);
+                                
+                                if (result.isUnderflow()) {
+                                        result = encoder.flush(out);
+                                }
+                                
+                                digest.update(out.array(), 0, out.position());
+                                out.clear();
+                        }
+                        while (result.isOverflow());
+                        
+                        return toHex(digest.digest());
+                }
+                catch (NoSuchAlgorithmException e) {
+                        throw new IllegalStateException(e);
+                }
+        }
+        
+        /**
+         * returns the SHA-1 of the bytes of the stream, as hex. The stream is
+         * read to its end but not closed.
+         */
+        public static String hash(InputStream stream) throws IOException {
+                try {
+                        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                        byte[] buffer = new byte[HASH_CHUNK];
+                        int count;
+                        
+                        while ((count = stream.read(buffer)) != -1) {
+                                digest.update(buffer, 0, count);
+                        }
+                        
+                        return toHex(digest.digest());
+                }
+                catch (NoSuchAlgorithmException e) {
+                        throw new IllegalStateException(e);
+                }
+        }
+        
+        static String toHex(byte[] bytes) {
+                StringBuilder builder = new StringBuilder(bytes.length * 2);
+                
+                for (byte b : bytes) {
+                        builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+                        builder.append(Character.forDigit(b & 0xf, 16));
+                }
+                
+                return builder.toString();
+        }
+        
+        /**
+         * returns the hash of the content, followed by the key of its resolver
+         * if it was not parsed with the assets one, see {@link FormSchemaCache}.
+         */
+        public String getHash() {
+                return hash;
+        }
+        
+        /**
+         * returns the name of the "meta" entry of the schema, or null.
+         */
+        public String getTitle() {
+                return title;
+        }
+        
+        public List<WidgetSpec> getWidgets() {
+                return widgets;
+        }
+        
+        /**
+         * returns the problems found by the {@link SchemaValidator}, the types
+         * of the widgets are not checked since they depend on the factories of
+         * each form.
+         */
+        public List<SchemaDiagnostic> getDiagnostics() {
+                return diagnostics;
+        }
+        
+        /**
+         * returns the problems of the schema and the widgets whose type is not
+         * one of the given types, in the order of the widgets.
+         * 
+         * @param types
+         *                - the known widget types
+         */
+        public List<SchemaDiagnostic> getDiagnostics(Collection<String> types) {
+                List<SchemaDiagnostic> unknownTypes = SchemaValidator.validateTypes(widgets, types);
+                
+                if (unknownTypes.isEmpty()) {
+                        return diagnostics;
+                }
+                
+                List<SchemaDiagnostic> all = new ArrayList<SchemaDiagnostic>(diagnostics);
+                all.addAll(unknownTypes);
+                Collections.sort(all, new SchemaValidator.IndexComparison());
+                
+                return all;
+        }
+        
+        /**
+         * returns a rough estimate, in bytes, of the memory held by this
+         * schema.
+         */
+        public long getEstimatedSize() {
+                return estimatedSize;
+        }
+}
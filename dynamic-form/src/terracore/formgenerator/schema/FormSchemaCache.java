@@ -0,0 +1,270 @@
+package terracore.formgenerator.schema;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.WeakHashMap;
+
+import terracore.formgenerator.AssetLoader;
+import android.content.Context;
+
+/**
+ * Process wide cache of parsed schemas, keyed by the hash of their content.
+ * 
+ * The fragments of a schema depend on the resolver it is parsed with. The
+ * schemas parsed with an {@link AssetFragmentResolver}, or without resolver,
+ * are keyed by their hash alone. The schemas parsed with another resolver are
+ * keyed by their hash followed by "@" and a number given to the resolver, so
+ * they are shared only by resolvers that are equal.
+ * 
+ * The cache is bounded by the estimated memory of the schemas it holds, the
+ * least recently used schemas are evicted first, and a schema larger than the
+ * bound is not cached. All methods are thread safe.
+ */
+public class FormSchemaCache {
+        public static final long                            DEFAULT_MAX_SIZE = 1024 * 1024;
+        
+        private static FormSchemaCache                      instance;
+        
+        private final LinkedHashMap<String, FormSchema>     schemas          = new LinkedHashMap<String, FormSchema>(16, 0.75f, true);
+        // -- the content hash of each fragment, by file name
+        private final HashMap<String, String>               fragmentHashes   = new HashMap<String, String>();
+        // -- the key of each resolver other than the assets one
+        private final WeakHashMap<FragmentResolver, String> resolverKeys     = new WeakHashMap<FragmentResolver, String>();
+        private int                                         resolverCount;
+        private long                                        maxSize;
+        private long                                        size;
+        
+        private int                                         hitCount;
+        private int                                         missCount;
+        private int                                         evictionCount;
+        
+        public FormSchemaCache(long maxSize) {
+                this.maxSize = maxSize;
+        }
+        
+        public static synchronized FormSchemaCache getInstance() {
+                if (instance == null) {
+                        instance = new FormSchemaCache(DEFAULT_MAX_SIZE);
+                }
+                
+                return instance;
+        }
+        
+        /**
+         * returns the parsed schema of the json, parsing it only if the same
+         * content is not cached.
+         * 
+         * @param json
+         *                - the raw json data as a String
+         */
+        public FormSchema get(String json) throws IOException {
+                return get(json, null);
+        }
+        
+        /**
+         * returns the parsed schema of the json, parsing it only if the same
+         * content is not cached.
+         * 
+         * @param json
+         *                - the raw json data as a String
+         * @param resolver
+         *                - finds the fragments of the "$ref" entries, may be
+         *                null
+         */
+        public FormSchema get(String json, FragmentResolver resolver) throws IOException {
+                String key = getKey(FormSchema.hash(json), resolver);
+                FormSchema schema = get(key, false);
+                
+                if (schema == null) {
+                        // parsed outside the lock, two threads may parse the same schema once each.
+                        schema = FormSchema.parse(key, json, resolver);
+                        put(schema);
+                }
+                
+                return schema;
+        }
+        
+        /**
+         * returns the parsed schema of a file of the assets folder. The file
+         * is hashed as a stream of bytes, and parsed from a stream if its
+         * content is not cached, so the text of the schema is never held in
+         * memory.
+         * 
+         * @param context
+         * @param filename
+         *                - the path of the schema in the assets folder
+         */
+        public FormSchema get(Context context, String filename) throws IOException {
+                return get(context, filename, new AssetFragmentResolver(context));
+        }
+        
+        /**
+         * returns the parsed schema of a file of the assets folder, with the
+         * fragments found by the given resolver.
+         */
+        public FormSchema get(Context context, String filename, FragmentResolver resolver) throws IOException {
+                String key = getKey(AssetLoader.hash(context, filename), resolver);
+                FormSchema schema = get(key, false);
+                
+                if (schema == null) {
+                        schema = FormSchema.parse(key, AssetLoader.openReader(context, filename), resolver);
+                        put(schema);
+                }
+                
+                return schema;
+        }
+        
+        /**
+         * returns a fragment of the assets folder, see
+         * {@link AssetFragmentResolver}. Assets only change with the
+         * application, so once a fragment has been read it is found by name
+         * without hashing it again.
+         */
+        FormSchema getFragment(Context context, String filename, FragmentResolver resolver) throws IOException {
+                String hash;
+                
+                synchronized (this) {
+                        hash = fragmentHashes.get(filename);
+                }
+                
+                FormSchema schema = hash != null ? get(hash, false) : null;
+                
+                if (schema == null) {
+                        schema = get(context, filename, resolver);
+                        
+                        synchronized (this) {
+                                fragmentHashes.put(filename, schema.getHash());
+                        }
+                }
+                
+                return schema;
+        }
+        
+        /**
+         * returns the key of a schema parsed with the resolver, see
+         * {@link FormSchemaCache}. The schema is created with this key as its
+         * hash.
+         * 
+         * @param hash
+         *                - the hash of the content of the schema
+         * @param resolver
+         *                - may be null
+         */
+        synchronized String getKey(String hash, FragmentResolver resolver) {
+                if (resolver == null || resolver.getClass() == AssetFragmentResolver.class) {
+                        return hash;
+                }
+                
+                String key = resolverKeys.get(resolver);
+                
+                if (key == null) {
+                        key = "@" + (++resolverCount);
+                        resolverKeys.put(resolver, key);
+                }
+                
+                return hash + key;
+        }
+        
+        /**
+         * returns the cached schema with the given content hash, or null.
+         */
+        public FormSchema getByHash(String hash) {
+                return get(hash, true);
+        }
+        
+        synchronized FormSchema get(String hash, boolean peek) {
+                FormSchema schema = schemas.get(hash);
+                
+                if (!peek) {
+                        if (schema != null) {
+                                hitCount++;
+                        }
+                        else {
+                                missCount++;
+                        }
+                }
+                
+                return schema;
+        }
+        
+        /**
+         * Caches a schema. A schema estimated larger than the whole cache is
+         * not cached, it would only evict every other schema and then itself.
+         */
+        public synchronized void put(FormSchema schema) {
+                if (schema.getEstimatedSize() > maxSize) {
+                        return;
+                }
+                
+                FormSchema previous = schemas.put(schema.getHash(), schema);
+                
+                if (previous != null) {
+                        size -= previous.getEstimatedSize();
+                }
+                
+                size += schema.getEstimatedSize();
+                trimToSize(maxSize);
+        }
+        
+        private void trimToSize(long max) {
+                while (size > max && !schemas.isEmpty()) {
+                        Entry<String, FormSchema> eldest = schemas.entrySet().iterator().next();
+                        
+                        schemas.remove(eldest.getKey());
+                        size -= eldest.getValue().getEstimatedSize();
+                        evictionCount++;
+                }
+        }
+        
+        public synchronized void evictAll() {
+                trimToSize(-1);
+        }
+        
+        public synchronized void setMaxSize(long maxSize) {
+                this.maxSize = maxSize;
+                trimToSize(maxSize);
+        }
+        
+        // -----------------------------------------------
+        //
+        // stats
+        //
+        // -----------------------------------------------
+        
+        /**
+         * returns the estimated memory, in bytes, of the cached schemas.
+         */
+        public synchronized long getSize() {
+                return size;
+        }
+        
+        public synchronized long getMaxSize() {
+                return maxSize;
+        }
+        
+        public synchronized int getCount() {
+                return schemas.size();
+        }
+        
+        public synchronized int getHitCount() {
+                return hitCount;
+        }
+        
+        public synchronized int getMissCount() {
+                return missCount;
+        }
+        
+        public synchronized int getEvictionCount() {
+                return evictionCount;
+        }
+        
+        @Override
+        public synchronized String toString() {
+                int accesses = hitCount + missCount;
+                int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+                
+                return "FormSchemaCache[count=" + schemas.size() + ", size=" + size + "/" + maxSize + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + ", hitRate=" + hitPercent + "%]";
+        }
+}
@@ -0,0 +1,21 @@
+package terracore.formgenerator.schema;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Finds the widgets included by the "$ref" entries of a schema, see
+ * {@link SchemaReader}.
+ */
+public interface FragmentResolver {
+        
+        /**
+         * @param ref
+         *                - the value of the "$ref" entry
+         * @return the widgets of the fragment, in order.
+         * @throws IOException
+         *                 if the fragment can't be found or read.
+         */
+        public List<WidgetSpec> resolve(String ref) throws IOException;
+        
+}
@@ -0,0 +1,446 @@
+package terracore.formgenerator.schema;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal pull parser for json streams.
+ * 
+ * The API mirrors android.util.JsonReader, which was added in API 11 and so is
+ * not available on the older platform versions this library supports. Values
+ * are read one token at a time straight from the {@link Reader}, so no document
+ * tree is ever built in memory.
+ * 
+ * Scalars (numbers, booleans) can be read with {@link #nextString()} because
+ * the schemas mix quoted and unquoted values for the same keys.
+ */
+public class JsonPullReader implements Closeable {
+        
+        public enum Token {
+                BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+        }
+        
+        private static final int EMPTY_DOCUMENT    = 0;
+        private static final int NONEMPTY_DOCUMENT = 1;
+        private static final int EMPTY_ARRAY       = 2;
+        private static final int NONEMPTY_ARRAY    = 3;
+        private static final int EMPTY_OBJECT      = 4;
+        private static final int DANGLING_NAME     = 5;
+        private static final int NONEMPTY_OBJECT   = 6;
+        
+        private final Reader     in;
+        private final char[]     buffer            = new char[1024];
+        private int              pos               = 0;
+        private int              limit             = 0;
+        private int              line              = 1;
+        
+        private int[]            stack             = new int[32];
+        private int              stackSize         = 0;
+        
+        private Token            peeked;
+        private String           peekedValue;
+        
+        private final StringBuilder builder        = new StringBuilder();
+        
+        public JsonPullReader(Reader in) {
+                if (in == null) {
+                        throw new NullPointerException("in == null");
+                }
+                
+                this.in = in;
+                push(EMPTY_DOCUMENT);
+        }
+        
+        // -----------------------------------------------
+        //
+        // structure
+        //
+        // -----------------------------------------------
+        
+        public void beginArray() throws IOException {
+                expect(Token.BEGIN_ARRAY);
+                push(EMPTY_ARRAY);
+        }
+        
+        public void endArray() throws IOException {
+                expect(Token.END_ARRAY);
+                stackSize--;
+        }
+        
+        public void beginObject() throws IOException {
+                expect(Token.BEGIN_OBJECT);
+                push(EMPTY_OBJECT);
+        }
+        
+        public void endObject() throws IOException {
+                expect(Token.END_OBJECT);
+                stackSize--;
+        }
+        
+        /**
+         * returns true if the current array or object has another element.
+         */
+        public boolean hasNext() throws IOException {
+                Token token = peek();
+                return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+        }
+        
+        // -----------------------------------------------
+        //
+        // values
+        //
+        // -----------------------------------------------
+        
+        public String nextName() throws IOException {
+                expect(Token.NAME);
+                return consumeValue();
+        }
+        
+        /**
+         * returns the string, number or boolean value of the next token as a
+         * String.
+         */
+        public String nextString() throws IOException {
+                Token token = peek();
+                
+                if (token != Token.STRING && token != Token.NUMBER && token != Token.BOOLEAN) {
+                        throw syntaxError("Expected a string but was " + token);
+                }
+                
+                peeked = null;
+                return consumeValue();
+        }
+        
+        public void nextNull() throws IOException {
+                expect(Token.NULL);
+                peekedValue = null;
+        }
+        
+        /**
+         * returns the next scalar as String, or null for a json null.
+         */
+        public String nextStringOrNull() throws IOException {
+                if (peek() == Token.NULL) {
+                        nextNull();
+                        return null;
+                }
+                
+                return nextString();
+        }
+        
+        /**
+         * Skips the next value, including nested arrays and objects.
+         */
+        public void skipValue() throws IOException {
+                int depth = 0;
+                
+                do {
+                        Token token = peek();
+                        
+                        if (token == Token.BEGIN_ARRAY) {
+                                beginArray();
+                                depth++;
+                        }
+                        else if (token == Token.BEGIN_OBJECT) {
+                                beginObject();
+                                depth++;
+                        }
+                        else if (token == Token.END_ARRAY) {
+                                endArray();
+                                depth--;
+                        }
+                        else if (token == Token.END_OBJECT) {
+                                endObject();
+                                depth--;
+                        }
+                        else if (token == Token.END_DOCUMENT) {
+                                throw syntaxError("Unexpected end of document");
+                        }
+                        else {
+                                peeked = null;
+                                peekedValue = null;
+                        }
+                }
+                while (depth != 0);
+        }
+        
+        public int getLineNumber() {
+                return line;
+        }
+        
+        @Override
+        public void close() throws IOException {
+                peeked = null;
+                stackSize = 0;
+                in.close();
+        }
+        
+        // -----------------------------------------------
+        //
+        // tokenizer
+        //
+        // -----------------------------------------------
+        
+        /**
+         * returns the type of the next token without consuming it.
+         */
+        public Token peek() throws IOException {
+                if (peeked != null) {
+                        return peeked;
+                }
+                
+                int c;
+                
+                switch (stack[stackSize - 1]) {
+                        case EMPTY_DOCUMENT:
+                                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                                return readValue(nextNonWhitespace());
+                        
+                        case NONEMPTY_DOCUMENT:
+                                c = nextNonWhitespace();
+                        
+                                if (c != -1) {
+                                        throw syntaxError("Expected end of document");
+                                }
+                        
+                                return setPeeked(Token.END_DOCUMENT, null);
+                        
+                        case EMPTY_ARRAY:
+                                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                                c = nextNonWhitespace();
+                        
+                                if (c == ']') {
+                                        return setPeeked(Token.END_ARRAY, null);
+                                }
+                        
+                                return readValue(c);
+                        
+                        case NONEMPTY_ARRAY:
+                                c = nextNonWhitespace();
+                        
+                                if (c == ']') {
+                                        return setPeeked(Token.END_ARRAY, null);
+                                }
+                                else if (c != ',') {
+                                        throw syntaxError("Unterminated array");
+                                }
+                        
+                                return readValue(nextNonWhitespace());
+                        
+                        case EMPTY_OBJECT:
+                        case NONEMPTY_OBJECT:
+                                c = nextNonWhitespace();
+                        
+                                if (c == '}') {
+                                        return setPeeked(Token.END_OBJECT, null);
+                                }
+                        
+                                if (stack[stackSize - 1] == NONEMPTY_OBJECT) {
+                                        if (c != ',') {
+                                                throw syntaxError("Unterminated object");
+                                        }
+                                
+                                        c = nextNonWhitespace();
+                                }
+                        
+                                if (c != '"') {
+                                        throw syntaxError("Expected name");
+                                }
+                        
+                                stack[stackSize - 1] = DANGLING_NAME;
+                                return setPeeked(Token.NAME, readQuoted());
+                        
+                        case DANGLING_NAME:
+                                if (nextNonWhitespace() != ':') {
+                                        throw syntaxError("Expected ':'");
+                                }
+                        
+                                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                                return readValue(nextNonWhitespace());
+                        
+                        default:
+                                throw new IllegalStateException("JsonPullReader is closed");
+                }
+        }
+        
+        private Token readValue(int c) throws IOException {
+                switch (c) {
+                        case '{':
+                                return setPeeked(Token.BEGIN_OBJECT, null);
+                        
+                        case '[':
+                                return setPeeked(Token.BEGIN_ARRAY, null);
+                        
+                        case '"':
+                                return setPeeked(Token.STRING, readQuoted());
+                        
+                        case -1:
+                                throw syntaxError("Unexpected end of document");
+                        
+                        default:
+                                String literal = readLiteral((char) c);
+                        
+                                if (literal.equals("true") || literal.equals("false")) {
+                                        return setPeeked(Token.BOOLEAN, literal);
+                                }
+                                else if (literal.equals("null")) {
+                                        return setPeeked(Token.NULL, null);
+                                }
+                                else if (c == '-' || (c >= '0' && c <= '9')) {
+                                        return setPeeked(Token.NUMBER, literal);
+                                }
+                        
+                                throw syntaxError("Unexpected value '" + literal + "'");
+                }
+        }
+        
+        private String readQuoted() throws IOException {
+                builder.setLength(0);
+                
+                while (true) {
+                        int c = read();
+                        
+                        if (c == -1) {
+                                throw syntaxError("Unterminated string");
+                        }
+                        else if (c == '"') {
+                                return builder.toString();
+                        }
+                        else if (c == '\\') {
+                                builder.append(readEscape());
+                        }
+                        else {
+                                if (c == '\n') line++;
+                                builder.append((char) c);
+                        }
+                }
+        }
+        
+        private char readEscape() throws IOException {
+                int c = read();
+                
+                switch (c) {
+                        case 'b':
+                                return '\b';
+                        case 'f':
+                                return '\f';
+                        case 'n':
+                                return '\n';
+                        case 'r':
+                                return '\r';
+                        case 't':
+                                return '\t';
+                        case 'u':
+                                int value = 0;
+                        
+                                for (int i = 0; i < 4; i++) {
+                                        int digit = Character.digit(read(), 16);
+                                
+                                        if (digit == -1) {
+                                                throw syntaxError("Malformed unicode escape");
+                                        }
+                                
+                                        value = (value << 4) + digit;
+                                }
+                        
+                                return (char) value;
+                        case -1:
+                                throw syntaxError("Unterminated escape sequence");
+                        default:
+                                return (char) c;
+                }
+        }
+        
+        private String readLiteral(char first) throws IOException {
+                builder.setLength(0);
+                builder.append(first);
+                
+                while (true) {
+                        int c = read();
+                        
+                        if (c == -1) {
+                                break;
+                        }
+                        
+                        if (c == ',' || c == ']' || c == '}' || c == ':' || c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                                pos--;
+                                break;
+                        }
+                        
+                        builder.append((char) c);
+                }
+                
+                return builder.toString();
+        }
+        
+        private int nextNonWhitespace() throws IOException {
+                while (true) {
+                        int c = read();
+                        
+                        if (c == '\n') {
+                                line++;
+                        }
+                        else if (c != ' ' && c != '\t' && c != '\r') {
+                                return c;
+                        }
+                }
+        }
+        
+        private int read() throws IOException {
+                if (pos == limit) {
+                        limit = in.read(buffer, 0, buffer.length);
+                        pos = 0;
+                        
+                        if (limit <= 0) {
+                                limit = 0;
+                                return -1;
+                        }
+                }
+                
+                return buffer[pos++];
+        }
+        
+        // -----------------------------------------------
+        //
+        // utils
+        //
+        // -----------------------------------------------
+        
+        private Token setPeeked(Token token, String value) {
+                peeked = token;
+                peekedValue = value;
+                return token;
+        }
+        
+        private String consumeValue() {
+                String value = peekedValue;
+                peeked = null;
+                peekedValue = null;
+                return value;
+        }
+        
+        private void expect(Token expected) throws IOException {
+                Token token = peek();
+                
+                if (token != expected) {
+                        throw syntaxError("Expected " + expected + " but was " + token);
+                }
+                
+                peeked = null;
+        }
+        
+        private void push(int scope) {
+                if (stackSize == stack.length) {
+                        int[] newStack = new int[stackSize * 2];
+                        System.arraycopy(stack, 0, newStack, 0, stackSize);
+                        stack = newStack;
+                }
+                
+                stack[stackSize++] = scope;
+        }
+        
+        private IOException syntaxError(String message) {
+                return new IOException(message + " at line " + line);
+        }
+}
@@ -0,0 +1,170 @@
+package terracore.formgenerator.schema;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Compiles widget specs to the binary schema format read by
+ * {@link CompiledSchema}.
+ * 
+ * <pre>
+ * header     magic, version, widget count, string count,
+ *            strings offset, records offset, blocks offset
+ * strings    int offset per string, then (int length, utf-8 bytes) per string
+ * records    RECORD_SIZE bytes per widget: name, type, id, priority, default,
+ *            hint, options block, toggles block, hideOnClick block,
+ *            children block
+ * blocks     options, rules and children lists, referencing the string table
+ * </pre>
+ * 
+ * Every string appears only once in the string table, so option sets shared by
+ * several spinners are stored once. Missing strings and blocks are written as
+ * -1. All values are big-endian ints.
+ */
+public class SchemaCompiler {
+        public static final int           MAGIC       = 0x46534331;                          // "FSC1"
+        public static final int           VERSION     = 1;
+        public static final int           HEADER_SIZE = 7 * 4;
+        public static final int           RECORD_SIZE = 10 * 4;
+        
+        private final Map<String, Integer> stringIds  = new HashMap<String, Integer>();
+        private final List<String>         strings    = new ArrayList<String>();
+        
+        private final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+        private final DataOutputStream      blocks     = new DataOutputStream(blockBytes);
+        
+        /**
+         * Writes the binary form of the specs to the stream. The stream is not
+         * closed.
+         */
+        public static void compile(List<WidgetSpec> specs, OutputStream out) throws IOException {
+                new SchemaCompiler().write(specs, out);
+        }
+        
+        private void write(List<WidgetSpec> specs, OutputStream stream) throws IOException {
+                ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(specs.size() * RECORD_SIZE);
+                DataOutputStream records = new DataOutputStream(recordBytes);
+                
+                for (WidgetSpec spec : specs) {
+                        records.writeInt(stringId(spec.getName()));
+                        records.writeInt(stringId(spec.getType()));
+                        records.writeInt(stringId(spec.getId()));
+                        records.writeInt(spec.getPriority());
+                        records.writeInt(stringId(spec.getDefault()));
+                        records.writeInt(stringId(spec.getHint()));
+                        records.writeInt(spec.hasOptions() ? writeOptions(spec.getOptions(), spec.getOptionLists()) : -1);
+                        records.writeInt(spec.getToggles() != null ? writeListMap(spec.getToggles()) : -1);
+                        records.writeInt(spec.getHideOnClick() != null ? writeListMap(spec.getHideOnClick()) : -1);
+                        records.writeInt(spec.getChildren().isEmpty() ? -1 : writeList(spec.getChildren()));
+                }
+                
+                ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+                DataOutputStream stringData = new DataOutputStream(stringBytes);
+                int[] stringOffsets = new int[strings.size()];
+                
+                for (int i = 0; i < strings.size(); i++) {
+                        byte[] bytes = strings.get(i).getBytes("UTF-8");
+                        
+                        stringOffsets[i] = stringData.size();
+                        stringData.writeInt(bytes.length);
+                        stringData.write(bytes);
+                }
+                
+                int stringsOffset = HEADER_SIZE;
+                int recordsOffset = stringsOffset + strings.size() * 4 + stringData.size();
+                int blocksOffset = recordsOffset + records.size();
+                
+                DataOutputStream out = new DataOutputStream(stream);
+                
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(specs.size());
+                out.writeInt(strings.size());
+                out.writeInt(stringsOffset);
+                out.writeInt(recordsOffset);
+                out.writeInt(blocksOffset);
+                
+                for (int offset : stringOffsets) {
+                        out.writeInt(offset);
+                }
+                
+                stringBytes.writeTo(out);
+                recordBytes.writeTo(out);
+                blockBytes.writeTo(out);
+                
+                out.flush();
+        }
+        
+        // -----------------------------------------------
+        //
+        // blocks
+        //
+        // -----------------------------------------------
+        
+        private int writeOptions(Map<String, String> options, Map<String, List<String>> optionLists) throws IOException {
+                int offset = blocks.size();
+                
+                blocks.writeInt(options.size());
+                
+                for (Entry<String, String> entry : options.entrySet()) {
+                        blocks.writeInt(stringId(entry.getKey()));
+                        blocks.writeInt(stringId(entry.getValue()));
+                }
+                
+                writeListEntries(optionLists);
+                
+                return offset;
+        }
+        
+        private int writeListMap(Map<String, List<String>> map) throws IOException {
+                int offset = blocks.size();
+                writeListEntries(map);
+                return offset;
+        }
+        
+        private void writeListEntries(Map<String, List<String>> map) throws IOException {
+                blocks.writeInt(map.size());
+                
+                for (Entry<String, List<String>> entry : map.entrySet()) {
+                        blocks.writeInt(stringId(entry.getKey()));
+                        writeListValues(entry.getValue());
+                }
+        }
+        
+        private int writeList(List<String> list) throws IOException {
+                int offset = blocks.size();
+                writeListValues(list);
+                return offset;
+        }
+        
+        private void writeListValues(List<String> list) throws IOException {
+                blocks.writeInt(list.size());
+                
+                for (String value : list) {
+                        blocks.writeInt(stringId(value));
+                }
+        }
+        
+        private int stringId(String value) {
+                if (value == null) {
+                        return -1;
+                }
+                
+                Integer id = stringIds.get(value);
+                
+                if (id == null) {
+                        id = strings.size();
+                        strings.add(value);
+                        stringIds.put(value, id);
+                }
+                
+                return id;
+        }
+}
@@ -0,0 +1,62 @@
+package terracore.formgenerator.schema;
+
+/**
+ * A problem found in a schema by the {@link SchemaValidator}.
+ */
+public class SchemaDiagnostic {
+        public enum Severity {
+                /** the form can be created, but may not behave as expected */
+                WARNING,
+                /** the widget can't be created */
+                ERROR
+        }
+        
+        private final Severity severity;
+        private final int      index;
+        private final String   id;
+        private final String   key;
+        private final String   message;
+        
+        /**
+         * @param severity
+         * @param index
+         *                - the position of the widget in the schema
+         * @param id
+         *                - the id of the widget, may be null
+         * @param key
+         *                - the schema key with the problem, like "toggles"
+         * @param message
+         */
+        public SchemaDiagnostic(Severity severity, int index, String id, String key, String message) {
+                this.severity = severity;
+                this.index = index;
+                this.id = id;
+                this.key = key;
+                this.message = message;
+        }
+        
+        public Severity getSeverity() {
+                return severity;
+        }
+        
+        public int getIndex() {
+                return index;
+        }
+        
+        public String getId() {
+                return id;
+        }
+        
+        public String getKey() {
+                return key;
+        }
+        
+        public String getMessage() {
+                return message;
+        }
+        
+        @Override
+        public String toString() {
+                return severity + " widget " + index + (id != null ? " (" + id + ")" : "") + ", " + key + ": " + message;
+        }
+}
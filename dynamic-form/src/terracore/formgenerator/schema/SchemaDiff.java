@@ -0,0 +1,122 @@
+package terracore.formgenerator.schema;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The differences between two versions of a schema, matching the widgets by
+ * id.
+ * 
+ * A widget of the new version is added if the old version has no widget with
+ * its id, changed if it has one with a different spec, and unchanged
+ * otherwise. Widgets without id can't be matched, they are always added and
+ * removed.
+ */
+public class SchemaDiff {
+        private final List<WidgetSpec> added        = new ArrayList<WidgetSpec>();
+        private final List<WidgetSpec> changed      = new ArrayList<WidgetSpec>();
+        private final List<WidgetSpec> unchanged    = new ArrayList<WidgetSpec>();
+        private final List<WidgetSpec> removed      = new ArrayList<WidgetSpec>();
+        
+        private final Set<String>      changedIds   = new HashSet<String>();
+        private final Set<String>      unchangedIds = new HashSet<String>();
+        
+        private SchemaDiff() {}
+        
+        /**
+         * @param oldSpecs
+         *                - the widgets of the current version
+         * @param newSpecs
+         *                - the widgets of the new version
+         */
+        public static SchemaDiff compute(List<WidgetSpec> oldSpecs, List<WidgetSpec> newSpecs) {
+                SchemaDiff diff = new SchemaDiff();
+                Map<String, WidgetSpec> oldById = new HashMap<String, WidgetSpec>(oldSpecs.size() * 2);
+                
+                for (WidgetSpec spec : oldSpecs) {
+                        if (spec.getId() != null) {
+                                oldById.put(spec.getId(), spec);
+                        }
+                }
+                
+                Set<String> newIds = new HashSet<String>();
+                
+                for (WidgetSpec spec : newSpecs) {
+                        String id = spec.getId();
+                        WidgetSpec old = id != null ? oldById.get(id) : null;
+                        
+                        if (id != null) {
+                                newIds.add(id);
+                        }
+                        
+                        if (old == null) {
+                                diff.added.add(spec);
+                        }
+                        else if (old.equals(spec)) {
+                                diff.unchanged.add(spec);
+                                diff.unchangedIds.add(id);
+                        }
+                        else {
+                                diff.changed.add(spec);
+                                diff.changedIds.add(id);
+                        }
+                }
+                
+                for (WidgetSpec spec : oldSpecs) {
+                        if (spec.getId() == null || !newIds.contains(spec.getId())) {
+                                diff.removed.add(spec);
+                        }
+                }
+                
+                return diff;
+        }
+        
+        /**
+         * returns the widgets of the new version that are not in the old one.
+         */
+        public List<WidgetSpec> getAdded() {
+                return added;
+        }
+        
+        /**
+         * returns the widgets of the new version whose spec has changed.
+         */
+        public List<WidgetSpec> getChanged() {
+                return changed;
+        }
+        
+        public List<WidgetSpec> getUnchanged() {
+                return unchanged;
+        }
+        
+        /**
+         * returns the widgets of the old version that are not in the new one.
+         */
+        public List<WidgetSpec> getRemoved() {
+                return removed;
+        }
+        
+        public boolean isChanged(String id) {
+                return changedIds.contains(id);
+        }
+        
+        public boolean isUnchanged(String id) {
+                return unchangedIds.contains(id);
+        }
+        
+        /**
+         * returns true if both versions have the same widgets.
+         */
+        public boolean isEmpty() {
+                return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+        
+        @Override
+        public String toString() {
+                return "SchemaDiff[added=" + added.size() + ", changed=" + changed.size() + ", removed=" + removed.size() + ", unchanged=" + unchanged.size() + "]";
+        }
+}
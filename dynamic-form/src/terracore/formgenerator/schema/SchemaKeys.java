@@ -0,0 +1,37 @@
+package terracore.formgenerator.schema;
+
+/**
+ * The keys and the widget types of the json schemas. They are plain strings,
+ * so the build time tools can read the schemas without the Android classes;
+ * the FormActivity has the same constants.
+ */
+public final class SchemaKeys {
+        public static final String SCHEMA_KEY_ID                    = "id";
+        public static final String SCHEMA_KEY_NAME                  = "name";
+        public static final String SCHEMA_KEY_TYPE                  = "type";
+        
+        public static final String SCHEMA_KEY_CHECKBOX              = "Checkbox";
+        public static final String SCHEMA_KEY_SPINNER               = "Spinner";
+        public static final String SCHEMA_KEY_INTEGER_TEXTVIEW      = "IntegerTextView";
+        public static final String SCHEMA_KEY_STRING_TEXTVIEW       = "StringTextView";
+        public static final String SCHEMA_KEY_AUTOCOMPLETE_TEXTVIEW = "AutoCompleteTextView";
+        public static final String SCHEMA_KEY_LABEL                 = "Label";
+        public static final String SCHEMA_KEY_ACCORDION             = "Accordion";
+        public static final String SCHEMA_KEY_CAMERA                = "Camera";
+        public static final String SCHEMA_KEY_REPEATING_GROUP       = "RepeatingGroup";
+        public static final String SCHEMA_KEY_DATABASE_GRID         = "DatabaseGrid";
+        
+        public static final String SCHEMA_KEY_PRIORITY              = "priority";
+        public static final String SCHEMA_KEY_TOGGLES               = "toggles";
+        public static final String SCHEMA_KEY_ACTIONS               = "hideOnClick";
+        public static final String SCHEMA_KEY_DEFAULT               = "default";
+        public static final String SCHEMA_KEY_MODIFIERS             = "modifiers";
+        public static final String SCHEMA_KEY_OPTIONS               = "options";
+        public static final String SCHEMA_KEY_ACCORDION_CHILDREN    = "children";
+        public static final String SCHEMA_KEY_META                  = "meta";
+        public static final String SCHEMA_KEY_HINT                  = "hint";
+        public static final String SCHEMA_KEY_REF                   = "$ref";
+        public static final String SCHEMA_KEY_TEMPLATE              = "template";
+        
+        private SchemaKeys() {}
+}
@@ -0,0 +1,363 @@
+package terracore.formgenerator.schema;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import terracore.formgenerator.schema.JsonPullReader.Token;
+
+/**
+ * Streaming reader of form schemas. Makes a single pass over the json and
+ * emits one {@link WidgetSpec} per field, without building the whole document
+ * in memory.
+ * 
+ * Two layouts are accepted:
+ * 
+ * <pre>
+ * [ { "name": "Uso Principal", "type": "Spinner", "id": "primary_use", ... }, ... ]
+ * 
+ * { "primary_use": { "type": "Spinner", "id": "primary_use", ... }, ... }
+ * </pre>
+ * 
+ * In the keyed layout the key is used as the widget name when the entry has no
+ * "name" of its own. The "meta" entry is not returned as a widget, its name is
+ * available through {@link #getTitle()}.
+ * 
+ * An entry with a "$ref" includes the widgets of a fragment, found by the
+ * {@link FragmentResolver} of the reader:
+ * 
+ * <pre>
+ * { "$ref": "fragments/infrastructure.json" }
+ * { "$ref": "fragments/infrastructure.json#pavimentation" }
+ * </pre>
+ */
+public class SchemaReader implements Closeable {
+        private final JsonPullReader         reader;
+        private final FragmentResolver       resolver;
+        private final LinkedList<WidgetSpec> included = new LinkedList<WidgetSpec>();
+        
+        private boolean                      started;
+        private boolean                      keyedLayout;
+        private WidgetSpec                   next;
+        private String                       title;
+        
+        /**
+         * Creates a reader for schemas without "$ref" entries.
+         */
+        public SchemaReader(Reader in) {
+                this(in, null);
+        }
+        
+        /**
+         * @param in
+         * @param resolver
+         *                - finds the fragments of the "$ref" entries, may be
+         *                null if the schema has none
+         */
+        public SchemaReader(Reader in, FragmentResolver resolver) {
+                this.reader = new JsonPullReader(in);
+                this.resolver = resolver;
+        }
+        
+        /**
+         * Reads all the widget specs of the schema.
+         */
+        public static List<WidgetSpec> readAll(Reader in) throws IOException {
+                return readAll(in, null);
+        }
+        
+        /**
+         * Reads all the widget specs of the schema, including the widgets of
+         * its fragments.
+         */
+        public static List<WidgetSpec> readAll(Reader in, FragmentResolver resolver) throws IOException {
+                List<WidgetSpec> specs = new ArrayList<WidgetSpec>();
+                SchemaReader schemaReader = new SchemaReader(in, resolver);
+                
+                try {
+                        while (schemaReader.hasNext()) {
+                                specs.add(schemaReader.next());
+                        }
+                }
+                finally {
+                        schemaReader.close();
+                }
+                
+                return specs;
+        }
+        
+        public boolean hasNext() throws IOException {
+                if (next == null) {
+                        next = readNextWidget();
+                }
+                
+                return next != null;
+        }
+        
+        public WidgetSpec next() throws IOException {
+                if (!hasNext()) {
+                        throw new IllegalStateException("No more widgets in schema");
+                }
+                
+                WidgetSpec spec = next;
+                next = null;
+                return spec;
+        }
+        
+        /**
+         * returns the name of the "meta" entry, once it has been read.
+         */
+        public String getTitle() {
+                return title;
+        }
+        
+        @Override
+        public void close() throws IOException {
+                reader.close();
+        }
+        
+        // -----------------------------------------------
+        //
+        // parsing
+        //
+        // -----------------------------------------------
+        
+        private WidgetSpec readNextWidget() throws IOException {
+                if (!included.isEmpty()) {
+                        return included.removeFirst();
+                }
+                
+                if (!started) {
+                        started = true;
+                        keyedLayout = reader.peek() == Token.BEGIN_OBJECT;
+                        
+                        if (keyedLayout) {
+                                reader.beginObject();
+                        }
+                        else {
+                                reader.beginArray();
+                        }
+                }
+                
+                while (reader.hasNext()) {
+                        String key = keyedLayout ? reader.nextName() : null;
+                        
+                        if (reader.peek() != Token.BEGIN_OBJECT) {
+                                reader.skipValue();
+                                continue;
+                        }
+                        
+                        WidgetSpec spec = readWidget(key);
+                        
+                        if (spec == null) {
+                                // -- a "$ref" entry, its widgets are now in the included list
+                                if (!included.isEmpty()) {
+                                        return included.removeFirst();
+                                }
+                        }
+                        else if (isMeta(spec)) {
+                                title = spec.getName();
+                        }
+                        else {
+                                return spec;
+                        }
+                }
+                
+                return null;
+        }
+        
+        private WidgetSpec readWidget(String key) throws IOException {
+                String name = key;
+                String type = null;
+                String id = null;
+                int priority = 0;
+                String defaultValue = null;
+                String hint = null;
+                Map<String, String> options = null;
+                Map<String, List<String>> optionLists = null;
+                Map<String, List<String>> toggles = null;
+                Map<String, List<String>> hideOnClick = null;
+                List<String> children = null;
+                String ref = null;
+                
+                reader.beginObject();
+                
+                while (reader.hasNext()) {
+                        String property = reader.nextName();
+                        
+                        if (property.equals(SchemaKeys.SCHEMA_KEY_NAME)) {
+                                name = reader.nextStringOrNull();
+                        }
+                        else if (property.equals(SchemaKeys.SCHEMA_KEY_TYPE)) {
+                                type = reader.nextString().intern();
+                        }
+                        else if (property.equals(SchemaKeys.SCHEMA_KEY_ID)) {
+                                id = reader.nextString();
+                        }
+                        else if (property.equals(SchemaKeys.SCHEMA_KEY_PRIORITY)) {
+                                priority = parseInt(reader.nextString());
+                        }
+                        else if (property.equals(SchemaKeys.SCHEMA_KEY_DEFAULT)) {
+                                defaultValue = reader.nextStringOrNull();
+                        }
+                        else if (property.equals(SchemaKeys.SCHEMA_KEY_HINT)) {
+                                hint = reader.nextStringOrNull();
+                        }
+                        else if (property.equals(SchemaKeys.SCHEMA_KEY_OPTIONS) && reader.peek() == Token.BEGIN_OBJECT) {
+                                options = new LinkedHashMap<String, String>();
+                                optionLists = new LinkedHashMap<String, List<String>>();
+                                readOptions(options, optionLists);
+                        }
+                        else if (property.equals(SchemaKeys.SCHEMA_KEY_TOGGLES) && reader.peek() == Token.BEGIN_OBJECT) {
+                                toggles = readListMap();
+                        }
+                        else if (property.equals(SchemaKeys.SCHEMA_KEY_ACTIONS) && reader.peek() == Token.BEGIN_OBJECT) {
+                                hideOnClick = readListMap();
+                        }
+                        else if (property.equals(SchemaKeys.SCHEMA_KEY_ACCORDION_CHILDREN) && reader.peek() == Token.BEGIN_ARRAY) {
+                                children = readList();
+                        }
+                        else if (property.equals(SchemaKeys.SCHEMA_KEY_REF)) {
+                                ref = reader.nextStringOrNull();
+                        }
+                        else {
+                                reader.skipValue();
+                        }
+                }
+                
+                reader.endObject();
+                
+                if (ref != null) {
+                        include(ref);
+                        return null;
+                }
+                
+                return new WidgetSpec(name, type, id, priority, defaultValue, hint, options, optionLists, toggles, hideOnClick, children);
+        }
+        
+        /**
+         * adds the widgets of a fragment to the included list, the other keys
+         * of a "$ref" entry are ignored.
+         */
+        private void include(String ref) throws IOException {
+                if (resolver == null) {
+                        throw new IOException("Can't include " + ref + ", the schema has no fragment resolver at line " + reader.getLineNumber());
+                }
+                
+                included.addAll(resolver.resolve(ref));
+        }
+        
+        /**
+         * reads an "options" object, scalar values go to options and arrays go
+         * to optionLists.
+         */
+        private void readOptions(
+                                 Map<String, String> options,
+                                 Map<String, List<String>> optionLists) throws IOException {
+                reader.beginObject();
+                
+                while (reader.hasNext()) {
+                        String key = reader.nextName();
+                        Token token = reader.peek();
+                        
+                        if (token == Token.BEGIN_ARRAY) {
+                                optionLists.put(key, readList());
+                        }
+                        else if (token == Token.BEGIN_OBJECT || token == Token.NULL) {
+                                reader.skipValue();
+                        }
+                        else {
+                                options.put(key, reader.nextString());
+                        }
+                }
+                
+                reader.endObject();
+        }
+        
+        /**
+         * reads an object whose values are arrays of strings, like "toggles"
+         * and "hideOnClick".
+         */
+        private Map<String, List<String>> readListMap() throws IOException {
+                Map<String, List<String>> map = new LinkedHashMap<String, List<String>>();
+                
+                reader.beginObject();
+                
+                while (reader.hasNext()) {
+                        String key = reader.nextName();
+                        
+                        if (reader.peek() == Token.BEGIN_ARRAY) {
+                                map.put(key, readList());
+                        }
+                        else {
+                                reader.skipValue();
+                        }
+                }
+                
+                reader.endObject();
+                
+                return map;
+        }
+        
+        private List<String> readList() throws IOException {
+                List<String> list = new ArrayList<String>();
+                
+                reader.beginArray();
+                
+                while (reader.hasNext()) {
+                        Token token = reader.peek();
+                        
+                        if (token == Token.BEGIN_ARRAY || token == Token.BEGIN_OBJECT || token == Token.NULL) {
+                                reader.skipValue();
+                        }
+                        else {
+                                list.add(reader.nextString());
+                        }
+                }
+                
+                reader.endArray();
+                
+                return list;
+        }
+        
+        private boolean isMeta(WidgetSpec spec) {
+                return SchemaKeys.SCHEMA_KEY_META.equals(spec.getType()) || SchemaKeys.SCHEMA_KEY_META.equals(spec.getName());
+        }
+        
+        /**
+         * parses an integer without throwing, any other value is read as 0.
+         */
+        static int parseInt(String value) {
+                value = value.trim();
+                
+                int length = value.length();
+                boolean negative = length > 0 && value.charAt(0) == '-';
+                int start = negative || (length > 0 && value.charAt(0) == '+') ? 1 : 0;
+                long result = 0;
+                
+                if (start == length || length - start > 10) {
+                        return 0;
+                }
+                
+                for (int i = start; i < length; i++) {
+                        char c = value.charAt(i);
+                        
+                        if (c < '0' || c > '9') {
+                                return 0;
+                        }
+                        
+                        result = result * 10 + (c - '0');
+                }
+                
+                if (negative) {
+                        result = -result;
+                }
+                
+                return result < Integer.MIN_VALUE || result > Integer.MAX_VALUE ? 0 : (int) result;
+        }
+}
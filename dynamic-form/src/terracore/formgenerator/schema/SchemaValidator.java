@@ -0,0 +1,138 @@
+package terracore.formgenerator.schema;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import terracore.formgenerator.schema.SchemaDiagnostic.Severity;
+
+/**
+ * Checks the widget specs of a schema: missing and duplicated ids, unknown
+ * types, spinners without options, and "toggles", "hideOnClick" and "children"
+ * referring to ids that are not in the schema.
+ * 
+ * The validator never throws, every problem is returned as a
+ * {@link SchemaDiagnostic}.
+ */
+public class SchemaValidator {
+        
+        /**
+         * returns the problems of the schema, in the order of the widgets.
+         * 
+         * @param specs
+         * @param types
+         *                - the known widget types, or null to accept any type
+         */
+        public static List<SchemaDiagnostic> validate(List<WidgetSpec> specs, Collection<String> types) {
+                List<SchemaDiagnostic> diagnostics = new ArrayList<SchemaDiagnostic>();
+                Map<String, Integer> ids = new HashMap<String, Integer>(specs.size() * 2);
+                
+                for (int i = 0; i < specs.size(); i++) {
+                        WidgetSpec spec = specs.get(i);
+                        String id = spec.getId();
+                        
+                        if (id == null) {
+                                diagnostics.add(new SchemaDiagnostic(Severity.WARNING, i, null, SchemaKeys.SCHEMA_KEY_ID, "missing id"));
+                        }
+                        else {
+                                Integer previous = ids.put(id, i);
+                                
+                                if (previous != null) {
+                                        diagnostics.add(new SchemaDiagnostic(Severity.ERROR, i, id, SchemaKeys.SCHEMA_KEY_ID, "duplicated id, already used by widget " + previous));
+                                }
+                        }
+                        
+                        String type = spec.getType();
+                        
+                        if (type == null) {
+                                diagnostics.add(new SchemaDiagnostic(Severity.ERROR, i, id, SchemaKeys.SCHEMA_KEY_TYPE, "missing type"));
+                        }
+                        else if (types != null && !types.contains(type)) {
+                                diagnostics.add(new SchemaDiagnostic(Severity.ERROR, i, id, SchemaKeys.SCHEMA_KEY_TYPE, "unknown type " + type));
+                        }
+                        else if (type.equals(SchemaKeys.SCHEMA_KEY_SPINNER) && !spec.hasOptions()) {
+                                diagnostics.add(new SchemaDiagnostic(Severity.ERROR, i, id, SchemaKeys.SCHEMA_KEY_OPTIONS, "a Spinner needs options"));
+                        }
+                }
+                
+                for (int i = 0; i < specs.size(); i++) {
+                        WidgetSpec spec = specs.get(i);
+                        
+                        checkReferences(diagnostics, ids, i, spec, SchemaKeys.SCHEMA_KEY_TOGGLES, spec.getToggles());
+                        checkReferences(diagnostics, ids, i, spec, SchemaKeys.SCHEMA_KEY_ACTIONS, spec.getHideOnClick());
+                        checkReferences(diagnostics, ids, i, spec, SchemaKeys.SCHEMA_KEY_ACCORDION_CHILDREN, spec.getChildren());
+                }
+                
+                if (diagnostics.isEmpty()) {
+                        return Collections.emptyList();
+                }
+                
+                Collections.sort(diagnostics, new IndexComparison());
+                
+                return diagnostics;
+        }
+        
+        /**
+         * returns the widgets whose type is not one of the known types, the
+         * check left out by {@link #validate(List, Collection)} when it is
+         * given no types.
+         */
+        public static List<SchemaDiagnostic> validateTypes(List<WidgetSpec> specs, Collection<String> types) {
+                List<SchemaDiagnostic> diagnostics = null;
+                
+                for (int i = 0; i < specs.size(); i++) {
+                        String type = specs.get(i).getType();
+                        
+                        if (type != null && !types.contains(type)) {
+                                if (diagnostics == null) {
+                                        diagnostics = new ArrayList<SchemaDiagnostic>();
+                                }
+                                
+                                diagnostics.add(new SchemaDiagnostic(Severity.ERROR, i, specs.get(i).getId(), SchemaKeys.SCHEMA_KEY_TYPE, "unknown type " + type));
+                        }
+                }
+                
+                return diagnostics != null ? diagnostics : Collections.<SchemaDiagnostic> emptyList();
+        }
+        
+        private static void checkReferences(
+                                            List<SchemaDiagnostic> diagnostics,
+                                            Map<String, Integer> ids,
+                                            int index,
+                                            WidgetSpec spec,
+                                            String key,
+                                            Map<String, List<String>> references) {
+                if (references != null) {
+                        for (List<String> list : references.values()) {
+                                checkReferences(diagnostics, ids, index, spec, key, list);
+                        }
+                }
+        }
+        
+        private static void checkReferences(
+                                            List<SchemaDiagnostic> diagnostics,
+                                            Map<String, Integer> ids,
+                                            int index,
+                                            WidgetSpec spec,
+                                            String key,
+                                            List<String> references) {
+                for (String reference : references) {
+                        if (!ids.containsKey(reference)) {
+                                diagnostics.add(new SchemaDiagnostic(Severity.WARNING, index, spec.getId(), key, "unknown widget " + reference));
+                        }
+                }
+        }
+        
+        /**
+         * keeps the diagnostics of each widget together, the sort is stable.
+         */
+        static class IndexComparison implements Comparator<SchemaDiagnostic> {
+                public int compare(SchemaDiagnostic item1, SchemaDiagnostic item2) {
+                        return item1.getIndex() < item2.getIndex() ? -1 : (item1.getIndex() == item2.getIndex() ? 0 : 1);
+                }
+        }
+}
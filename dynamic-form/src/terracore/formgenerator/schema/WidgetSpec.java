@@ -0,0 +1,220 @@
+package terracore.formgenerator.schema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Description of one field of the form, as read from the json schema.
+ * 
+ * A spec holds only plain data, the {@link terracore.formgenerator.FormWidget}
+ * is created from it by the FormActivity. Specs are immutable, so the same
+ * instance can be shared by every form created from a schema.
+ */
+public class WidgetSpec {
+        private final String                    name;
+        private final String                    type;
+        private final String                    id;
+        private final int                       priority;
+        private final String                    defaultValue;
+        private final String                    hint;
+        
+        private final Map<String, String>       options;
+        private final Map<String, List<String>> optionLists;
+        private final Map<String, List<String>> toggles;
+        private final Map<String, List<String>> hideOnClick;
+        private final List<String>              children;
+        
+        public WidgetSpec(
+                          String name,
+                          String type,
+                          String id,
+                          int priority,
+                          String defaultValue,
+                          String hint,
+                          Map<String, String> options,
+                          Map<String, List<String>> optionLists,
+                          Map<String, List<String>> toggles,
+                          Map<String, List<String>> hideOnClick,
+                          List<String> children) {
+                this.name = name;
+                this.type = type;
+                this.id = id;
+                this.priority = priority;
+                this.defaultValue = defaultValue;
+                this.hint = hint;
+                this.options = options == null ? null : Collections.unmodifiableMap(new LinkedHashMap<String, String>(options));
+                this.optionLists = immutable(optionLists);
+                this.toggles = immutable(toggles);
+                this.hideOnClick = immutable(hideOnClick);
+                this.children = children == null ? null : Collections.unmodifiableList(new ArrayList<String>(children));
+        }
+        
+        private static Map<String, List<String>> immutable(Map<String, List<String>> map) {
+                if (map == null) {
+                        return null;
+                }
+                
+                Map<String, List<String>> copy = new LinkedHashMap<String, List<String>>();
+                
+                for (Entry<String, List<String>> entry : map.entrySet()) {
+                        copy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<String>(entry.getValue())));
+                }
+                
+                return Collections.unmodifiableMap(copy);
+        }
+        
+        public String getName() {
+                return name;
+        }
+        
+        public String getType() {
+                return type;
+        }
+        
+        public String getId() {
+                return id;
+        }
+        
+        public int getPriority() {
+                return priority;
+        }
+        
+        public String getDefault() {
+                return defaultValue;
+        }
+        
+        public String getHint() {
+                return hint;
+        }
+        
+        /**
+         * returns true if the schema declared an "options" object for this
+         * widget.
+         */
+        public boolean hasOptions() {
+                return options != null || optionLists != null;
+        }
+        
+        /**
+         * returns the scalar entries of "options", like the key/label pairs of
+         * a Spinner.
+         */
+        public Map<String, String> getOptions() {
+                if (options == null) return Collections.emptyMap();
+                return options;
+        }
+        
+        /**
+         * returns the array entries of "options", like the database settings
+         * of an AutoCompleteTextView.
+         */
+        public Map<String, List<String>> getOptionLists() {
+                if (optionLists == null) return Collections.emptyMap();
+                return optionLists;
+        }
+        
+        /**
+         * returns the "toggles" map, or null if the widget has none.
+         */
+        public Map<String, List<String>> getToggles() {
+                return toggles;
+        }
+        
+        /**
+         * returns the "hideOnClick" map, or null if the widget has none.
+         */
+        public Map<String, List<String>> getHideOnClick() {
+                return hideOnClick;
+        }
+        
+        public List<String> getChildren() {
+                if (children == null) return Collections.emptyList();
+                return children;
+        }
+        
+        /**
+         * returns a rough estimate, in bytes, of the memory held by this spec.
+         */
+        public long estimateSize() {
+                long size = 64 + sizeOf(name) + sizeOf(type) + sizeOf(id) + sizeOf(defaultValue) + sizeOf(hint);
+                
+                if (options != null) {
+                        for (Entry<String, String> entry : options.entrySet()) {
+                                size += 32 + sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+                        }
+                }
+                
+                size += sizeOf(optionLists) + sizeOf(toggles) + sizeOf(hideOnClick) + sizeOf(children);
+                
+                return size;
+        }
+        
+        private static long sizeOf(String value) {
+                return value == null ? 0 : 40 + 2 * value.length();
+        }
+        
+        private static long sizeOf(List<String> list) {
+                long size = 0;
+                
+                if (list != null) {
+                        size += 32;
+                        
+                        for (String value : list) {
+                                size += 4 + sizeOf(value);
+                        }
+                }
+                
+                return size;
+        }
+        
+        private static long sizeOf(Map<String, List<String>> map) {
+                long size = 0;
+                
+                if (map != null) {
+                        for (Entry<String, List<String>> entry : map.entrySet()) {
+                                size += 32 + sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+                        }
+                }
+                
+                return size;
+        }
+        
+        /**
+         * two specs are equal if every key of the schema has the same value.
+         */
+        @Override
+        public boolean equals(Object object) {
+                if (object == this) {
+                        return true;
+                }
+                
+                if (!(object instanceof WidgetSpec)) {
+                        return false;
+                }
+                
+                WidgetSpec other = (WidgetSpec) object;
+                
+                return priority == other.priority && equal(id, other.id) && equal(type, other.type) && equal(name, other.name) && equal(defaultValue, other.defaultValue) && equal(hint, other.hint) && equal(options, other.options) && equal(optionLists, other.optionLists) && equal(toggles, other.toggles) && equal(hideOnClick, other.hideOnClick) && equal(children, other.children);
+        }
+        
+        @Override
+        public int hashCode() {
+                int hash = id != null ? id.hashCode() : 0;
+                hash = 31 * hash + (type != null ? type.hashCode() : 0);
+                hash = 31 * hash + (name != null ? name.hashCode() : 0);
+                return 31 * hash + priority;
+        }
+        
+        private static boolean equal(Object value1, Object value2) {
+                return value1 == null ? value2 == null : value1.equals(value2);
+        }
+        
+        @Override
+        public String toString() {
+                return type + " " + id + " (" + name + ")";
+        }
+}
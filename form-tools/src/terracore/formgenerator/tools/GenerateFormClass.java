@@ -0,0 +1,52 @@
+package terracore.formgenerator.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import terracore.formgenerator.schema.FileFragmentResolver;
+import terracore.formgenerator.schema.FormClassGenerator;
+
+/**
+ * Writes the class of a schema, see {@link FormClassGenerator}:
+ * 
+ * <pre>
+ * java terracore.formgenerator.tools.GenerateFormClass assets bauru.json gen com.example.forms.BauruForm
+ * </pre>
+ * 
+ * writes gen/com/example/forms/BauruForm.java. The "$ref" entries are resolved
+ * against the directory given as first argument.
+ */
+public class GenerateFormClass {
+        
+        /**
+         * @param args
+         *                - the directory of the schemas, the schema, the
+         *                source directory to write to and the qualified name
+         *                of the class
+         */
+        public static void main(String[] args) throws IOException {
+                if (args.length != 4) {
+                        System.err.println("usage: GenerateFormClass <directory> <schema> <source directory> <class>");
+                        System.exit(1);
+                }
+                
+                File directory = new File(args[0]);
+                String json = WriteFormCatalog.readFile(new File(directory, args[1]));
+                FormClassGenerator generator = new FormClassGenerator(args[3], args[1], json, new FileFragmentResolver(directory));
+                
+                File file = new File(args[2], args[3].replace('.', File.separatorChar) + ".java");
+                file.getParentFile().mkdirs();
+                
+                PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+                
+                try {
+                        generator.write(out);
+                }
+                finally {
+                        out.close();
+                }
+        }
+}
@@ -0,0 +1,75 @@
+package terracore.formgenerator.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import terracore.formgenerator.schema.FileFragmentResolver;
+import terracore.formgenerator.schema.FormCatalogWriter;
+
+/**
+ * Bundles schemas in a catalog, see {@link FormCatalogWriter}:
+ * 
+ * <pre>
+ * java terracore.formgenerator.tools.WriteFormCatalog assets/forms.catalog assets 3 bauru.json camera.json
+ * </pre>
+ * 
+ * writes the schemas, named after their file, to the catalog, as version 3 of
+ * the forms. The "$ref" entries are resolved against the directory given as
+ * second argument.
+ */
+public class WriteFormCatalog {
+        
+        /**
+         * @param args
+         *                - the catalog to write, the directory of the schemas,
+         *                the version of the schemas, then the schema files
+         */
+        public static void main(String[] args) throws IOException {
+                if (args.length < 4) {
+                        System.err.println("usage: WriteFormCatalog <catalog> <directory> <version> <schema>...");
+                        System.exit(1);
+                }
+                
+                File directory = new File(args[1]);
+                int version = Integer.parseInt(args[2]);
+                FormCatalogWriter writer = new FormCatalogWriter(new FileFragmentResolver(directory));
+                
+                for (int i = 3; i < args.length; i++) {
+                        writer.add(args[i], version, readFile(new File(directory, args[i])));
+                }
+                
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(args[0]));
+                
+                try {
+                        writer.write(out);
+                }
+                finally {
+                        out.close();
+                }
+        }
+        
+        static String readFile(File file) throws IOException {
+                InputStream in = new FileInputStream(file);
+                
+                try {
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) file.length());
+                        byte[] buffer = new byte[8 * 1024];
+                        int count;
+                        
+                        while ((count = in.read(buffer)) != -1) {
+                                bytes.write(buffer, 0, count);
+                        }
+                        
+                        return bytes.toString("UTF-8");
+                }
+                finally {
+                        in.close();
+                }
+        }
+}
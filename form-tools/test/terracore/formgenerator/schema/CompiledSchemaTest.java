@@ -0,0 +1,88 @@
+package terracore.formgenerator.schema;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Compiles schemas with the {@link SchemaCompiler} and checks that the
+ * {@link CompiledSchema} returns the specs read by the {@link SchemaReader}.
+ * CompiledSchema uses android classes, so this test needs the android.jar of
+ * the SDK, see the "test" target of build.xml. The schemas of the assets are
+ * found with the "assets.dir" system property.
+ */
+public class CompiledSchemaTest extends TestCase {
+        
+        public static void main(String[] args) {
+                run(new CompiledSchemaTest());
+        }
+        
+        private static CompiledSchema compile(List<WidgetSpec> specs) throws IOException {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                SchemaCompiler.compile(specs, out);
+                return new CompiledSchema(ByteBuffer.wrap(out.toByteArray()));
+        }
+        
+        /**
+         * compares every spec, and the columns read without decoding the
+         * record.
+         */
+        private static void assertSameSpecs(List<WidgetSpec> expected, CompiledSchema compiled) {
+                assertEquals(expected.size(), compiled.size());
+                
+                for (int i = 0; i < expected.size(); i++) {
+                        WidgetSpec spec = expected.get(i);
+                        
+                        assertEquals(spec.getType(), compiled.getType(i));
+                        assertEquals(spec.getId(), compiled.getId(i));
+                        assertEquals(spec.getPriority(), compiled.getPriority(i));
+                        assertEquals(spec, compiled.get(i));
+                        assertEquals(spec.getOptions(), compiled.get(i).getOptions());
+                        assertEquals(spec.getOptionLists(), compiled.get(i).getOptionLists());
+                        assertEquals(spec.getChildren(), compiled.get(i).getChildren());
+                        assertTrue(compiled.get(i) == compiled.get(i), "the spec " + i + " is decoded once");
+                }
+        }
+        
+        public void testRoundTrip() throws IOException {
+                List<WidgetSpec> specs = SchemaReader.readAll(new StringReader("[ { \"name\": \"Uso \u00e9 \ud83d\ude00\", \"type\": \"Spinner\", \"id\": \"use\", \"priority\": -3,"
+                                + " \"default\": \"2\", \"hint\": \"\", \"options\": { \"1\": \"Casa\", \"2\": \"Casa\", \"db_name\": [ \"tasks.db\" ], \"empty\": [] },"
+                                + " \"hideOnClick\": { \"1\": [ \"shop\", \"stock\" ] } },"
+                                + " { \"type\": \"CheckBox\", \"id\": \"shop\", \"toggles\": { \"1\": [ \"stock\" ], \"0\": [] } },"
+                                + " { \"name\": \"Sec\u00e7\u00e3o\", \"type\": \"Accordion\", \"id\": \"section\", \"children\": [ \"shop\", \"use\" ] },"
+                                + " { \"type\": \"Label\" },"
+                                + " { } ]"));
+                
+                assertSameSpecs(specs, compile(specs));
+        }
+        
+        public void testEmptySchema() throws IOException {
+                assertEquals(0, compile(SchemaReader.readAll(new StringReader("[]"))).size());
+        }
+        
+        public void testAssets() throws IOException {
+                File directory = new File(System.getProperty("assets.dir", "../dynamic-form/assets"));
+                
+                for (String name : new String[] { "bauru.json", "camera.json" }) {
+                        List<WidgetSpec> specs = SchemaReader.readAll(new InputStreamReader(new FileInputStream(new File(directory, name)), "UTF-8"), new FileFragmentResolver(directory));
+                        
+                        assertTrue(!specs.isEmpty(), name + " has widgets");
+                        assertSameSpecs(specs, compile(specs));
+                }
+        }
+        
+        public void testNotACompiledSchema() {
+                try {
+                        new CompiledSchema(ByteBuffer.wrap(new byte[SchemaCompiler.HEADER_SIZE]));
+                        fail("read a compiled schema without the magic number");
+                }
+                catch (IOException e) {
+                        // -- expected
+                }
+        }
+}
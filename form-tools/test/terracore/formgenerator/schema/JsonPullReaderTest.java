@@ -0,0 +1,216 @@
+package terracore.formgenerator.schema;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+
+import terracore.formgenerator.schema.JsonPullReader.Token;
+
+public class JsonPullReaderTest extends TestCase {
+        
+        public static void main(String[] args) {
+                run(new JsonPullReaderTest());
+        }
+        
+        private static JsonPullReader reader(String json) {
+                return new JsonPullReader(new StringReader(json));
+        }
+        
+        private static String readString(String json) throws IOException {
+                JsonPullReader reader = reader(json);
+                String value = reader.nextString();
+                assertEquals(Token.END_DOCUMENT, reader.peek());
+                return value;
+        }
+        
+        /**
+         * reads the json and expects it to be rejected.
+         */
+        private static void assertMalformed(String json) {
+                JsonPullReader reader = reader(json);
+                
+                try {
+                        while (reader.peek() != Token.END_DOCUMENT) {
+                                reader.skipValue();
+                        }
+                }
+                catch (IOException e) {
+                        return;
+                }
+                
+                fail("accepted " + json);
+        }
+        
+        // -----------------------------------------------
+        //
+        // strings
+        //
+        // -----------------------------------------------
+        
+        public void testEscapes() throws IOException {
+                assertEquals("a\"b\\c/d\b\f\n\r\t", readString("\"a\\\"b\\\\c\\/d\\b\\f\\n\\r\\t\""));
+        }
+        
+        public void testUnicodeEscape() throws IOException {
+                assertEquals("S\u00e3o Jos\u00e9", readString("\"S\\u00e3o Jos\\u00E9\""));
+        }
+        
+        public void testEscapedSurrogatePair() throws IOException {
+                String value = readString("\"\\ud83d\\ude00\"");
+                
+                assertEquals(2, value.length());
+                assertEquals(0x1F600, value.codePointAt(0));
+        }
+        
+        /**
+         * a character outside of the BMP, read from UTF-8 bytes, with its
+         * surrogates on both sides of the end of the buffer of the reader.
+         */
+        public void testSurrogatePairAcrossBuffer() throws IOException {
+                StringBuilder padding = new StringBuilder();
+                
+                for (int i = 0; i < 1022; i++) {
+                        padding.append('a');
+                }
+                
+                String json = "\"" + padding + "\ud83d\ude00\"";
+                JsonPullReader reader = new JsonPullReader(new InputStreamReader(new ByteArrayInputStream(json.getBytes("UTF-8")), "UTF-8"));
+                
+                assertEquals(padding + "\ud83d\ude00", reader.nextString());
+        }
+        
+        public void testNewlineInStringCountsLines() throws IOException {
+                JsonPullReader reader = reader("[\"a\nb\",\n1]");
+                
+                reader.beginArray();
+                assertEquals("a\nb", reader.nextString());
+                assertEquals("1", reader.nextString());
+                assertEquals(3, reader.getLineNumber());
+        }
+        
+        // -----------------------------------------------
+        //
+        // scalars
+        //
+        // -----------------------------------------------
+        
+        public void testNumbers() throws IOException {
+                JsonPullReader reader = reader("[0, -12, 3.25, 1.5e-3, -2E+10]");
+                
+                reader.beginArray();
+                
+                for (String expected : new String[] { "0", "-12", "3.25", "1.5e-3", "-2E+10" }) {
+                        assertEquals(Token.NUMBER, reader.peek());
+                        assertEquals(expected, reader.nextString());
+                }
+                
+                reader.endArray();
+                assertEquals(Token.END_DOCUMENT, reader.peek());
+        }
+        
+        public void testLiterals() throws IOException {
+                JsonPullReader reader = reader("[true,false,null]");
+                
+                reader.beginArray();
+                assertEquals(Token.BOOLEAN, reader.peek());
+                assertEquals("true", reader.nextString());
+                assertEquals("false", reader.nextString());
+                assertEquals(null, reader.nextStringOrNull());
+                reader.endArray();
+        }
+        
+        // -----------------------------------------------
+        //
+        // structure
+        //
+        // -----------------------------------------------
+        
+        public void testNestedStructures() throws IOException {
+                JsonPullReader reader = reader("{ \"a\": [ { \"b\": [] }, [ [ 1 ] ] ], \"c\": {} }");
+                
+                reader.beginObject();
+                assertEquals("a", reader.nextName());
+                reader.beginArray();
+                reader.beginObject();
+                assertEquals("b", reader.nextName());
+                reader.beginArray();
+                assertTrue(!reader.hasNext(), "the array b is empty");
+                reader.endArray();
+                reader.endObject();
+                reader.beginArray();
+                reader.beginArray();
+                assertEquals("1", reader.nextString());
+                reader.endArray();
+                reader.endArray();
+                reader.endArray();
+                assertEquals("c", reader.nextName());
+                reader.beginObject();
+                reader.endObject();
+                reader.endObject();
+                assertEquals(Token.END_DOCUMENT, reader.peek());
+        }
+        
+        /**
+         * deeper than the initial stack of the reader.
+         */
+        public void testDeepNesting() throws IOException {
+                StringBuilder json = new StringBuilder();
+                
+                for (int i = 0; i < 100; i++) {
+                        json.append("[");
+                }
+                
+                json.append("\"x\"");
+                
+                for (int i = 0; i < 100; i++) {
+                        json.append("]");
+                }
+                
+                JsonPullReader reader = reader(json.toString());
+                reader.skipValue();
+                assertEquals(Token.END_DOCUMENT, reader.peek());
+        }
+        
+        public void testSkipValue() throws IOException {
+                JsonPullReader reader = reader("{ \"skipped\": { \"a\": [1, {\"b\": null}] }, \"kept\": \"v\" }");
+                
+                reader.beginObject();
+                assertEquals("skipped", reader.nextName());
+                reader.skipValue();
+                assertEquals("kept", reader.nextName());
+                assertEquals("v", reader.nextString());
+                reader.endObject();
+        }
+        
+        // -----------------------------------------------
+        //
+        // errors
+        //
+        // -----------------------------------------------
+        
+        public void testMalformed() {
+                assertMalformed("[1 2]");
+                assertMalformed("{\"a\" 1}");
+                assertMalformed("{\"a\": 1 \"b\": 2}");
+                assertMalformed("{a: 1}");
+                assertMalformed("\"unterminated");
+                assertMalformed("\"\\u12G4\"");
+                assertMalformed("\"\\");
+                assertMalformed("[1,");
+                assertMalformed("nope");
+                assertMalformed("[] []");
+        }
+        
+        public void testWrongToken() throws IOException {
+                JsonPullReader reader = reader("[1]");
+                
+                try {
+                        reader.beginObject();
+                        fail("began an object on an array");
+                }
+                catch (IOException e) {
+                        assertTrue(e.getMessage().contains("BEGIN_OBJECT"), e.getMessage());
+                }
+        }
+}
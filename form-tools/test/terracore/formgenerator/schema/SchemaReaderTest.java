@@ -0,0 +1,124 @@
+package terracore.formgenerator.schema;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+public class SchemaReaderTest extends TestCase {
+        
+        public static void main(String[] args) {
+                run(new SchemaReaderTest());
+        }
+        
+        /**
+         * returns a temporary directory with the fragments, as name and json
+         * pairs.
+         */
+        static File writeFragments(String... fragments) throws IOException {
+                File directory = File.createTempFile("fragments", "");
+                directory.delete();
+                directory.mkdir();
+                directory.deleteOnExit();
+                
+                for (int i = 0; i < fragments.length; i += 2) {
+                        File file = new File(directory, fragments[i]);
+                        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+                        
+                        try {
+                                writer.write(fragments[i + 1]);
+                        }
+                        finally {
+                                writer.close();
+                        }
+                        
+                        file.deleteOnExit();
+                }
+                
+                return directory;
+        }
+        
+        public void testArrayLayout() throws IOException {
+                List<WidgetSpec> specs = SchemaReader.readAll(new StringReader("[ { \"name\": \"Uso\", \"type\": \"Spinner\", \"id\": \"use\", \"priority\": 2, \"default\": \"1\","
+                                + " \"options\": { \"1\": \"Casa\", \"2\": \"Loja\", \"db_name\": [ \"tasks.db\" ] }, \"hideOnClick\": { \"1\": [ \"shop\" ] } } ]"));
+                
+                assertEquals(1, specs.size());
+                
+                WidgetSpec spec = specs.get(0);
+                assertEquals("Uso", spec.getName());
+                assertEquals("Spinner", spec.getType());
+                assertEquals("use", spec.getId());
+                assertEquals(2, spec.getPriority());
+                assertEquals("1", spec.getDefault());
+                assertEquals("Loja", spec.getOptions().get("2"));
+                assertEquals(Arrays.asList("tasks.db"), spec.getOptionLists().get("db_name"));
+                assertEquals(Arrays.asList("shop"), spec.getHideOnClick().get("1"));
+        }
+        
+        public void testKeyedLayout() throws IOException {
+                SchemaReader reader = new SchemaReader(new StringReader("{ \"meta\": { \"type\": \"meta\", \"name\": \"Bauru\" }, \"street\": { \"type\": \"EditText\", \"id\": \"street\" }, \"count\": 3 }"));
+                
+                assertTrue(reader.hasNext(), "the keyed schema has a widget");
+                
+                WidgetSpec spec = reader.next();
+                assertEquals("street", spec.getName());
+                assertEquals("Bauru", reader.getTitle());
+                assertTrue(!reader.hasNext(), "the meta entry and the scalar are not widgets");
+                reader.close();
+        }
+        
+        public void testUnknownKeysAreSkipped() throws IOException {
+                List<WidgetSpec> specs = SchemaReader.readAll(new StringReader("[ { \"type\": \"CheckBox\", \"id\": \"a\", \"extra\": { \"x\": [ 1, { \"y\": null } ] },"
+                                + " \"toggles\": { \"1\": [ \"b\" ] } } ]"));
+                
+                assertEquals(1, specs.size());
+                assertEquals(Arrays.asList("b"), specs.get(0).getToggles().get("1"));
+        }
+        
+        /**
+         * a schema including a fragment that includes a widget of another
+         * fragment.
+         */
+        public void testNestedRef() throws IOException {
+                File directory = writeFragments(
+                                "infrastructure.json", "[ { \"type\": \"Label\", \"id\": \"title\" }, { \"$ref\": \"common.json#water\" }, { \"type\": \"EditText\", \"id\": \"notes\" } ]",
+                                "common.json", "[ { \"type\": \"CheckBox\", \"id\": \"power\" }, { \"type\": \"CheckBox\", \"id\": \"water\" } ]");
+                
+                List<WidgetSpec> specs = SchemaReader.readAll(new StringReader("[ { \"type\": \"EditText\", \"id\": \"street\" }, { \"$ref\": \"infrastructure.json\" }, { \"type\": \"EditText\", \"id\": \"number\" } ]"),
+                                new FileFragmentResolver(directory));
+                
+                String[] ids = new String[specs.size()];
+                
+                for (int i = 0; i < ids.length; i++) {
+                        ids[i] = specs.get(i).getId();
+                }
+                
+                assertEquals(Arrays.asList("street", "title", "water", "notes", "number"), Arrays.asList(ids));
+        }
+        
+        public void testRefLoop() throws IOException {
+                File directory = writeFragments("a.json", "[ { \"$ref\": \"b.json\" } ]", "b.json", "[ { \"$ref\": \"a.json\" } ]");
+                
+                try {
+                        SchemaReader.readAll(new StringReader("[ { \"$ref\": \"a.json\" } ]"), new FileFragmentResolver(directory));
+                        fail("read a fragment that includes itself");
+                }
+                catch (IOException e) {
+                        assertTrue(e.getMessage().contains("includes itself"), e.getMessage());
+                }
+        }
+        
+        public void testRefWithoutResolver() {
+                try {
+                        SchemaReader.readAll(new StringReader("[ { \"$ref\": \"a.json\" } ]"));
+                        fail("included a fragment without a resolver");
+                }
+                catch (IOException e) {
+                        assertTrue(e.getMessage().contains("a.json"), e.getMessage());
+                }
+        }
+}
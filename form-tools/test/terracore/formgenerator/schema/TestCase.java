@@ -0,0 +1,61 @@
+package terracore.formgenerator.schema;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Base of the tests of the tools, run by the "test" target of build.xml
+ * without a test library: each public method whose name starts with "test" is
+ * called, a test fails when it throws. The main of a test calls
+ * {@link #run(TestCase)}, which exits with 1 if a test failed.
+ */
+abstract class TestCase {
+        
+        static void run(TestCase testCase) {
+                int failures = 0;
+                int count = 0;
+                
+                for (Method method : testCase.getClass().getMethods()) {
+                        if (!method.getName().startsWith("test") || method.getParameterTypes().length != 0) {
+                                continue;
+                        }
+                        
+                        count++;
+                        
+                        try {
+                                method.invoke(testCase);
+                        }
+                        catch (InvocationTargetException e) {
+                                failures++;
+                                System.err.println("FAILED " + testCase.getClass().getSimpleName() + "." + method.getName());
+                                e.getCause().printStackTrace();
+                        }
+                        catch (IllegalAccessException e) {
+                                failures++;
+                                e.printStackTrace();
+                        }
+                }
+                
+                System.out.println(testCase.getClass().getSimpleName() + ": " + (count - failures) + "/" + count + " passed");
+                
+                if (failures > 0) {
+                        System.exit(1);
+                }
+        }
+        
+        static void assertEquals(Object expected, Object actual) {
+                if (expected == null ? actual != null : !expected.equals(actual)) {
+                        throw new AssertionError("expected <" + expected + "> but was <" + actual + ">");
+                }
+        }
+        
+        static void assertTrue(boolean condition, String message) {
+                if (!condition) {
+                        throw new AssertionError(message);
+                }
+        }
+        
+        static void fail(String message) {
+                throw new AssertionError(message);
+        }
+}